@@ -0,0 +1,355 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The BatchSolver class is a command line tool which solves or validates every
+ * line of a file of 81 character grids. Lines may also be in the "email
+ * solution" format written by the sudoku CGI application, in which case the
+ * last 81 characters are used.
+ * 
+ * The input file is memory-mapped in chunks which end on a line boundary, and
+ * the chunks are processed in parallel. Each line is read through a reusable
+ * view of the mapped bytes and each result is written as bytes, so no String is
+ * created per line. The results are written in the same order as the input,
+ * one line per non-empty input line.
+ * 
+ * @author Ole Sandbu
+ */
+public class BatchSolver {
+	private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+	private static final byte[] VALID = bytes("valid\n");
+	private static final byte[] INVALID = bytes("invalid\n");
+	private static final byte[] UNSOLVABLE = bytes("unsolvable\n");
+
+	/** What to do with each line of the input. */
+	public enum Mode {
+		/** Solve each line as a puzzle and write its solution. */
+		SOLVE,
+		/** Check that each line is a correct, complete solution. */
+		VALIDATE
+	}
+
+	private final Mode mode;
+	private final int threads;
+	private long lines;
+	private long failures;
+
+	/**
+	 * Create a new BatchSolver.
+	 * 
+	 * @param mode
+	 *            Whether to solve or validate the lines.
+	 * @param threads
+	 *            The number of chunks to process at the same time.
+	 */
+	public BatchSolver(Mode mode, int threads) {
+		this.mode = mode;
+		this.threads = threads;
+	}
+
+	/**
+	 * Process every line of a file and write the results to another file.
+	 * 
+	 * @param input
+	 *            The file to read.
+	 * @param output
+	 *            The file to write the results to.
+	 * @throws IOException
+	 *             If an error occurs while reading or writing.
+	 */
+	public void run(File input, File output) throws IOException {
+		lines = 0;
+		failures = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		RandomAccessFile in = new RandomAccessFile(input, "r");
+		RandomAccessFile out = new RandomAccessFile(output, "rw");
+		try {
+			FileChannel inChannel = in.getChannel();
+			FileChannel outChannel = out.getChannel();
+			outChannel.truncate(0);
+			long size = inChannel.size();
+			// results must be written in order, so keep a bounded window of
+			// chunks in flight and always wait for the oldest one.
+			ArrayDeque<Future<Result>> pending = new ArrayDeque<Future<Result>>();
+			long start = 0;
+			while (start < size) {
+				long end = chunkEnd(inChannel, start, size);
+				MappedByteBuffer chunk = inChannel.map(
+						FileChannel.MapMode.READ_ONLY, start, end - start);
+				pending.add(executor.submit(new ChunkTask(chunk)));
+				if (pending.size() >= threads * 2)
+					write(pending.poll(), outChannel);
+				start = end;
+			}
+			while (!pending.isEmpty())
+				write(pending.poll(), outChannel);
+		} finally {
+			executor.shutdownNow();
+			in.close();
+			out.close();
+		}
+	}
+
+	/**
+	 * Find the end of the chunk starting at a given position, which is just
+	 * after the first newline at least CHUNK_SIZE bytes in.
+	 * 
+	 * @param channel
+	 *            The input file.
+	 * @param start
+	 *            The start of the chunk.
+	 * @param size
+	 *            The size of the file.
+	 * @return The position just after the end of the chunk.
+	 * @throws IOException
+	 *             If an error occurs while reading.
+	 */
+	private static long chunkEnd(FileChannel channel, long start, long size)
+			throws IOException {
+		long pos = start + CHUNK_SIZE;
+		if (pos >= size)
+			return size;
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		while (pos < size) {
+			buffer.clear();
+			int n = channel.read(buffer, pos);
+			for (int i = 0; i < n; i++)
+				if (buffer.get(i) == '\n')
+					return pos + i + 1;
+			pos += n;
+		}
+		return size;
+	}
+
+	/**
+	 * Wait for a chunk to be processed and write its results.
+	 * 
+	 * @param future
+	 *            The pending result of a chunk.
+	 * @param channel
+	 *            The output file.
+	 * @throws IOException
+	 *             If an error occurs while writing or processing the chunk.
+	 */
+	private void write(Future<Result> future, FileChannel channel)
+			throws IOException {
+		Result result;
+		try {
+			result = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted");
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause().toString());
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(result.bytes, 0, result.length);
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		lines += result.lines;
+		failures += result.failures;
+	}
+
+	/**
+	 * Returns the number of lines processed by the last run.
+	 * 
+	 * @return The number of lines.
+	 */
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * Returns the number of lines of the last run which were invalid or could
+	 * not be solved.
+	 * 
+	 * @return The number of failed lines.
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	private static byte[] bytes(String s) {
+		byte[] b = new byte[s.length()];
+		for (int i = 0; i < b.length; i++)
+			b[i] = (byte) s.charAt(i);
+		return b;
+	}
+
+	/**
+	 * The output of a processed chunk.
+	 */
+	private static class Result {
+		byte[] bytes = new byte[4096];
+		int length;
+		long lines;
+		long failures;
+
+		void append(byte[] b) {
+			ensure(b.length);
+			System.arraycopy(b, 0, bytes, length, b.length);
+			length += b.length;
+		}
+
+		void ensure(int n) {
+			if (length + n > bytes.length) {
+				byte[] larger = new byte[Math.max(bytes.length * 2, length + n)];
+				System.arraycopy(bytes, 0, larger, 0, length);
+				bytes = larger;
+			}
+		}
+	}
+
+	/**
+	 * A task which processes the lines of one mapped chunk.
+	 */
+	private class ChunkTask implements Callable<Result> {
+		private final ByteBuffer chunk;
+
+		ChunkTask(ByteBuffer chunk) {
+			this.chunk = chunk;
+		}
+
+		public Result call() {
+			Result result = new Result();
+			result.ensure(chunk.limit() + chunk.limit() / 64);
+			SudokuSolver solver = new SudokuSolver();
+			LineView line = new LineView(chunk);
+			int limit = chunk.limit();
+			int start = 0;
+			while (start < limit) {
+				int end = start;
+				while (end < limit && chunk.get(end) != '\n')
+					end++;
+				int next = end + 1;
+				if (end > start && chunk.get(end - 1) == '\r')
+					end--;
+				if (end > start) {
+					result.lines++;
+					process(line.grid(start, end), solver, result);
+				}
+				start = next;
+			}
+			return result;
+		}
+
+		private void process(LineView grid, SudokuSolver solver, Result result) {
+			if (mode == Mode.VALIDATE) {
+				if (grid != null && Validator.isValidSolution(grid)) {
+					result.append(VALID);
+				} else {
+					result.append(INVALID);
+					result.failures++;
+				}
+			} else if (grid == null || !solver.load(grid)) {
+				result.append(INVALID);
+				result.failures++;
+			} else if (solver.solve(1) == 0) {
+				result.append(UNSOLVABLE);
+				result.failures++;
+			} else {
+				result.ensure(Grid.CELLS + 1);
+				solver.getSolution(result.bytes, result.length);
+				result.length += Grid.CELLS;
+				result.bytes[result.length++] = '\n';
+			}
+		}
+	}
+
+	/**
+	 * A reusable view of the grid on one line of a chunk, so that each line can
+	 * be passed to the solver and validator without creating a String.
+	 */
+	private static class LineView implements CharSequence {
+		private final ByteBuffer buffer;
+		private int offset;
+
+		LineView(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Point the view at the grid on a line, which is either the whole line
+		 * or the part after the last space.
+		 * 
+		 * @return this view, or null if the line does not contain a grid.
+		 */
+		LineView grid(int start, int end) {
+			int length = end - start;
+			if (length == Grid.CELLS) {
+				offset = start;
+				return this;
+			}
+			if (length > Grid.CELLS && buffer.get(end - Grid.CELLS - 1) == ' ') {
+				offset = end - Grid.CELLS;
+				return this;
+			}
+			return null;
+		}
+
+		public int length() {
+			return Grid.CELLS;
+		}
+
+		public char charAt(int index) {
+			return (char) (buffer.get(offset + index) & 0xFF);
+		}
+
+		/**
+		 * Returns a copy of part of the grid, since the view itself is moved
+		 * on to the next line.
+		 */
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || end > Grid.CELLS || start > end)
+				throw new IndexOutOfBoundsException("start " + start
+						+ ", end " + end + ", length " + Grid.CELLS);
+			StringBuilder sb = new StringBuilder(end - start);
+			for (int i = start; i < end; i++)
+				sb.append(charAt(i));
+			return sb.toString();
+		}
+
+		public String toString() {
+			return subSequence(0, Grid.CELLS).toString();
+		}
+	}
+
+	/**
+	 * Solve or validate a file and report the throughput.
+	 * 
+	 * @param args
+	 *            "solve" or "validate", the input file, the output file and
+	 *            optionally the number of threads.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println("Usage: java BatchSolver solve|validate input output [threads]");
+			System.exit(1);
+		}
+		Mode mode = Mode.valueOf(args[0].toUpperCase());
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime
+				.getRuntime().availableProcessors();
+		BatchSolver batch = new BatchSolver(mode, threads);
+		long start = System.nanoTime();
+		try {
+			batch.run(new File(args[1]), new File(args[2]));
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			System.exit(1);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("%d puzzles (%d failed) in %.3f s: %.0f puzzles/s%n",
+				batch.getLines(), batch.getFailures(), seconds, batch
+						.getLines()
+						/ seconds);
+	}
+}
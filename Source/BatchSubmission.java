@@ -0,0 +1,341 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The BatchSubmission class is a CGI application which accepts many
+ * submissions in a single POST request. The body holds one "email solution"
+ * record per line, the same format as the solutions file.
+ * 
+ * The body is read as a stream through a fixed-size buffer. Records are
+ * validated while the rest of the body is still being read: every CHUNK_SIZE
+ * records are handed to the common ForkJoinPool and checked with the same
+ * checks as the sudoku CGI application. Once the whole body has been read and
+ * checked, all the valid records are appended to the solutions file with a
+ * single write. The stages and the result of each record are recorded in the
+ * same SubmissionMetrics as single submissions. The response is a plain text
+ * summary with one line per record giving its line number and result,
+ * followed by the totals.
+ * 
+ * @author Ole Sandbu
+ */
+public class BatchSubmission {
+	/**
+	 * The largest body which will be read, which can be changed with the
+	 * batch.max.body system property.
+	 */
+	public static final int MAX_BODY_SIZE = Integer.getInteger(
+			"batch.max.body", 16 * 1024 * 1024).intValue();
+	private static final int MAX_LINE_LENGTH = 512;
+	private static final int BUFFER_SIZE = 8192;
+	private static final int CHUNK_SIZE = 256;
+
+	/** The result of one record. */
+	public enum Result {
+		/** The record was appended to the solutions file. */
+		ACCEPTED,
+		/** The email has already submitted the solution. */
+		DUPLICATE,
+		/** The email address is not valid. */
+		INVALID_EMAIL,
+		/** The solution is not valid. */
+		INVALID_SOLUTION,
+		/** The line is not an "email solution" record. */
+		MALFORMED
+	}
+
+	/**
+	 * A run of records which are validated together, while later records are
+	 * still being read.
+	 */
+	private static class Chunk implements Runnable {
+		final int[] lineNumbers = new int[CHUNK_SIZE];
+		final String[] emails = new String[CHUNK_SIZE];
+		final String[] solutions = new String[CHUNK_SIZE];
+		final Result[] results = new Result[CHUNK_SIZE];
+		int size;
+		ForkJoinTask<?> task;
+
+		boolean isFull() {
+			return size == CHUNK_SIZE;
+		}
+
+		/**
+		 * Validate the records, leaving the result of the valid ones null
+		 * until they are appended.
+		 */
+		public void run() {
+			SubmissionMetrics metrics = sudoku.getMetrics();
+			for (int i = 0; i < size; i++) {
+				if (emails[i] == null) {
+					results[i] = Result.MALFORMED;
+					metrics.count(SubmissionMetrics.Outcome.MALFORMED);
+					continue;
+				}
+				long start = System.nanoTime();
+				boolean valid = Validator.isValidEmail(emails[i]);
+				long end = System.nanoTime();
+				metrics.record(SubmissionMetrics.Stage.EMAIL, end - start);
+				if (!valid) {
+					results[i] = Result.INVALID_EMAIL;
+					metrics.count(SubmissionMetrics.Outcome.INVALID_EMAIL);
+					continue;
+				}
+				valid = Validator.isValidSolution(solutions[i]);
+				metrics.record(SubmissionMetrics.Stage.SOLUTION,
+						System.nanoTime() - end);
+				if (!valid) {
+					results[i] = Result.INVALID_SOLUTION;
+					metrics.count(SubmissionMetrics.Outcome.INVALID_SOLUTION);
+				}
+			}
+		}
+	}
+
+	private final List<Chunk> chunks = new ArrayList<Chunk>();
+	private Chunk chunk;
+
+	/**
+	 * Main method which is called when the CGI script is opened.
+	 * 
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		respond(System.getProperty("request.method"), System
+				.getProperty("content.length"), System.in, System.out);
+		sudoku.saveMetrics();
+	}
+
+	/**
+	 * Handle a batch request and print the response, including the CGI
+	 * header.
+	 * 
+	 * @param requestMethod
+	 *            The request method, which must be POST.
+	 * @param contentLength
+	 *            The length of the body.
+	 * @param in
+	 *            The stream to read the body from.
+	 * @param out
+	 *            The stream to print the response to.
+	 */
+	public static void respond(String requestMethod, String contentLength,
+			InputStream in, PrintStream out) {
+		long length = -1;
+		try {
+			if (contentLength != null)
+				length = Long.parseLong(contentLength.trim());
+		} catch (NumberFormatException e) {
+			length = -1;
+		}
+		if (!"POST".equals(requestMethod) || length < 0) {
+			printError(out, "400 Bad Request", "Expected a POST request.");
+			return;
+		}
+		if (length > MAX_BODY_SIZE) {
+			sudoku.getMetrics().count(SubmissionMetrics.Outcome.TOO_LARGE);
+			printError(out, "413 Request Entity Too Large",
+					"The request may not be larger than " + MAX_BODY_SIZE
+							+ " bytes.");
+			return;
+		}
+		BatchSubmission batch = new BatchSubmission();
+		try {
+			long start = System.nanoTime();
+			batch.read(in, (int) length);
+			sudoku.getMetrics().record(SubmissionMetrics.Stage.PARSE,
+					System.nanoTime() - start);
+			batch.awaitValidation();
+			batch.append(sudoku.getLog());
+		} catch (IOException e) {
+			printError(out, "500 Internal Server Error", e.toString());
+			return;
+		}
+		batch.printSummary(out);
+	}
+
+	/**
+	 * Read the records from the body of the request, handing each full chunk
+	 * of records to the common ForkJoinPool to be validated.
+	 * 
+	 * @param in
+	 *            The stream to read from.
+	 * @param length
+	 *            The length of the body.
+	 * @throws IOException
+	 *             If the stream cannot be read.
+	 */
+	void read(InputStream in, int length) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		byte[] line = new byte[MAX_LINE_LENGTH];
+		int lineLength = 0;
+		boolean overlong = false;
+		int lineNumber = 1;
+		int remaining = length;
+		while (remaining > 0) {
+			int n = in.read(buffer, 0, Math.min(remaining, buffer.length));
+			if (n < 0)
+				break;
+			remaining -= n;
+			for (int i = 0; i < n; i++) {
+				byte b = buffer[i];
+				if (b == '\n') {
+					addRecord(lineNumber++, line, overlong ? -1 : lineLength);
+					lineLength = 0;
+					overlong = false;
+				} else if (lineLength < line.length) {
+					line[lineLength++] = b;
+				} else {
+					overlong = true;
+				}
+			}
+		}
+		if (lineLength > 0 || overlong)
+			addRecord(lineNumber, line, overlong ? -1 : lineLength);
+		if (chunk != null && chunk.size > 0)
+			submit();
+	}
+
+	/**
+	 * Start validating the current chunk.
+	 */
+	private void submit() {
+		chunk.task = ForkJoinPool.commonPool().submit(chunk);
+		chunk = null;
+	}
+
+	/**
+	 * Add the record on one line of the body.
+	 * 
+	 * @param lineNumber
+	 *            The number of the line, starting at 1.
+	 * @param line
+	 *            The bytes of the line.
+	 * @param length
+	 *            The length of the line, or -1 if it was too long.
+	 */
+	private void addRecord(int lineNumber, byte[] line, int length)
+			throws UnsupportedEncodingException {
+		if (length > 0 && line[length - 1] == '\r')
+			length--;
+		if (length == 0)
+			return;
+		if (chunk == null) {
+			chunk = new Chunk();
+			chunks.add(chunk);
+		}
+		int i = chunk.size++;
+		chunk.lineNumbers[i] = lineNumber;
+		int space = length - 1;
+		while (space >= 0 && line[space] != ' ')
+			space--;
+		if (length > 0 && space > 0) {
+			chunk.emails[i] = new String(line, 0, space, "UTF-8");
+			chunk.solutions[i] = new String(line, space + 1, length - space
+					- 1, "UTF-8");
+		}
+		if (chunk.isFull())
+			submit();
+	}
+
+	/**
+	 * Wait until all the chunks have been validated.
+	 */
+	void awaitValidation() {
+		for (Chunk c : chunks)
+			c.task.join();
+	}
+
+	/**
+	 * Append the valid records to the log with a single write.
+	 * 
+	 * @param log
+	 *            The log of solutions.
+	 * @throws IOException
+	 *             If the records cannot be written.
+	 */
+	void append(SolutionLog log) throws IOException {
+		List<String> validEmails = new ArrayList<String>();
+		List<String> validSolutions = new ArrayList<String>();
+		for (Chunk c : chunks)
+			for (int i = 0; i < c.size; i++)
+				if (c.results[i] == null) {
+					validEmails.add(c.emails[i]);
+					validSolutions.add(c.solutions[i]);
+				}
+		if (validEmails.isEmpty())
+			return;
+		SubmissionMetrics metrics = sudoku.getMetrics();
+		long start = System.nanoTime();
+		long[] offsets;
+		try {
+			offsets = log.appendAll(validEmails.toArray(new String[0]),
+					validSolutions.toArray(new String[0]));
+		} catch (IOException e) {
+			metrics.record(SubmissionMetrics.Stage.APPEND, System.nanoTime()
+					- start);
+			for (int i = 0; i < validEmails.size(); i++)
+				metrics.count(SubmissionMetrics.Outcome.ERROR);
+			throw e;
+		}
+		metrics.record(SubmissionMetrics.Stage.APPEND, System.nanoTime()
+				- start);
+		int k = 0;
+		for (Chunk c : chunks)
+			for (int i = 0; i < c.size; i++)
+				if (c.results[i] == null) {
+					boolean duplicate = offsets[k++] == SolutionLog.DUPLICATE;
+					c.results[i] = duplicate ? Result.DUPLICATE
+							: Result.ACCEPTED;
+					metrics.count(duplicate
+							? SubmissionMetrics.Outcome.DUPLICATE
+							: SubmissionMetrics.Outcome.ACCEPTED);
+				}
+	}
+
+	/**
+	 * Print the result of each record and the totals.
+	 * 
+	 * @param out
+	 *            The stream to print to.
+	 */
+	private void printSummary(PrintStream out) {
+		int[] totals = new int[Result.values().length];
+		StringBuilder sb = new StringBuilder(chunks.size() * CHUNK_SIZE * 16
+				+ 128);
+		sb.append("Content-Type: text/plain\n\n");
+		for (Chunk c : chunks)
+			for (int i = 0; i < c.size; i++) {
+				sb.append(c.lineNumbers[i]).append(' ').append(c.results[i])
+						.append('\n');
+				totals[c.results[i].ordinal()]++;
+			}
+		for (Result result : Result.values())
+			sb.append(result).append(": ").append(totals[result.ordinal()])
+					.append('\n');
+		out.print(sb);
+		out.flush();
+	}
+
+	/**
+	 * Print an error response.
+	 * 
+	 * @param out
+	 *            The stream to print to.
+	 * @param status
+	 *            The HTTP status.
+	 * @param message
+	 *            The error message.
+	 */
+	private static void printError(PrintStream out, String status,
+			String message) {
+		out.print("Status: " + status + "\nContent-Type: text/plain\n\n"
+				+ message + "\n");
+		out.flush();
+	}
+}
@@ -0,0 +1,270 @@
+import java.util.Arrays;
+
+/**
+ * The CandidateEngine class keeps the candidates (pencil marks) of every cell
+ * of a Sudoku grid, i.e. the digits which do not already appear in the cell's
+ * row, column or subgrid, as a 9-bit mask per cell.
+ * 
+ * The masks are updated in place as digits are placed and removed: placing a
+ * digit removes it from the candidates of the cell's 20 peers, and removing a
+ * digit gives it back to the peers which no longer see it anywhere else. The
+ * board is never recomputed as a whole. The engine does not depend on Swing,
+ * so it can follow a GridModel in the applet as well as check partial grids
+ * on the server.
+ * 
+ * @author Ole Sandbu
+ */
+public class CandidateEngine implements GridModelListener {
+	private final int[] cells = new int[Grid.CELLS];
+	private final int[] candidates = new int[Grid.CELLS];
+	// counts[unit * 10 + digit] is the number of times digit is in unit.
+	private final int[] counts = new int[Grid.UNITS * 10];
+	// the digits present in each unit.
+	private final int[] used = new int[Grid.UNITS];
+	// the number of surplus digits over all units.
+	private int conflicts;
+	// the number of empty cells without any candidates.
+	private int deadEnds;
+
+	/**
+	 * Create a CandidateEngine for an empty grid.
+	 */
+	public CandidateEngine() {
+		clear();
+	}
+
+	/**
+	 * Empty every cell.
+	 */
+	public void clear() {
+		Arrays.fill(cells, 0);
+		Arrays.fill(candidates, Grid.ALL_DIGITS);
+		Arrays.fill(counts, 0);
+		Arrays.fill(used, 0);
+		conflicts = 0;
+		deadEnds = 0;
+	}
+
+	/**
+	 * Replace the content of every cell with a grid.
+	 * 
+	 * @param grid
+	 *            A grid of 81 characters, where 0 or '.' means an empty cell.
+	 * @throws IllegalArgumentException
+	 *             If the grid is not 81 digits.
+	 */
+	public void load(CharSequence grid) {
+		if (grid == null || grid.length() != Grid.CELLS)
+			throw new IllegalArgumentException("Not a grid: " + grid);
+		for (int cell = 0; cell < Grid.CELLS; cell++)
+			if (Grid.digit(grid.charAt(cell)) < 0)
+				throw new IllegalArgumentException("Not a grid: " + grid);
+		clear();
+		for (int cell = 0; cell < Grid.CELLS; cell++) {
+			int digit = Grid.digit(grid.charAt(cell));
+			if (digit != 0)
+				place(cell, digit);
+		}
+	}
+
+	/**
+	 * Put a digit in a cell, or empty it.
+	 * 
+	 * @param cell
+	 *            The cell, 0..80 in row-major order.
+	 * @param digit
+	 *            The digit 1..9, or 0 to empty the cell.
+	 */
+	public void set(int cell, int digit) {
+		if (digit < 0 || digit > 9)
+			throw new IllegalArgumentException("Not a digit: " + digit);
+		if (cells[cell] == digit)
+			return;
+		if (cells[cell] != 0)
+			remove(cell);
+		if (digit != 0)
+			place(cell, digit);
+	}
+
+	/**
+	 * Implements GridModelListener.cellChanged(int, int, int), so that the
+	 * candidates follow the edits made to a GridModel.
+	 */
+	public void cellChanged(int cell, int oldDigit, int newDigit) {
+		set(cell, newDigit);
+	}
+
+	/**
+	 * Place a digit in an empty cell and take it out of the candidates of the
+	 * cell's peers.
+	 */
+	private void place(int cell, int digit) {
+		if (candidates[cell] == 0)
+			deadEnds--;
+		cells[cell] = digit;
+		candidates[cell] = 0;
+		add(Grid.ROW[cell], digit);
+		add(9 + Grid.COL[cell], digit);
+		add(18 + Grid.BOX[cell], digit);
+		int bit = Grid.bit(digit);
+		for (int i = cell * Grid.PEERS, end = i + Grid.PEERS; i < end; i++) {
+			int peer = Grid.PEER_CELLS[i];
+			if (cells[peer] == 0 && (candidates[peer] & bit) != 0)
+				setCandidates(peer, candidates[peer] & ~bit);
+		}
+	}
+
+	/**
+	 * Empty a cell and give its digit back to the peers which no longer see
+	 * it in any of their units.
+	 */
+	private void remove(int cell) {
+		int digit = cells[cell];
+		cells[cell] = 0;
+		remove(Grid.ROW[cell], digit);
+		remove(9 + Grid.COL[cell], digit);
+		remove(18 + Grid.BOX[cell], digit);
+		candidates[cell] = free(cell);
+		if (candidates[cell] == 0)
+			deadEnds++;
+		int bit = Grid.bit(digit);
+		for (int i = cell * Grid.PEERS, end = i + Grid.PEERS; i < end; i++) {
+			int peer = Grid.PEER_CELLS[i];
+			if (cells[peer] == 0 && (candidates[peer] & bit) == 0
+					&& (free(peer) & bit) != 0)
+				setCandidates(peer, candidates[peer] | bit);
+		}
+	}
+
+	private void add(int unit, int digit) {
+		if (counts[unit * 10 + digit]++ > 0)
+			conflicts++;
+		used[unit] |= Grid.bit(digit);
+	}
+
+	private void remove(int unit, int digit) {
+		if (--counts[unit * 10 + digit] > 0)
+			conflicts--;
+		else
+			used[unit] &= ~Grid.bit(digit);
+	}
+
+	/**
+	 * Returns the digits which do not appear in any of the units of a cell.
+	 */
+	private int free(int cell) {
+		return Grid.ALL_DIGITS
+				& ~(used[Grid.ROW[cell]] | used[9 + Grid.COL[cell]] | used[18 + Grid.BOX[cell]]);
+	}
+
+	/**
+	 * Change the candidates of an empty cell, keeping count of the empty
+	 * cells which have none.
+	 */
+	private void setCandidates(int cell, int mask) {
+		if (candidates[cell] == 0)
+			deadEnds--;
+		candidates[cell] = mask;
+		if (mask == 0)
+			deadEnds++;
+	}
+
+	/**
+	 * Returns the digit in a cell.
+	 * 
+	 * @param cell
+	 *            The cell.
+	 * @return The digit, or 0 if the cell is empty.
+	 */
+	public int get(int cell) {
+		return cells[cell];
+	}
+
+	/**
+	 * Returns the candidates of a cell as a mask where bit d-1 is set if d is
+	 * a candidate.
+	 * 
+	 * @param cell
+	 *            The cell.
+	 * @return The candidates, or 0 if the cell is not empty.
+	 */
+	public int getCandidates(int cell) {
+		return candidates[cell];
+	}
+
+	/**
+	 * Determines if a digit is a candidate for a cell.
+	 * 
+	 * @param cell
+	 *            The cell.
+	 * @param digit
+	 *            The digit 1..9.
+	 * @return true if the cell is empty and the digit is not in any of its
+	 *         units.
+	 */
+	public boolean isCandidate(int cell, int digit) {
+		return (candidates[cell] & Grid.bit(digit)) != 0;
+	}
+
+	/**
+	 * Determines if a digit appears more than once in a row, column or
+	 * subgrid.
+	 * 
+	 * @return true if there is at least one conflict.
+	 */
+	public boolean hasConflicts() {
+		return conflicts > 0;
+	}
+
+	/**
+	 * Determines if there is an empty cell in which no digit can be placed.
+	 * 
+	 * @return true if at least one empty cell has no candidates.
+	 */
+	public boolean hasDeadEnds() {
+		return deadEnds > 0;
+	}
+
+	/**
+	 * Determines if the grid has neither conflicts nor dead ends. A grid which
+	 * is not consistent cannot be completed, although a consistent one is not
+	 * necessarily solvable.
+	 * 
+	 * @return true if the grid is consistent.
+	 */
+	public boolean isConsistent() {
+		return conflicts == 0 && deadEnds == 0;
+	}
+
+	/**
+	 * Determines if a partial grid is consistent, i.e. that no digit appears
+	 * twice in a unit and that every empty cell has at least one candidate.
+	 * 
+	 * @param grid
+	 *            A grid of 81 characters, where 0 or '.' means an empty cell.
+	 * @return true if the grid is consistent, false if it is not or is not a
+	 *         grid.
+	 */
+	public static boolean isConsistent(CharSequence grid) {
+		CandidateEngine engine = new CandidateEngine();
+		try {
+			engine.load(grid);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		return engine.isConsistent();
+	}
+
+	/**
+	 * Check the partial grids given as arguments and print whether each of
+	 * them is consistent.
+	 * 
+	 * @param args
+	 *            Grids of 81 characters.
+	 */
+	public static void main(String[] args) {
+		for (String grid : args)
+			System.out.println(isConsistent(grid) ? "consistent"
+					: "inconsistent");
+	}
+}
\ No newline at end of file
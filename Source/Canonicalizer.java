@@ -0,0 +1,642 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The Canonicalizer class computes a canonical form of a Sudoku grid, so that
+ * two grids which are the same puzzle in disguise have the same form.
+ * 
+ * Two grids are equivalent if one can be turned into the other by
+ * transposing, swapping bands or stacks, swapping rows within a band or
+ * columns within a stack, and relabelling the digits; 2 * 6^8 geometric
+ * transformations in all. The canonical form is the lexicographically
+ * smallest of the transformed grids, where the digits of each transformed
+ * grid are relabelled 1, 2, 3, ... in order of first appearance and empty
+ * cells stay 0.
+ * 
+ * The form is built one row at a time, keeping only the candidate
+ * transformations which tie for the smallest rows so far. The first row is
+ * chosen by a search over the stacks and the columns within them, which drops
+ * a branch as soon as a cell is larger than the smallest row found. After
+ * that the column permutation of a candidate is fixed, and each row which may
+ * come next is relabelled and compared in the same way, using the 1296
+ * column permutations computed once. Empty rows, columns, bands and stacks
+ * are interchangeable, so only one of each is tried.
+ * 
+ * A complete grid always relabels its first row as 123456789, whatever the
+ * column permutation, so for complete grids the column permutation is
+ * instead chosen while building the second row: placing a column fixes the
+ * label of the digit below it in the first row, and that digit's column is
+ * placed in the earliest position it can take.
+ * 
+ * Instances are not thread-safe.
+ * 
+ * @author Ole Sandbu
+ */
+public class Canonicalizer {
+	private static final int[][] PERMS = { { 0, 1, 2 }, { 0, 2, 1 },
+			{ 1, 0, 2 }, { 1, 2, 0 }, { 2, 0, 1 }, { 2, 1, 0 } };
+	/** The number of column permutations which keep the stacks intact. */
+	private static final int COL_PERMS = 1296;
+	/**
+	 * The column permutations, flattened so that permutation p starts at
+	 * p*9; entry j is the column which is moved to column j.
+	 */
+	private static final int[] COL_PERM = new int[COL_PERMS * 9];
+	/** The index in PERMS of each permutation of 0..2, indexed by a*9+b*3+c. */
+	private static final int[] PERM_INDEX = new int[27];
+	// a candidate is: transposed, permutation, rows used, band, next label,
+	// then the labels given to the digits 1..9.
+	private static final int SLOT = 14;
+	private static final int BATCH_SIZE = 4096;
+	private static final ThreadLocal<Canonicalizer> CANONICALIZER = new ThreadLocal<Canonicalizer>() {
+		protected Canonicalizer initialValue() {
+			return new Canonicalizer();
+		}
+	};
+
+	static {
+		for (int i = 0; i < PERMS.length; i++)
+			PERM_INDEX[PERMS[i][0] * 9 + PERMS[i][1] * 3 + PERMS[i][2]] = i;
+		int n = 0;
+		for (int[] stacks : PERMS)
+			for (int[] p0 : PERMS)
+				for (int[] p1 : PERMS)
+					for (int[] p2 : PERMS) {
+						int[][] within = { p0, p1, p2 };
+						for (int j = 0; j < 9; j++)
+							COL_PERM[n * 9 + j] = stacks[j / 3] * 3
+									+ within[j / 3][j % 3];
+						n++;
+					}
+	}
+
+	// the grid, and the grid transposed.
+	private final int[][] grids = new int[2][Grid.CELLS];
+	// the empty rows of each of the grids.
+	private final int[] emptyRows = new int[2];
+	private final int[] best = new int[Grid.CELLS];
+	private final int[] row = new int[9];
+	private final int[] labels = new int[10];
+	// the state of the search for the first rows, by depth.
+	private final int[][] depthLabels = new int[4][10];
+	private final int[] depthLabel = new int[4];
+	private final int[] stackAt = new int[3];
+	private final int[] within = new int[3];
+	private final int[] sigma = new int[9];
+	private final int[] inverse = new int[9];
+	private final int[] columnOf = new int[10];
+	private final int[] below = new int[9];
+	private int[] current = new int[SLOT * 256];
+	private int[] next = new int[SLOT * 256];
+	private int currentSize;
+	private int nextSize;
+
+	/**
+	 * Returns the canonical form of a grid.
+	 * 
+	 * @param grid
+	 *            A grid of 81 characters, where 0 or '.' means an empty cell.
+	 * @return The canonical form, as 81 characters where 0 means an empty
+	 *         cell.
+	 * @throws IllegalArgumentException
+	 *             If the grid is not 81 digits.
+	 */
+	public String canonicalize(CharSequence grid) {
+		int k;
+		if (load(grid)) {
+			firstTwoRows();
+			k = 2;
+		} else {
+			firstRow();
+			k = 1;
+		}
+		for (; k < 9; k++)
+			nextRow(k);
+		char[] chars = new char[Grid.CELLS];
+		for (int cell = 0; cell < Grid.CELLS; cell++)
+			chars[cell] = (char) ('0' + best[cell]);
+		return new String(chars);
+	}
+
+	/**
+	 * Read a grid into the grid and its transposition.
+	 * 
+	 * @return true if the grid is complete.
+	 */
+	private boolean load(CharSequence grid) {
+		if (grid == null || grid.length() != Grid.CELLS)
+			throw new IllegalArgumentException("Not a grid: " + grid);
+		emptyRows[0] = Grid.ALL_DIGITS;
+		emptyRows[1] = Grid.ALL_DIGITS;
+		boolean complete = true;
+		for (int cell = 0; cell < Grid.CELLS; cell++) {
+			int digit = Grid.digit(grid.charAt(cell));
+			if (digit < 0)
+				throw new IllegalArgumentException("Not a grid: " + grid);
+			int r = Grid.ROW[cell];
+			int c = Grid.COL[cell];
+			grids[0][cell] = digit;
+			grids[1][c * 9 + r] = digit;
+			if (digit != 0) {
+				emptyRows[0] &= ~(1 << r);
+				emptyRows[1] &= ~(1 << c);
+			} else {
+				complete = false;
+			}
+		}
+		return complete;
+	}
+
+	/**
+	 * Choose the first row of the canonical form of a grid with empty cells,
+	 * leaving the candidates which give it in current.
+	 */
+	private void firstRow() {
+		Arrays.fill(best, 0, 9, 10);
+		nextSize = 0;
+		for (int t = 0; t < 2; t++) {
+			int empty = emptyRows[t];
+			boolean emptyBandTried = false;
+			for (int band = 0; band < 3; band++) {
+				if ((empty >> (band * 3) & 7) == 7) {
+					if (emptyBandTried)
+						continue;
+					emptyBandTried = true;
+				}
+				boolean emptyTried = false;
+				for (int r = band * 3; r < band * 3 + 3; r++) {
+					if ((empty & (1 << r)) != 0) {
+						if (emptyTried)
+							continue;
+						emptyTried = true;
+					}
+					Arrays.fill(depthLabels[0], 0);
+					depthLabel[0] = 0;
+					searchFirstRow(t, r, 0, 0);
+				}
+			}
+		}
+		swap();
+	}
+
+	/**
+	 * Place a stack, and the order of its columns, in the next block of three
+	 * columns of the first row, keeping the placements which are not larger
+	 * than the smallest first row found.
+	 */
+	private void searchFirstRow(int t, int r, int block, int usedStacks) {
+		if (block == 3) {
+			addCandidate(t, permutationIndex(), 1 << r, r / 3,
+					depthLabel[3], depthLabels[3]);
+			return;
+		}
+		int[] g = grids[t];
+		int emptyCols = emptyRows[1 - t];
+		boolean emptyStackTried = false;
+		for (int stack = 0; stack < 3; stack++) {
+			if ((usedStacks & (1 << stack)) != 0)
+				continue;
+			int emptyInStack = emptyCols >> (stack * 3) & 7;
+			if (emptyInStack == 7) {
+				if (emptyStackTried)
+					continue;
+				emptyStackTried = true;
+			}
+			for (int w = 0; w < 6; w++) {
+				if (emptyInStack != 0 && !inOrder(PERMS[w], emptyInStack))
+					continue;
+				int[] in = depthLabels[block];
+				int[] out = depthLabels[block + 1];
+				System.arraycopy(in, 0, out, 0, 10);
+				int label = depthLabel[block];
+				boolean smaller = false;
+				boolean larger = false;
+				for (int i = 0; i < 3 && !larger; i++) {
+					int digit = g[r * 9 + stack * 3 + PERMS[w][i]];
+					int value = 0;
+					if (digit != 0) {
+						value = out[digit];
+						if (value == 0)
+							value = out[digit] = ++label;
+					}
+					int j = block * 3 + i;
+					if (!smaller) {
+						if (value > best[j])
+							larger = true;
+						else if (value < best[j])
+							smaller = true;
+					}
+					row[j] = value;
+				}
+				if (larger)
+					continue;
+				if (smaller) {
+					System.arraycopy(row, block * 3, best, block * 3, 3);
+					Arrays.fill(best, block * 3 + 3, 9, 10);
+					nextSize = 0;
+				}
+				depthLabel[block + 1] = label;
+				stackAt[block] = stack;
+				within[block] = w;
+				searchFirstRow(t, r, block + 1, usedStacks | (1 << stack));
+			}
+		}
+	}
+
+	/**
+	 * Determines if a permutation of the columns of a stack keeps its empty
+	 * columns in their original order.
+	 */
+	private static boolean inOrder(int[] perm, int empty) {
+		int last = -1;
+		for (int i = 0; i < 3; i++)
+			if ((empty & (1 << perm[i])) != 0) {
+				if (perm[i] < last)
+					return false;
+				last = perm[i];
+			}
+		return true;
+	}
+
+	/**
+	 * Returns the index in COL_PERM of the permutation given by stackAt and
+	 * within.
+	 */
+	private int permutationIndex() {
+		int stacks = PERM_INDEX[stackAt[0] * 9 + stackAt[1] * 3 + stackAt[2]];
+		return ((stacks * 6 + within[0]) * 6 + within[1]) * 6 + within[2];
+	}
+
+	/**
+	 * Choose the first two rows of the canonical form of a complete grid,
+	 * leaving the candidates which give them in current.
+	 */
+	private void firstTwoRows() {
+		for (int j = 0; j < 9; j++)
+			best[j] = j + 1;
+		Arrays.fill(best, 9, 18, 10);
+		nextSize = 0;
+		for (int t = 0; t < 2; t++) {
+			int[] g = grids[t];
+			for (int r0 = 0; r0 < 9; r0++) {
+				for (int c = 0; c < 9; c++)
+					columnOf[g[r0 * 9 + c]] = c;
+				for (int r1 = r0 / 3 * 3; r1 < r0 / 3 * 3 + 3; r1++) {
+					if (r1 == r0)
+						continue;
+					for (int c = 0; c < 9; c++)
+						below[c] = columnOf[g[r1 * 9 + c]];
+					Arrays.fill(sigma, -1);
+					Arrays.fill(inverse, -1);
+					Arrays.fill(stackAt, -1);
+					searchSecondRow(t, r0, r1, 0);
+				}
+			}
+		}
+		swap();
+	}
+
+	/**
+	 * Choose the column for position j of a complete grid, where the first j
+	 * cells of the second row equal the smallest found so far.
+	 * 
+	 * The value of the second row at position j is the label of its digit,
+	 * which is one more than the position of that digit's column in the first
+	 * row. If that column has not been placed yet, it is placed in the
+	 * earliest free position it can take, as any later one would make the
+	 * row larger.
+	 */
+	private void searchSecondRow(int t, int r0, int r1, int j) {
+		if (j == 9) {
+			for (int b = 0; b < 3; b++)
+				within[b] = PERM_INDEX[(sigma[b * 3] - stackAt[b] * 3) * 9
+						+ (sigma[b * 3 + 1] - stackAt[b] * 3) * 3
+						+ sigma[b * 3 + 2] - stackAt[b] * 3];
+			int[] g = grids[t];
+			for (int c = 0; c < 9; c++)
+				labels[g[r0 * 9 + c]] = inverse[c] + 1;
+			addCandidate(t, permutationIndex(), (1 << r0) | (1 << r1),
+					r0 / 3, 9, labels);
+			return;
+		}
+		int block = j / 3;
+		if (sigma[j] >= 0) {
+			tryColumn(t, r0, r1, j, sigma[j], false);
+			return;
+		}
+		for (int c = 0; c < 9; c++) {
+			if (inverse[c] >= 0)
+				continue;
+			if (stackAt[block] >= 0 ? c / 3 != stackAt[block]
+					: isStackPlaced(c / 3))
+				continue;
+			tryColumn(t, r0, r1, j, c, true);
+		}
+	}
+
+	/**
+	 * Determines if a stack has been given a block of positions.
+	 */
+	private boolean isStackPlaced(int stack) {
+		return stackAt[0] == stack || stackAt[1] == stack
+				|| stackAt[2] == stack;
+	}
+
+	/**
+	 * Put column c in position j and go on to the next position if the second
+	 * row is still no larger than the smallest found.
+	 */
+	private void tryColumn(int t, int r0, int r1, int j, int c, boolean place) {
+		int block = j / 3;
+		boolean newBlock = place && stackAt[block] < 0;
+		if (place) {
+			sigma[j] = c;
+			inverse[c] = j;
+			if (newBlock)
+				stackAt[block] = c / 3;
+		}
+		// the column of the first row holding the digit below c
+		int e = below[c];
+		int placedAt = -1;
+		int placedBlock = -1;
+		if (inverse[e] < 0) {
+			// place e in the earliest free position of its stack's block,
+			// which is after this one as the block of c is not e's.
+			int eBlock = block + 1;
+			if (isStackPlaced(e / 3)) {
+				while (stackAt[eBlock] != e / 3)
+					eBlock++;
+			} else {
+				while (stackAt[eBlock] >= 0)
+					eBlock++;
+				stackAt[eBlock] = e / 3;
+				placedBlock = eBlock;
+			}
+			placedAt = eBlock * 3;
+			while (sigma[placedAt] >= 0)
+				placedAt++;
+			sigma[placedAt] = e;
+			inverse[e] = placedAt;
+		}
+		int value = inverse[e] + 1;
+		int b = 9 + j;
+		if (value <= best[b]) {
+			if (value < best[b]) {
+				best[b] = value;
+				Arrays.fill(best, b + 1, 18, 10);
+				nextSize = 0;
+			}
+			searchSecondRow(t, r0, r1, j + 1);
+		}
+		if (placedAt >= 0) {
+			sigma[placedAt] = -1;
+			inverse[e] = -1;
+			if (placedBlock >= 0)
+				stackAt[placedBlock] = -1;
+		}
+		if (place) {
+			sigma[j] = -1;
+			inverse[c] = -1;
+			if (newBlock)
+				stackAt[block] = -1;
+		}
+	}
+
+	/**
+	 * Add a candidate to next.
+	 */
+	private void addCandidate(int t, int p, int used, int band, int label,
+			int[] candidateLabels) {
+		if (nextSize + SLOT > next.length)
+			next = Arrays.copyOf(next, next.length * 2);
+		int n = nextSize;
+		next[n] = t;
+		next[n + 1] = p;
+		next[n + 2] = used;
+		next[n + 3] = band;
+		next[n + 4] = label;
+		for (int d = 1; d <= 9; d++)
+			next[n + 4 + d] = candidateLabels[d];
+		nextSize += SLOT;
+	}
+
+	/**
+	 * Make the candidates in next the current ones.
+	 */
+	private void swap() {
+		int[] swap = current;
+		current = next;
+		next = swap;
+		currentSize = nextSize;
+	}
+
+	/**
+	 * Choose row k of the canonical form: try every row which may come next
+	 * for every candidate, and keep the candidates giving the smallest row.
+	 */
+	private void nextRow(int k) {
+		Arrays.fill(best, k * 9, k * 9 + 9, 10);
+		nextSize = 0;
+		for (int off = 0; off < currentSize; off += SLOT) {
+			int t = current[off];
+			int used = current[off + 2];
+			int empty = emptyRows[t];
+			if (k % 3 == 0) {
+				// start a new band
+				boolean emptyBandTried = false;
+				for (int band = 0; band < 3; band++) {
+					if ((used >> (band * 3) & 7) != 0)
+						continue;
+					if ((empty >> (band * 3) & 7) == 7) {
+						if (emptyBandTried)
+							continue;
+						emptyBandTried = true;
+					}
+					tryRows(k, off, band, used, empty);
+				}
+			} else {
+				tryRows(k, off, current[off + 3], used, empty);
+			}
+		}
+		swap();
+	}
+
+	/**
+	 * Try the unused rows of a band as row k of a candidate. Of the empty
+	 * rows, only the first is tried.
+	 */
+	private void tryRows(int k, int off, int band, int used, int empty) {
+		boolean emptyTried = false;
+		for (int r = band * 3; r < band * 3 + 3; r++) {
+			if ((used & (1 << r)) != 0)
+				continue;
+			if ((empty & (1 << r)) != 0) {
+				if (emptyTried)
+					continue;
+				emptyTried = true;
+			}
+			tryRow(k, off, r);
+		}
+	}
+
+	/**
+	 * Relabel row r of a candidate, compare it with the smallest row k found
+	 * so far, and keep the candidate if the row is not larger.
+	 */
+	private void tryRow(int k, int off, int r) {
+		int[] g = grids[current[off]];
+		int base = current[off + 1] * 9;
+		int label = current[off + 4];
+		for (int d = 1; d <= 9; d++)
+			labels[d] = current[off + 4 + d];
+		int b = k * 9;
+		boolean smaller = false;
+		for (int j = 0; j < 9; j++) {
+			int digit = g[r * 9 + COL_PERM[base + j]];
+			int value = 0;
+			if (digit != 0) {
+				value = labels[digit];
+				if (value == 0)
+					value = labels[digit] = ++label;
+			}
+			if (!smaller) {
+				if (value > best[b + j])
+					return;
+				if (value < best[b + j])
+					smaller = true;
+			}
+			row[j] = value;
+		}
+		if (smaller) {
+			System.arraycopy(row, 0, best, b, 9);
+			nextSize = 0;
+		}
+		addCandidate(current[off], current[off + 1], current[off + 2]
+				| (1 << r), r / 3, label, labels);
+	}
+
+	/**
+	 * Returns the canonical form of a grid, using a Canonicalizer belonging
+	 * to the calling thread.
+	 * 
+	 * @param grid
+	 *            A grid of 81 characters, where 0 or '.' means an empty cell.
+	 * @return The canonical form.
+	 * @throws IllegalArgumentException
+	 *             If the grid is not 81 digits.
+	 */
+	public static String canonical(CharSequence grid) {
+		return CANONICALIZER.get().canonicalize(grid);
+	}
+
+	/**
+	 * Canonicalize the grids of a file in parallel, one grid per line, and
+	 * write either the canonical form of each grid or, if unique is true, only
+	 * the first of each set of equivalent grids.
+	 * 
+	 * @param in
+	 *            The grids.
+	 * @param out
+	 *            Where to write the result.
+	 * @param unique
+	 *            Whether to remove equivalent grids instead of writing the
+	 *            canonical forms.
+	 * @return The number of grids written.
+	 * @throws IOException
+	 *             If reading or writing fails.
+	 */
+	public static long run(BufferedReader in, Writer out, boolean unique)
+			throws IOException {
+		final String[] grids = new String[BATCH_SIZE];
+		final String[] forms = new String[BATCH_SIZE];
+		Set<String> seen = new HashSet<String>();
+		long written = 0;
+		int count;
+		do {
+			count = 0;
+			String line;
+			while (count < BATCH_SIZE && (line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() > 0)
+					grids[count++] = line;
+			}
+			IntStream.range(0, count).parallel().forEach(new IntConsumer() {
+				public void accept(int i) {
+					try {
+						forms[i] = canonical(grids[i]);
+					} catch (IllegalArgumentException e) {
+						forms[i] = null;
+					}
+				}
+			});
+			for (int i = 0; i < count; i++) {
+				if (forms[i] == null) {
+					if (!unique) {
+						out.write("invalid\n");
+						written++;
+					}
+				} else if (!unique) {
+					out.write(forms[i]);
+					out.write('\n');
+					written++;
+				} else if (seen.add(forms[i])) {
+					out.write(grids[i]);
+					out.write('\n');
+					written++;
+				}
+			}
+		} while (count == BATCH_SIZE);
+		return written;
+	}
+
+	/**
+	 * Canonicalize, or remove the equivalent grids of, a file of grids.
+	 * 
+	 * @param args
+	 *            canonical or unique, the input file and the output file.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3
+				|| !(args[0].equals("canonical") || args[0].equals("unique"))) {
+			System.err.println("Usage: java Canonicalizer canonical|unique input output");
+			System.exit(1);
+		}
+		long start = System.nanoTime();
+		long written = 0;
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					new FileInputStream(new File(args[1])),
+					StandardCharsets.US_ASCII));
+			try {
+				Writer out = new BufferedWriter(new OutputStreamWriter(
+						new FileOutputStream(new File(args[2])),
+						StandardCharsets.US_ASCII));
+				try {
+					written = run(in, out, args[0].equals("unique"));
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			System.exit(1);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("%d lines written in %.3f s%n", written, seconds);
+	}
+}
\ No newline at end of file
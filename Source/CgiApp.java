@@ -10,7 +10,21 @@ import java.io.*;
  */
 public class CgiApp {
 
-	private Hashtable<String, String> formInput;
+	/**
+	 * The largest POST body which will be read, which can be changed with the
+	 * cgi.max.body system property.
+	 */
+	public static final int MAX_BODY_SIZE = Integer.getInteger("cgi.max.body",
+			64 * 1024).intValue();
+	private static final int BUFFER_SIZE = 4096;
+	private static final String XHTML_HEADER = "Content-Type: text/html\n\n"
+			+ "<?xml version=\"1.0\" encoding=\"iso-8859-1\"?>\n"
+			+ "<!DOCTYPE html PUBLIC  \"-//W3C//DTD XHTML 1.1//EN\" \"http://www.w3.org/TR/xhtml11/DTD/xhtml11.dtd\">\n"
+			+ "<html  xmlns=\"http://www.w3.org/1999/xhtml\">\n";
+
+	private HashMap<String, String> formInput;
+	private boolean tooLarge;
+	private long parseTime;
 	Properties p;
 
 	/**
@@ -18,93 +32,107 @@ public class CgiApp {
 	 * through get methods
 	 */
 	public CgiApp() {
+		this(System.getProperty("request.method"), System
+				.getProperty("query.string"), System
+				.getProperty("content.length"), System.in);
+	}
+
+	/**
+	 * Constructor for a CgiApp which takes the request from its arguments
+	 * rather than from the system properties and System.in, so that requests
+	 * can be handled by a server which stays running between requests.
+	 * 
+	 * @param requestMethod
+	 *            the request method, e.g. GET or POST
+	 * @param queryString
+	 *            the query string of a GET request
+	 * @param contentLength
+	 *            the length of the body of a POST request
+	 * @param in
+	 *            the stream to read the body of a POST request from
+	 */
+	public CgiApp(String requestMethod, String queryString,
+			String contentLength, InputStream in) {
 		p = System.getProperties();
-		formInput = new Hashtable<String, String>(31);
-		parseQuery();
+		formInput = new HashMap<String, String>(16);
+		long start = System.nanoTime();
+		parseQuery(requestMethod, queryString, contentLength, in);
+		parseTime = System.nanoTime() - start;
 	}
 
-	private void parseQuery() {
-		String requestMethod = p.getProperty("request.method");
-		String input = null;
+	private void parseQuery(String requestMethod, String queryString,
+			String s, InputStream in) {
+		FormDecoder decoder = new FormDecoder(formInput);
 
 		if (requestMethod != null && requestMethod.equals("POST")) {
 
-			int contentLength = 0;
-			String s = p.getProperty("content.length");
-
-			if (s != null)
-				contentLength = java.lang.Integer.parseInt(s);
-
-			if (contentLength > 0) {
-				byte buffer[] = new byte[contentLength];
-				int bytesToRead = contentLength;
-				int bytesRead = 0;
-				int count = 0;
-				do {
-					try {
-						count = System.in.read(buffer, bytesRead, bytesToRead);
-					} catch (IOException e) {
-					}
-					bytesRead += count;
-					bytesToRead -= count;
-				} while (bytesToRead > 0);
-				input = new String(buffer, 0, contentLength);
+			long contentLength = 0;
+
+			try {
+				if (s != null)
+					contentLength = Long.parseLong(s.trim());
+			} catch (NumberFormatException e) {
+				contentLength = 0;
 			}
-		} else {
-			input = p.getProperty("query.string");
+
+			if (contentLength > MAX_BODY_SIZE)
+				tooLarge = true;
+			else if (contentLength > 0)
+				readBody(in, (int) contentLength, decoder);
+		} else if (queryString != null) {
+			decoder.update(queryString);
 		}
-		StringTokenizer t = new StringTokenizer(input, "&\n");
-		while (t.hasMoreTokens())
-			put(t.nextToken());
+		decoder.finish();
 	}
 
-	private String unescape(String s) {
-		String target = new String();
-		String source = s;
-		int nextEscape;
-
-		do {
-			nextEscape = source.indexOf('%');
-
-			if (nextEscape != -1) {
-				String header = source.substring(0, nextEscape);
-				String trailer = source.substring(nextEscape + 3);
-				String escape = source
-						.substring(nextEscape + 1, nextEscape + 3);
-
-				byte charValue[] = new byte[1];
-
-				try {
-					charValue[0] = (byte) Integer.parseInt(escape, 16);
-				} catch (NumberFormatException e) {
-				}
-
-				String unescaped = new String(charValue, 0, 1);
-				target = target.concat(header);
-				target = target.concat(unescaped);
-				source = trailer;
-			} else
-				target = target.concat(source);
-
-		} while (nextEscape != -1);
-
-		return target;
+	/**
+	 * Read the body of a POST request through a fixed-size buffer, decoding it
+	 * as it arrives. Reading stops early if the stream ends or fails before
+	 * the whole body has been read.
+	 * 
+	 * @param in
+	 *            the stream to read the body from
+	 * @param contentLength
+	 *            the length of the body
+	 * @param decoder
+	 *            the decoder to pass the body to
+	 */
+	private void readBody(InputStream in, int contentLength,
+			FormDecoder decoder) {
+		byte buffer[] = new byte[Math.min(contentLength, BUFFER_SIZE)];
+		int bytesToRead = contentLength;
+		while (bytesToRead > 0) {
+			int count;
+			try {
+				count = in.read(buffer, 0, Math.min(bytesToRead, buffer.length));
+			} catch (IOException e) {
+				break;
+			}
+			if (count < 0)
+				break;
+			decoder.update(buffer, 0, count);
+			bytesToRead -= count;
+		}
 	}
 
-	private void put(String s) {
-		// First, change + to space
-
-		s = s.replace('+', ' ');
-
-		int equalSignPos = s.indexOf('=');
-		if (equalSignPos > 0) {
-
-			String key = unescape(s.substring(0, equalSignPos));
-
-			String value = unescape(s.substring(equalSignPos + 1));
+	/**
+	 * Determines if the request was ignored because its body was larger than
+	 * MAX_BODY_SIZE.
+	 * 
+	 * @return true if the body was too large to be read
+	 */
+	public boolean isRequestTooLarge() {
+		return tooLarge;
+	}
 
-			formInput.put(key, value);
-		}
+	/**
+	 * Returns the time taken to parse the request, including reading its
+	 * body.
+	 * 
+	 * @return the time in nanoseconds
+	 */
+	public long getParseTime() {
+		return parseTime;
 	}
 
 	/**
@@ -136,11 +164,7 @@ public class CgiApp {
 	 * @return the XHTML header from Content-Type to the close of the <html> tag
 	 */
 	public static String getXHTMLHeader() {
-		String out = "Content-Type: text/html\n\n";
-		out += "<?xml version=\"1.0\" encoding=\"iso-8859-1\"?>\n";
-		out += "<!DOCTYPE html PUBLIC  \"-//W3C//DTD XHTML 1.1//EN\" \"http://www.w3.org/TR/xhtml11/DTD/xhtml11.dtd\">\n";
-		out += "<html  xmlns=\"http://www.w3.org/1999/xhtml\">\n";
-		return out;
+		return XHTML_HEADER;
 	}
 
 	/**
@@ -150,11 +174,7 @@ public class CgiApp {
 	 * @return Return n array containing all the names from the name=value pairs
 	 */
 	public String[] getAllNames() {
-		Enumeration<String> keys = formInput.keys();
-		ArrayList<String> keyArr = new ArrayList<String>();
-		while (keys.hasMoreElements())
-			keyArr.add(keys.nextElement());
-		return keyArr.toArray(new String[keyArr.size()]);
+		return formInput.keySet().toArray(new String[formInput.size()]);
 	}
 
 	/**
@@ -196,9 +216,7 @@ public class CgiApp {
 
 		// This is a device to run through all the fields from the form
 
-		Enumeration<String> fieldsEnum = formInput.keys();
-		while (fieldsEnum.hasMoreElements()) {
-			String key = fieldsEnum.nextElement();
+		for (String key : formInput.keySet()) {
 
 			// Now we've found a field called `key', so we add it to the page
 
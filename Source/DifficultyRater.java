@@ -0,0 +1,315 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The DifficultyRater class rates Sudoku puzzles by solving them with the
+ * HintEngine, the way a person would. A puzzle's rating is the hardest
+ * technique it needs, the number of steps and how often each technique was
+ * used, from which a difficulty tier is derived. The tier is used to pick the
+ * puzzle served to the applet.
+ * 
+ * As a command line tool it rates every line of a puzzle file. The file is
+ * read in batches, the puzzles of a batch are rated in parallel and the
+ * ratings are written in the same order as the input, one line per non-empty
+ * input line:
+ * 
+ * <pre>
+ * puzzle TIER HARDEST_TECHNIQUE steps count,count,...
+ * </pre>
+ * 
+ * where the counts are in the order of HintEngine.Technique. Lines which are
+ * not puzzles are rated "invalid".
+ * 
+ * @author Ole Sandbu
+ */
+public class DifficultyRater {
+	private static final int BATCH_SIZE = 4096;
+	private static final ThreadLocal<HintEngine> ENGINE = new ThreadLocal<HintEngine>() {
+		protected HintEngine initialValue() {
+			return new HintEngine();
+		}
+	};
+
+	/** How hard a puzzle is. */
+	public enum Tier {
+		/** Solved with naked singles only. */
+		EASY,
+		/** Needs hidden singles. */
+		MEDIUM,
+		/** Needs pointing or box/line reduction. */
+		HARD,
+		/** Needs naked or hidden pairs. */
+		EXPERT,
+		/** Cannot be solved with the techniques of the HintEngine. */
+		UNRATED;
+
+		/**
+		 * Returns the tier of a puzzle.
+		 * 
+		 * @param hardest
+		 *            The hardest technique used.
+		 * @param solved
+		 *            Whether the puzzle was solved.
+		 * @return The tier.
+		 */
+		static Tier of(HintEngine.Technique hardest, boolean solved) {
+			if (!solved)
+				return UNRATED;
+			switch (hardest) {
+			case NAKED_SINGLE:
+				return EASY;
+			case HIDDEN_SINGLE:
+				return MEDIUM;
+			case POINTING:
+			case BOX_LINE:
+				return HARD;
+			default:
+				return EXPERT;
+			}
+		}
+	}
+
+	/**
+	 * The rating of a puzzle.
+	 */
+	public static final class Rating {
+		private final Tier tier;
+		private final HintEngine.Technique hardest;
+		private final int steps;
+		private final int[] counts;
+
+		private Rating(Tier tier, HintEngine.Technique hardest, int steps,
+				int[] counts) {
+			this.tier = tier;
+			this.hardest = hardest;
+			this.steps = steps;
+			this.counts = counts;
+		}
+
+		/**
+		 * Returns the difficulty tier.
+		 */
+		public Tier getTier() {
+			return tier;
+		}
+
+		/**
+		 * Returns the hardest technique used.
+		 */
+		public HintEngine.Technique getHardest() {
+			return hardest;
+		}
+
+		/**
+		 * Returns the number of steps taken.
+		 */
+		public int getSteps() {
+			return steps;
+		}
+
+		/**
+		 * Returns how many steps used a technique.
+		 * 
+		 * @param technique
+		 *            The technique.
+		 * @return The number of steps.
+		 */
+		public int getCount(HintEngine.Technique technique) {
+			return counts[technique.ordinal()];
+		}
+
+		/**
+		 * Returns the rating in the format written by the command line tool,
+		 * without the puzzle.
+		 */
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(tier).append(' ').append(hardest.name()).append(' ')
+					.append(steps).append(' ');
+			for (int i = 0; i < counts.length; i++) {
+				if (i > 0)
+					sb.append(',');
+				sb.append(counts[i]);
+			}
+			return sb.toString();
+		}
+	}
+
+	private final long[] tiers = new long[Tier.values().length];
+	private long lines;
+	private long invalid;
+
+	/**
+	 * Rate a puzzle.
+	 * 
+	 * @param puzzle
+	 *            A puzzle of 81 characters, where 0 or '.' means an empty
+	 *            cell.
+	 * @return The rating.
+	 * @throws IllegalArgumentException
+	 *             If the puzzle is not 81 digits.
+	 */
+	public static Rating rate(CharSequence puzzle) {
+		HintEngine engine = ENGINE.get();
+		engine.load(puzzle);
+		HintEngine.Technique hardest = HintEngine.Technique.NAKED_SINGLE;
+		int[] counts = new int[HintEngine.Technique.values().length];
+		int steps = 0;
+		HintEngine.Step step;
+		while ((step = engine.step()) != null) {
+			HintEngine.Technique technique = step.getTechnique();
+			counts[technique.ordinal()]++;
+			steps++;
+			if (technique.compareTo(hardest) > 0)
+				hardest = technique;
+		}
+		return new Rating(Tier.of(hardest, engine.isSolved()), hardest,
+				steps, counts);
+	}
+
+	/**
+	 * Rate the puzzles of a file and write the ratings to another.
+	 * 
+	 * @param input
+	 *            The file of puzzles.
+	 * @param output
+	 *            The file to write the ratings to.
+	 * @throws IOException
+	 *             If either file cannot be read or written.
+	 */
+	public void run(File input, File output) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(input), StandardCharsets.US_ASCII));
+		try {
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(output), StandardCharsets.US_ASCII));
+			try {
+				run(in, out);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Rate the puzzles read from a reader and write the ratings to a writer.
+	 * 
+	 * @param in
+	 *            The puzzles, one per line.
+	 * @param out
+	 *            Where to write the ratings.
+	 * @throws IOException
+	 *             If reading or writing fails.
+	 */
+	public void run(BufferedReader in, Writer out) throws IOException {
+		final String[] puzzles = new String[BATCH_SIZE];
+		final Rating[] ratings = new Rating[BATCH_SIZE];
+		int count;
+		do {
+			count = 0;
+			String line;
+			while (count < BATCH_SIZE && (line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() > 0)
+					puzzles[count++] = puzzleOf(line);
+			}
+			final int n = count;
+			IntStream.range(0, n).parallel().forEach(new IntConsumer() {
+				public void accept(int i) {
+					try {
+						ratings[i] = rate(puzzles[i]);
+					} catch (IllegalArgumentException e) {
+						ratings[i] = null;
+					}
+				}
+			});
+			for (int i = 0; i < n; i++) {
+				out.write(puzzles[i]);
+				out.write(' ');
+				if (ratings[i] == null) {
+					out.write("invalid");
+					invalid++;
+				} else {
+					out.write(ratings[i].toString());
+					tiers[ratings[i].getTier().ordinal()]++;
+				}
+				out.write('\n');
+			}
+			lines += n;
+		} while (count == BATCH_SIZE);
+	}
+
+	/**
+	 * Returns the puzzle on a line, which is the last 81 characters if the
+	 * line contains more than the puzzle.
+	 */
+	private static String puzzleOf(String line) {
+		int space = line.lastIndexOf(' ');
+		return space < 0 ? line : line.substring(space + 1);
+	}
+
+	/**
+	 * Returns the number of lines rated so far.
+	 */
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * Returns the number of lines which were not puzzles.
+	 */
+	public long getInvalid() {
+		return invalid;
+	}
+
+	/**
+	 * Returns the number of puzzles rated in a tier so far.
+	 * 
+	 * @param tier
+	 *            The tier.
+	 * @return The number of puzzles.
+	 */
+	public long getCount(Tier tier) {
+		return tiers[tier.ordinal()];
+	}
+
+	/**
+	 * Rate the puzzles of a file, then print how many were in each tier.
+	 * 
+	 * @param args
+	 *            The input and output files.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: java DifficultyRater input output");
+			System.exit(1);
+		}
+		DifficultyRater rater = new DifficultyRater();
+		long start = System.nanoTime();
+		try {
+			rater.run(new File(args[0]), new File(args[1]));
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			System.exit(1);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		for (Tier tier : Tier.values())
+			System.err.printf("%-8s %d%n", tier, rater.getCount(tier));
+		System.err.printf("%d puzzles (%d invalid) in %.3f s: %.0f puzzles/s%n",
+				rater.getLines(), rater.getInvalid(), seconds, rater
+						.getLines()
+						/ seconds);
+	}
+}
\ No newline at end of file
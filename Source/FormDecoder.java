@@ -0,0 +1,247 @@
+import java.util.Map;
+
+/**
+ * The FormDecoder class decodes form data in the application/x-www-form-urlencoded
+ * format ("name=value" pairs separated by '&' or newlines, with '+' for space
+ * and %XX escapes for other bytes) into a map.
+ * 
+ * The input is read once, one byte at a time, in as many pieces as the caller
+ * likes. Escapes are turned into bytes and the bytes are decoded as UTF-8
+ * straight into a char buffer which is reused for every name and value, so the
+ * only objects created are the Strings put in the map. Malformed escapes are
+ * kept as they are, and malformed UTF-8 is replaced by U+FFFD.
+ * 
+ * @author Ole Sandbu
+ */
+final class FormDecoder {
+	private static final char REPLACEMENT = '\uFFFD';
+	private final Map<String, String> map;
+	private char[] chars = new char[64];
+	private int length;
+	// the decoded name of the current pair, or null while reading the name.
+	private String name;
+	// the number of raw bytes in the name of the current pair.
+	private int rawNameLength;
+	// 0 outside an escape, 1 after '%', 2 after '%' and one hex digit.
+	private int escape;
+	private int escapeHigh;
+	private int escapeFirst;
+	// the UTF-8 sequence being decoded.
+	private int codePoint;
+	private int pending;
+	private int minCodePoint;
+
+	/**
+	 * Create a new FormDecoder.
+	 * 
+	 * @param map
+	 *            The map to put the decoded pairs in.
+	 */
+	FormDecoder(Map<String, String> map) {
+		this.map = map;
+	}
+
+	/**
+	 * Decode a piece of the input.
+	 * 
+	 * @param buf
+	 *            The buffer holding the input.
+	 * @param off
+	 *            The start of the input in the buffer.
+	 * @param len
+	 *            The number of bytes of input.
+	 */
+	void update(byte[] buf, int off, int len) {
+		for (int i = off, end = off + len; i < end; i++)
+			update(buf[i] & 0xFF);
+	}
+
+	/**
+	 * Decode a piece of the input given as a String, e.g. the query string of
+	 * a GET request. Characters outside ASCII are read as their UTF-8 bytes.
+	 * 
+	 * @param s
+	 *            The input.
+	 */
+	void update(CharSequence s) {
+		for (int i = 0; i < s.length(); i++) {
+			int c = s.charAt(i);
+			if (c < 0x80) {
+				update(c);
+			} else if (c < 0x800) {
+				update(0xC0 | c >> 6);
+				update(0x80 | c & 0x3F);
+			} else if (Character.isHighSurrogate((char) c) && i + 1 < s.length()
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint((char) c, s.charAt(++i));
+				update(0xF0 | cp >> 18);
+				update(0x80 | cp >> 12 & 0x3F);
+				update(0x80 | cp >> 6 & 0x3F);
+				update(0x80 | cp & 0x3F);
+			} else {
+				update(0xE0 | c >> 12);
+				update(0x80 | c >> 6 & 0x3F);
+				update(0x80 | c & 0x3F);
+			}
+		}
+	}
+
+	/**
+	 * Finish decoding, putting the last pair in the map.
+	 */
+	void finish() {
+		endPair();
+	}
+
+	/**
+	 * Decode one raw byte of input.
+	 */
+	private void update(int b) {
+		if (escape == 1) {
+			int hex = hexValue(b);
+			if (hex >= 0) {
+				escapeHigh = hex;
+				escapeFirst = b;
+				escape = 2;
+				return;
+			}
+			escape = 0;
+			decodeByte('%');
+		} else if (escape == 2) {
+			escape = 0;
+			int hex = hexValue(b);
+			if (hex >= 0) {
+				decodeByte(escapeHigh << 4 | hex);
+				return;
+			}
+			decodeByte('%');
+			decodeByte(escapeFirst);
+		}
+		if (b == '&' || b == '\n') {
+			endPair();
+		} else if (b == '=' && name == null) {
+			endName();
+		} else {
+			if (name == null)
+				rawNameLength++;
+			if (b == '%')
+				escape = 1;
+			else if (b == '+')
+				decodeByte(' ');
+			else
+				decodeByte(b);
+		}
+	}
+
+	/**
+	 * Finish any escape which has been started, leaving its characters as
+	 * they are.
+	 */
+	private void endEscape() {
+		if (escape >= 1)
+			decodeByte('%');
+		if (escape == 2)
+			decodeByte(escapeFirst);
+		escape = 0;
+	}
+
+	/**
+	 * Finish the name of the current pair.
+	 */
+	private void endName() {
+		endEscape();
+		endCodePoint();
+		name = new String(chars, 0, length);
+		length = 0;
+	}
+
+	/**
+	 * Finish the current pair and put it in the map. Pairs without an '=' or
+	 * with an empty name are ignored.
+	 */
+	private void endPair() {
+		endEscape();
+		endCodePoint();
+		if (name != null && rawNameLength > 0)
+			map.put(name, new String(chars, 0, length));
+		name = null;
+		rawNameLength = 0;
+		length = 0;
+	}
+
+	/**
+	 * Decode one byte of UTF-8.
+	 */
+	private void decodeByte(int b) {
+		if (pending > 0) {
+			if ((b & 0xC0) == 0x80) {
+				codePoint = codePoint << 6 | (b & 0x3F);
+				if (--pending == 0) {
+					if (codePoint < minCodePoint || codePoint > 0x10FFFF
+							|| (codePoint >= 0xD800 && codePoint <= 0xDFFF))
+						append(REPLACEMENT);
+					else
+						appendCodePoint(codePoint);
+				}
+				return;
+			}
+			pending = 0;
+			append(REPLACEMENT);
+		}
+		if (b < 0x80) {
+			append((char) b);
+		} else if ((b & 0xE0) == 0xC0) {
+			codePoint = b & 0x1F;
+			pending = 1;
+			minCodePoint = 0x80;
+		} else if ((b & 0xF0) == 0xE0) {
+			codePoint = b & 0x0F;
+			pending = 2;
+			minCodePoint = 0x800;
+		} else if ((b & 0xF8) == 0xF0) {
+			codePoint = b & 0x07;
+			pending = 3;
+			minCodePoint = 0x10000;
+		} else {
+			append(REPLACEMENT);
+		}
+	}
+
+	/**
+	 * Finish a UTF-8 sequence which has been started but not completed.
+	 */
+	private void endCodePoint() {
+		if (pending > 0) {
+			pending = 0;
+			append(REPLACEMENT);
+		}
+	}
+
+	private void appendCodePoint(int cp) {
+		if (cp < 0x10000) {
+			append((char) cp);
+		} else {
+			append(Character.highSurrogate(cp));
+			append(Character.lowSurrogate(cp));
+		}
+	}
+
+	private void append(char c) {
+		if (length == chars.length) {
+			char[] larger = new char[chars.length * 2];
+			System.arraycopy(chars, 0, larger, 0, length);
+			chars = larger;
+		}
+		chars[length++] = c;
+	}
+
+	private static int hexValue(int b) {
+		if (b >= '0' && b <= '9')
+			return b - '0';
+		if (b >= 'a' && b <= 'f')
+			return b - 'a' + 10;
+		if (b >= 'A' && b <= 'F')
+			return b - 'A' + 10;
+		return -1;
+	}
+}
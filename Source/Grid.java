@@ -0,0 +1,97 @@
+/**
+ * The Grid class holds tables describing the layout of a 9x9 Sudoku grid. Cells
+ * are numbered 0..80 in row-major order, which is the same order as the 81
+ * character Strings used by SudokuApplet.getCellContent and setCellContent.
+ * 
+ * The tables are computed once, so that code working on a grid never has to
+ * calculate which row, column or subgrid a cell belongs to.
+ * 
+ * @author Ole Sandbu
+ */
+public final class Grid {
+	/** The number of cells in a grid. */
+	public static final int CELLS = 81;
+	/** The number of units (rows, columns and subgrids) in a grid. */
+	public static final int UNITS = 27;
+	/** The number of peers (cells sharing a unit) of each cell. */
+	public static final int PEERS = 20;
+	/** A 9-bit mask containing all the digits 1..9. */
+	public static final int ALL_DIGITS = 0x1FF;
+
+	/** The row of each cell. */
+	static final int[] ROW = new int[CELLS];
+	/** The column of each cell. */
+	static final int[] COL = new int[CELLS];
+	/** The subgrid of each cell, numbered 0..8 in row-major order. */
+	static final int[] BOX = new int[CELLS];
+	/**
+	 * The cells of each unit. Units 0..8 are the rows, 9..17 the columns and
+	 * 18..26 the subgrids.
+	 */
+	static final int[][] UNIT_CELLS = new int[UNITS][9];
+	/** The 20 peers of each cell, flattened so that cell c starts at c*20. */
+	static final int[] PEER_CELLS = new int[CELLS * PEERS];
+
+	static {
+		for (int cell = 0; cell < CELLS; cell++) {
+			int row = cell / 9;
+			int col = cell % 9;
+			int box = row / 3 * 3 + col / 3;
+			ROW[cell] = row;
+			COL[cell] = col;
+			BOX[cell] = box;
+			UNIT_CELLS[row][col] = cell;
+			UNIT_CELLS[9 + col][row] = cell;
+			UNIT_CELLS[18 + box][row % 3 * 3 + col % 3] = cell;
+		}
+		for (int cell = 0; cell < CELLS; cell++) {
+			int n = cell * PEERS;
+			for (int other = 0; other < CELLS; other++) {
+				if (other != cell
+						&& (ROW[other] == ROW[cell] || COL[other] == COL[cell] || BOX[other] == BOX[cell]))
+					PEER_CELLS[n++] = other;
+			}
+		}
+	}
+
+	private Grid() {
+	}
+
+	/**
+	 * Returns the value of a character in the 81 character grid format.
+	 * 
+	 * @param c
+	 *            A character.
+	 * @return The digit 1..9, 0 for an empty cell ('0' or '.'), or -1 if the
+	 *         character is not allowed in a grid.
+	 */
+	static int digit(int c) {
+		if (c >= '1' && c <= '9')
+			return c - '0';
+		if (c == '0' || c == '.')
+			return 0;
+		return -1;
+	}
+
+	/**
+	 * Returns the mask bit used for a digit.
+	 * 
+	 * @param digit
+	 *            A digit in the range 1..9.
+	 * @return The bit representing the digit.
+	 */
+	static int bit(int digit) {
+		return 1 << (digit - 1);
+	}
+
+	/**
+	 * Returns the digit represented by a mask with a single bit set.
+	 * 
+	 * @param bit
+	 *            A mask with one bit set.
+	 * @return The digit in the range 1..9.
+	 */
+	static int digitOf(int bit) {
+		return Integer.numberOfTrailingZeros(bit) + 1;
+	}
+}
@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The GridModel class holds the state of a Sudoku grid being solved, without
+ * any dependency on Swing, so that it can be used and tested without a
+ * display.
+ * 
+ * The grid is an array of 81 digits. For every row, column and subgrid the
+ * model counts how many times each digit appears in it, so whether a cell
+ * conflicts with one of its peers is answered by looking at three counters,
+ * and an edit only has to update three counters. Listeners are told about
+ * each edit so that a view can redraw the cell and its peers.
+ * 
+ * @author Ole Sandbu
+ */
+public class GridModel {
+	private final int[] cells = new int[Grid.CELLS];
+	private final boolean[] givens = new boolean[Grid.CELLS];
+	// counts[unit * 10 + digit] is the number of times digit is in unit.
+	private final int[] counts = new int[Grid.UNITS * 10];
+	private final List<GridModelListener> listeners = new ArrayList<GridModelListener>();
+	private int filled;
+	// the number of surplus digits over all units.
+	private int conflicts;
+
+	/**
+	 * Add a listener which is notified whenever a cell changes. Listeners are
+	 * notified in the order in which they were added.
+	 * 
+	 * @param listener
+	 *            The listener.
+	 */
+	public void addGridModelListener(GridModelListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Remove a listener.
+	 * 
+	 * @param listener
+	 *            The listener.
+	 */
+	public void removeGridModelListener(GridModelListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Load a puzzle, replacing the content of every cell. The non-empty cells
+	 * of the puzzle become givens, which cannot be changed.
+	 * 
+	 * @param puzzle
+	 *            A puzzle of 81 characters, where 0 or '.' means an empty
+	 *            cell.
+	 * @throws IllegalArgumentException
+	 *             If the puzzle is not 81 digits.
+	 */
+	public void load(String puzzle) {
+		if (puzzle == null || puzzle.length() != Grid.CELLS)
+			throw new IllegalArgumentException("Not a puzzle: " + puzzle);
+		for (int cell = 0; cell < Grid.CELLS; cell++)
+			if (Grid.digit(puzzle.charAt(cell)) < 0)
+				throw new IllegalArgumentException("Not a puzzle: " + puzzle);
+		for (int cell = 0; cell < Grid.CELLS; cell++) {
+			int digit = Grid.digit(puzzle.charAt(cell));
+			givens[cell] = false;
+			update(cell, digit);
+			givens[cell] = digit != 0;
+		}
+	}
+
+	/**
+	 * Returns the digit in a cell.
+	 * 
+	 * @param cell
+	 *            The cell, 0..80 in row-major order.
+	 * @return The digit, or 0 if the cell is empty.
+	 */
+	public int get(int cell) {
+		return cells[cell];
+	}
+
+	/**
+	 * Determines if a cell is one of the givens of the puzzle.
+	 * 
+	 * @param cell
+	 *            The cell.
+	 * @return true if the cell is a given, false otherwise.
+	 */
+	public boolean isGiven(int cell) {
+		return givens[cell];
+	}
+
+	/**
+	 * Put a digit in a cell, or empty it. Givens cannot be changed.
+	 * 
+	 * @param cell
+	 *            The cell, 0..80 in row-major order.
+	 * @param digit
+	 *            The digit 1..9, or 0 to empty the cell.
+	 * @return false if the cell is a given, true otherwise.
+	 */
+	public boolean set(int cell, int digit) {
+		if (digit < 0 || digit > 9)
+			throw new IllegalArgumentException("Not a digit: " + digit);
+		if (givens[cell])
+			return false;
+		update(cell, digit);
+		return true;
+	}
+
+	/**
+	 * Change the digit in a cell and notify the listeners.
+	 */
+	private void update(int cell, int digit) {
+		int old = cells[cell];
+		if (old == digit)
+			return;
+		if (old != 0) {
+			remove(Grid.ROW[cell], old);
+			remove(9 + Grid.COL[cell], old);
+			remove(18 + Grid.BOX[cell], old);
+			filled--;
+		}
+		if (digit != 0) {
+			add(Grid.ROW[cell], digit);
+			add(9 + Grid.COL[cell], digit);
+			add(18 + Grid.BOX[cell], digit);
+			filled++;
+		}
+		cells[cell] = digit;
+		for (int i = 0; i < listeners.size(); i++)
+			listeners.get(i).cellChanged(cell, old, digit);
+	}
+
+	private void add(int unit, int digit) {
+		if (counts[unit * 10 + digit]++ > 0)
+			conflicts++;
+	}
+
+	private void remove(int unit, int digit) {
+		if (--counts[unit * 10 + digit] > 0)
+			conflicts--;
+	}
+
+	/**
+	 * Determines if the digit in a cell also appears in the cell's row, column
+	 * or subgrid.
+	 * 
+	 * @param cell
+	 *            The cell.
+	 * @return true if the cell conflicts with a peer, false if it does not or
+	 *         is empty.
+	 */
+	public boolean isConflicting(int cell) {
+		int digit = cells[cell];
+		return digit != 0
+				&& (counts[Grid.ROW[cell] * 10 + digit] > 1
+						|| counts[(9 + Grid.COL[cell]) * 10 + digit] > 1 || counts[(18 + Grid.BOX[cell]) * 10 + digit] > 1);
+	}
+
+	/**
+	 * Determines if any cell conflicts with one of its peers.
+	 * 
+	 * @return true if there is at least one conflict.
+	 */
+	public boolean hasConflicts() {
+		return conflicts > 0;
+	}
+
+	/**
+	 * Determines if every cell has a digit in it.
+	 * 
+	 * @return true if the grid is full.
+	 */
+	public boolean isComplete() {
+		return filled == Grid.CELLS;
+	}
+
+	/**
+	 * Determines if the grid is full and has no conflicts, i.e. that it is a
+	 * solution.
+	 * 
+	 * @return true if the grid is solved.
+	 */
+	public boolean isSolved() {
+		return filled == Grid.CELLS && conflicts == 0;
+	}
+
+	/**
+	 * Returns the content of the grid as a String of 81 characters, where 0
+	 * means an empty cell.
+	 * 
+	 * @return The content of the grid.
+	 */
+	public String getContent() {
+		char[] chars = new char[Grid.CELLS];
+		for (int cell = 0; cell < Grid.CELLS; cell++)
+			chars[cell] = (char) ('0' + cells[cell]);
+		return new String(chars);
+	}
+
+	/**
+	 * Returns the content of the grid.
+	 */
+	public String toString() {
+		return getContent();
+	}
+}
@@ -0,0 +1,20 @@
+/**
+ * A GridModelListener is notified whenever the digit in a cell of a GridModel
+ * changes.
+ * 
+ * @author Ole Sandbu
+ */
+public interface GridModelListener {
+	/**
+	 * Called after the digit in a cell has changed. The conflict state of the
+	 * cell and of its peers may have changed as well.
+	 * 
+	 * @param cell
+	 *            The cell, 0..80 in row-major order.
+	 * @param oldDigit
+	 *            The previous digit, 0 if the cell was empty.
+	 * @param newDigit
+	 *            The new digit, 0 if the cell is now empty.
+	 */
+	void cellChanged(int cell, int oldDigit, int newDigit);
+}
@@ -0,0 +1,625 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The HintEngine class finds the next logical deduction in a partially
+ * completed Sudoku grid, the way a person would, without guessing.
+ * 
+ * The engine keeps the candidates of every cell as a 9-bit mask and tries the
+ * techniques in order of difficulty, so a step always uses the easiest
+ * technique that makes progress. Techniques which only remove candidates are
+ * applied until one of the singles can place a digit, which is what a hint
+ * shows the player. The steps can also be taken one at a time, to rate how
+ * hard a puzzle is.
+ * 
+ * Instances are not thread-safe.
+ * 
+ * @author Ole Sandbu
+ */
+public class HintEngine {
+	/**
+	 * The techniques the engine knows, from the easiest to the hardest.
+	 */
+	public enum Technique {
+		/** A cell with only one candidate. */
+		NAKED_SINGLE("Naked single"),
+		/** A digit with only one place in a row, column or subgrid. */
+		HIDDEN_SINGLE("Hidden single"),
+		/** A digit confined to one line within a subgrid. */
+		POINTING("Pointing"),
+		/** A digit confined to one subgrid within a line. */
+		BOX_LINE("Box/line reduction"),
+		/** Two cells of a unit with the same two candidates. */
+		NAKED_PAIR("Naked pair"),
+		/** Two digits with the same two places in a unit. */
+		HIDDEN_PAIR("Hidden pair");
+
+		private final String title;
+
+		private Technique(String title) {
+			this.title = title;
+		}
+
+		/**
+		 * Returns the name of the technique as shown to a player.
+		 */
+		public String toString() {
+			return title;
+		}
+	}
+
+	/**
+	 * A Step is one deduction: either a digit placed in a cell or a number of
+	 * candidates removed.
+	 */
+	public static final class Step {
+		private final Technique technique;
+		private final int cell;
+		private final int digit;
+		private final int eliminations;
+		private final String explanation;
+
+		private Step(Technique technique, int cell, int digit,
+				int eliminations, String explanation) {
+			this.technique = technique;
+			this.cell = cell;
+			this.digit = digit;
+			this.eliminations = eliminations;
+			this.explanation = explanation;
+		}
+
+		/**
+		 * Returns the technique used.
+		 */
+		public Technique getTechnique() {
+			return technique;
+		}
+
+		/**
+		 * Returns the cell a digit was placed in, or -1 if the step only
+		 * removed candidates.
+		 */
+		public int getCell() {
+			return cell;
+		}
+
+		/**
+		 * Returns the digit placed, or the digit whose candidates were removed
+		 * if only one was, otherwise 0.
+		 */
+		public int getDigit() {
+			return digit;
+		}
+
+		/**
+		 * Returns the number of candidates removed.
+		 */
+		public int getEliminations() {
+			return eliminations;
+		}
+
+		/**
+		 * Determines if the step placed a digit.
+		 */
+		public boolean isPlacement() {
+			return cell >= 0;
+		}
+
+		/**
+		 * Returns an explanation of the step for a player.
+		 */
+		public String getExplanation() {
+			return explanation;
+		}
+
+		/**
+		 * Returns the explanation of the step.
+		 */
+		public String toString() {
+			return technique + ": " + explanation;
+		}
+	}
+
+	/**
+	 * A Hint is the next digit which can be placed, together with the steps
+	 * removing candidates which were needed to find it.
+	 */
+	public static final class Hint {
+		private final List<Step> steps;
+
+		private Hint(List<Step> steps) {
+			this.steps = Collections.unmodifiableList(steps);
+		}
+
+		/**
+		 * Returns the cell the digit goes in, 0..80 in row-major order.
+		 */
+		public int getCell() {
+			return getPlacement().getCell();
+		}
+
+		/**
+		 * Returns the digit.
+		 */
+		public int getDigit() {
+			return getPlacement().getDigit();
+		}
+
+		/**
+		 * Returns the step placing the digit.
+		 */
+		public Step getPlacement() {
+			return steps.get(steps.size() - 1);
+		}
+
+		/**
+		 * Returns all the steps, ending with the placement.
+		 */
+		public List<Step> getSteps() {
+			return steps;
+		}
+
+		/**
+		 * Returns the hardest technique needed for the hint.
+		 */
+		public Technique getTechnique() {
+			Technique hardest = Technique.NAKED_SINGLE;
+			for (Step step : steps)
+				if (step.getTechnique().compareTo(hardest) > 0)
+					hardest = step.getTechnique();
+			return hardest;
+		}
+
+		/**
+		 * Returns an explanation of the hint, one line per step.
+		 */
+		public String getExplanation() {
+			StringBuilder sb = new StringBuilder();
+			for (Step step : steps) {
+				if (sb.length() > 0)
+					sb.append('\n');
+				sb.append(step);
+			}
+			return sb.toString();
+		}
+
+		/**
+		 * Returns the explanation of the hint.
+		 */
+		public String toString() {
+			return getExplanation();
+		}
+	}
+
+	private final int[] cells = new int[Grid.CELLS];
+	private final int[] candidates = new int[Grid.CELLS];
+	private int filled;
+	// set if a digit was loaded into a cell which already sees it
+	private boolean conflicting;
+
+	/**
+	 * Load a grid, replacing the current state of the engine.
+	 * 
+	 * @param grid
+	 *            A grid of 81 characters, where 0 or '.' means an empty cell.
+	 * @throws IllegalArgumentException
+	 *             If the grid is not 81 digits.
+	 */
+	public void load(CharSequence grid) {
+		if (grid == null || grid.length() != Grid.CELLS)
+			throw new IllegalArgumentException("Not a grid: " + grid);
+		for (int cell = 0; cell < Grid.CELLS; cell++)
+			if (Grid.digit(grid.charAt(cell)) < 0)
+				throw new IllegalArgumentException("Not a grid: " + grid);
+		for (int cell = 0; cell < Grid.CELLS; cell++) {
+			cells[cell] = 0;
+			candidates[cell] = Grid.ALL_DIGITS;
+		}
+		filled = 0;
+		conflicting = false;
+		for (int cell = 0; cell < Grid.CELLS; cell++) {
+			int digit = Grid.digit(grid.charAt(cell));
+			if (digit == 0)
+				continue;
+			if ((candidates[cell] & Grid.bit(digit)) == 0)
+				conflicting = true;
+			place(cell, digit);
+		}
+	}
+
+	/**
+	 * Put a digit in a cell and remove it from the candidates of its peers.
+	 */
+	private void place(int cell, int digit) {
+		cells[cell] = digit;
+		candidates[cell] = 0;
+		filled++;
+		int mask = ~Grid.bit(digit);
+		for (int i = cell * Grid.PEERS, end = i + Grid.PEERS; i < end; i++)
+			candidates[Grid.PEER_CELLS[i]] &= mask;
+	}
+
+	/**
+	 * Determines if every cell has a digit.
+	 * 
+	 * @return true if the grid is full.
+	 */
+	public boolean isSolved() {
+		return filled == Grid.CELLS;
+	}
+
+	/**
+	 * Returns the current content of the grid.
+	 * 
+	 * @return A String of 81 characters, where 0 means an empty cell.
+	 */
+	public String getContent() {
+		char[] chars = new char[Grid.CELLS];
+		for (int cell = 0; cell < Grid.CELLS; cell++)
+			chars[cell] = (char) ('0' + cells[cell]);
+		return new String(chars);
+	}
+
+	/**
+	 * Returns the candidates of a cell.
+	 * 
+	 * @param cell
+	 *            The cell.
+	 * @return A mask where bit d-1 is set if d is a candidate.
+	 */
+	public int getCandidates(int cell) {
+		return candidates[cell];
+	}
+
+	/**
+	 * Find the next hint for a grid: the next digit which can be placed by
+	 * logic alone, and the steps leading to it.
+	 * 
+	 * @param grid
+	 *            A grid of 81 characters, where 0 or '.' means an empty cell.
+	 * @return The hint, or null if the grid is full, contradicts itself or
+	 *         needs a technique the engine does not know.
+	 * @throws IllegalArgumentException
+	 *             If the grid is not 81 digits.
+	 */
+	public Hint getHint(CharSequence grid) {
+		load(grid);
+		List<Step> steps = new ArrayList<Step>();
+		Step step;
+		while ((step = step()) != null) {
+			steps.add(step);
+			if (step.isPlacement())
+				return new Hint(steps);
+		}
+		return null;
+	}
+
+	/**
+	 * Take the next step, using the easiest technique which makes progress,
+	 * and apply it to the grid.
+	 * 
+	 * @return The step, or null if the grid is full, contradicts itself or no
+	 *         technique applies.
+	 */
+	public Step step() {
+		if (isSolved() || !isConsistent())
+			return null;
+		Step step = nakedSingle();
+		if (step == null)
+			step = hiddenSingle();
+		if (step == null)
+			step = pointing();
+		if (step == null)
+			step = boxLine();
+		if (step == null)
+			step = nakedPair();
+		if (step == null)
+			step = hiddenPair();
+		return step;
+	}
+
+	/**
+	 * Determines if no digit appears twice in a unit, every empty cell has a
+	 * candidate and every digit missing from a unit has a place in it.
+	 */
+	private boolean isConsistent() {
+		if (conflicting)
+			return false;
+		for (int cell = 0; cell < Grid.CELLS; cell++)
+			if (cells[cell] == 0 && candidates[cell] == 0)
+				return false;
+		for (int unit = 0; unit < Grid.UNITS; unit++) {
+			int seen = 0;
+			for (int cell : Grid.UNIT_CELLS[unit])
+				seen |= candidates[cell] | bitOf(cells[cell]);
+			if (seen != Grid.ALL_DIGITS)
+				return false;
+		}
+		return true;
+	}
+
+	private static int bitOf(int digit) {
+		return digit == 0 ? 0 : Grid.bit(digit);
+	}
+
+	private Step nakedSingle() {
+		for (int cell = 0; cell < Grid.CELLS; cell++) {
+			int mask = candidates[cell];
+			if (mask != 0 && (mask & (mask - 1)) == 0) {
+				int digit = Grid.digitOf(mask);
+				place(cell, digit);
+				return new Step(Technique.NAKED_SINGLE, cell, digit, 0, digit
+						+ " is the only digit which can go in "
+						+ cellName(cell) + ".");
+			}
+		}
+		return null;
+	}
+
+	private Step hiddenSingle() {
+		for (int unit = 0; unit < Grid.UNITS; unit++) {
+			int only = once(unit) & ~twice(unit);
+			if (only == 0)
+				continue;
+			int bit = Integer.lowestOneBit(only);
+			for (int cell : Grid.UNIT_CELLS[unit])
+				if ((candidates[cell] & bit) != 0) {
+					int digit = Grid.digitOf(bit);
+					place(cell, digit);
+					return new Step(Technique.HIDDEN_SINGLE, cell, digit, 0,
+							"In " + unitName(unit) + ", " + digit
+									+ " can only go in " + cellName(cell)
+									+ ".");
+				}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the digits which are candidates in at least one cell of a unit.
+	 */
+	private int once(int unit) {
+		int once = 0;
+		for (int cell : Grid.UNIT_CELLS[unit])
+			once |= candidates[cell];
+		return once;
+	}
+
+	/**
+	 * Returns the digits which are candidates in at least two cells of a
+	 * unit.
+	 */
+	private int twice(int unit) {
+		int once = 0;
+		int twice = 0;
+		for (int cell : Grid.UNIT_CELLS[unit]) {
+			twice |= once & candidates[cell];
+			once |= candidates[cell];
+		}
+		return twice;
+	}
+
+	/**
+	 * A digit whose places in a subgrid are all in one row or column can be
+	 * removed from the rest of that row or column.
+	 */
+	private Step pointing() {
+		for (int box = 18; box < Grid.UNITS; box++)
+			for (int digit = 1; digit <= 9; digit++) {
+				int line = lineOf(box, digit);
+				if (line < 0)
+					continue;
+				int removed = eliminate(line, Grid.bit(digit), box);
+				if (removed > 0)
+					return new Step(Technique.POINTING, -1, digit, removed,
+							"In " + unitName(box) + ", " + digit
+									+ " can only go in " + unitName(line)
+									+ ", so it can be removed from the rest of "
+									+ unitName(line) + ".");
+			}
+		return null;
+	}
+
+	/**
+	 * Returns the row or column containing all the places for a digit in a
+	 * subgrid, or -1 if there is no such line.
+	 */
+	private int lineOf(int box, int digit) {
+		int bit = Grid.bit(digit);
+		int row = -1;
+		int col = -1;
+		boolean sameRow = true;
+		boolean sameCol = true;
+		for (int cell : Grid.UNIT_CELLS[box]) {
+			if ((candidates[cell] & bit) == 0)
+				continue;
+			if (row < 0) {
+				row = Grid.ROW[cell];
+				col = Grid.COL[cell];
+			} else {
+				sameRow &= row == Grid.ROW[cell];
+				sameCol &= col == Grid.COL[cell];
+			}
+		}
+		if (row < 0)
+			return -1;
+		if (sameRow)
+			return row;
+		if (sameCol)
+			return 9 + col;
+		return -1;
+	}
+
+	/**
+	 * A digit whose places in a row or column are all in one subgrid can be
+	 * removed from the rest of that subgrid.
+	 */
+	private Step boxLine() {
+		for (int line = 0; line < 18; line++)
+			for (int digit = 1; digit <= 9; digit++) {
+				int bit = Grid.bit(digit);
+				int box = -1;
+				for (int cell : Grid.UNIT_CELLS[line]) {
+					if ((candidates[cell] & bit) == 0)
+						continue;
+					int cellBox = 18 + Grid.BOX[cell];
+					if (box < 0) {
+						box = cellBox;
+					} else if (box != cellBox) {
+						box = -1;
+						break;
+					}
+				}
+				if (box < 0)
+					continue;
+				int removed = eliminate(box, bit, line);
+				if (removed > 0)
+					return new Step(Technique.BOX_LINE, -1, digit, removed,
+							"In " + unitName(line) + ", " + digit
+									+ " can only go in " + unitName(box)
+									+ ", so it can be removed from the rest of "
+									+ unitName(box) + ".");
+			}
+		return null;
+	}
+
+	/**
+	 * Two cells of a unit which can only hold the same two digits take both
+	 * of them, so the digits can be removed from the rest of the unit.
+	 */
+	private Step nakedPair() {
+		for (int unit = 0; unit < Grid.UNITS; unit++) {
+			int[] unitCells = Grid.UNIT_CELLS[unit];
+			for (int i = 0; i < 9; i++) {
+				int mask = candidates[unitCells[i]];
+				if (Integer.bitCount(mask) != 2)
+					continue;
+				for (int j = i + 1; j < 9; j++) {
+					if (candidates[unitCells[j]] != mask)
+						continue;
+					int removed = 0;
+					for (int k = 0; k < 9; k++)
+						if (k != i && k != j)
+							removed += remove(unitCells[k], mask);
+					if (removed > 0)
+						return new Step(Technique.NAKED_PAIR, -1, 0, removed,
+								cellName(unitCells[i]) + " and "
+										+ cellName(unitCells[j])
+										+ " can only hold " + digits(mask)
+										+ ", so these can be removed from the rest of "
+										+ unitName(unit) + ".");
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Two digits which can only go in the same two cells of a unit take both
+	 * cells, so the other candidates of those cells can be removed.
+	 */
+	private Step hiddenPair() {
+		for (int unit = 0; unit < Grid.UNITS; unit++) {
+			int[] unitCells = Grid.UNIT_CELLS[unit];
+			// places[d - 1] has bit i set if d is a candidate in unitCells[i]
+			int[] places = new int[9];
+			for (int i = 0; i < 9; i++)
+				for (int mask = candidates[unitCells[i]]; mask != 0; mask &= mask - 1)
+					places[Integer.numberOfTrailingZeros(mask)] |= 1 << i;
+			for (int d1 = 0; d1 < 9; d1++) {
+				if (Integer.bitCount(places[d1]) != 2)
+					continue;
+				for (int d2 = d1 + 1; d2 < 9; d2++) {
+					if (places[d2] != places[d1])
+						continue;
+					int pair = (1 << d1) | (1 << d2);
+					int first = unitCells[Integer
+							.numberOfTrailingZeros(places[d1])];
+					int second = unitCells[31 - Integer
+							.numberOfLeadingZeros(places[d1])];
+					int removed = remove(first, Grid.ALL_DIGITS & ~pair)
+							+ remove(second, Grid.ALL_DIGITS & ~pair);
+					if (removed > 0)
+						return new Step(Technique.HIDDEN_PAIR, -1, 0, removed,
+								"In " + unitName(unit) + ", " + digits(pair)
+										+ " can only go in "
+										+ cellName(first) + " and "
+										+ cellName(second)
+										+ ", so the other candidates of those cells can be removed.");
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Remove a digit from the candidates of the cells of a unit which are not
+	 * in another unit.
+	 * 
+	 * @return The number of candidates removed.
+	 */
+	private int eliminate(int unit, int bit, int except) {
+		int removed = 0;
+		for (int cell : Grid.UNIT_CELLS[unit])
+			if (!inUnit(cell, except))
+				removed += remove(cell, bit);
+		return removed;
+	}
+
+	/**
+	 * Remove digits from the candidates of a cell.
+	 * 
+	 * @return The number of candidates removed.
+	 */
+	private int remove(int cell, int mask) {
+		int removed = Integer.bitCount(candidates[cell] & mask);
+		candidates[cell] &= ~mask;
+		return removed;
+	}
+
+	private static boolean inUnit(int cell, int unit) {
+		if (unit < 9)
+			return Grid.ROW[cell] == unit;
+		if (unit < 18)
+			return Grid.COL[cell] == unit - 9;
+		return Grid.BOX[cell] == unit - 18;
+	}
+
+	private static String cellName(int cell) {
+		return "row " + (Grid.ROW[cell] + 1) + ", column "
+				+ (Grid.COL[cell] + 1);
+	}
+
+	private static String unitName(int unit) {
+		if (unit < 9)
+			return "row " + (unit + 1);
+		if (unit < 18)
+			return "column " + (unit - 8);
+		return "subgrid " + (unit - 17);
+	}
+
+	private static String digits(int mask) {
+		StringBuilder sb = new StringBuilder();
+		for (; mask != 0; mask &= mask - 1) {
+			if (sb.length() > 0)
+				sb.append(mask == Integer.highestOneBit(mask) ? " and " : ", ");
+			sb.append(Integer.numberOfTrailingZeros(mask) + 1);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Print the hint for each of the grids given as arguments.
+	 * 
+	 * @param args
+	 *            Grids of 81 characters.
+	 */
+	public static void main(String[] args) {
+		HintEngine engine = new HintEngine();
+		for (String grid : args) {
+			Hint hint = engine.getHint(grid);
+			System.out.println(hint == null ? "No hint" : hint.toString());
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,571 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The LoadGenerator class sends a stream of submissions to the sudoku
+ * application, either by calling sudoku.respond in the same JVM or over HTTP,
+ * and reports how many it handled a second, how long they took and whether
+ * any of them were handled wrongly.
+ * 
+ * The submissions are generated beforehand from a fixed number of puzzles and
+ * email addresses, so that many players submit the same few solutions as they
+ * would in a contest, and a percentage of them are adversarial: malformed or
+ * overlong emails, wrong or malformed solutions, solutions to another puzzle,
+ * missing or empty puzzles, bodies which are too large and broken form
+ * encoding. The page each one should get is worked out in advance with
+ * Validator, and any other page is counted as an error.
+ * 
+ * Submissions are sent by a number of threads, either back to back or at a
+ * fixed arrival rate. At a fixed rate the latency of a submission is measured
+ * from when it should have been sent, so that a server which falls behind is
+ * not flattered by the generator waiting for it, and submissions which could
+ * not be sent on time because every thread was still waiting for a reply are
+ * counted, since then the rate asked for was not the rate sent. Afterwards
+ * the lines added to the solutions file are checked against the submissions
+ * which were accepted, to find lines which were lost, written twice or
+ * interleaved.
+ * 
+ * @author Ole Sandbu
+ */
+public class LoadGenerator {
+	private static final String ACCEPTED = "Thank you";
+	private static final String DUPLICATE = "Duplicate solution";
+	private static final int CLUES = 30;
+	private static final int MAX_ERROR_SAMPLES = 10;
+	private static final long LATE_NANOS = 1000000;
+
+	/**
+	 * Where submissions are sent.
+	 */
+	public interface Target {
+		/**
+		 * Send a submission.
+		 * 
+		 * @param body
+		 *            The form encoded body of a POST request.
+		 * @return The title of the page sent back, or "HTTP " followed by the
+		 *         status code if it was not 200.
+		 * @throws IOException
+		 *             If the submission could not be sent.
+		 */
+		String send(byte[] body) throws IOException;
+	}
+
+	/**
+	 * A Target which calls sudoku.respond in this JVM.
+	 */
+	public static class LocalTarget implements Target {
+		/**
+		 * Implements Target.send(byte[]).
+		 */
+		public String send(byte[] body) throws IOException {
+			CgiApp form = new CgiApp("POST", null,
+					Integer.toString(body.length), new ByteArrayInputStream(
+							body));
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+			PrintStream out = new PrintStream(buffer, false, "ISO-8859-1");
+			sudoku.respond(form, out);
+			out.flush();
+			return getTitle(buffer.toByteArray(), buffer.size());
+		}
+	}
+
+	/**
+	 * A Target which posts submissions to a URL.
+	 */
+	public static class HttpTarget implements Target {
+		private final URL url;
+
+		/**
+		 * Create a new HttpTarget.
+		 * 
+		 * @param url
+		 *            The URL of the sudoku application.
+		 */
+		public HttpTarget(URL url) {
+			this.url = url;
+		}
+
+		/**
+		 * Implements Target.send(byte[]).
+		 */
+		public String send(byte[] body) throws IOException {
+			HttpURLConnection connection = (HttpURLConnection) url
+					.openConnection();
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type",
+					"application/x-www-form-urlencoded");
+			OutputStream out = connection.getOutputStream();
+			out.write(body);
+			out.close();
+			int status = connection.getResponseCode();
+			InputStream in = status >= 400 ? connection.getErrorStream()
+					: connection.getInputStream();
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+			if (in != null) {
+				byte[] bytes = new byte[4096];
+				int n;
+				while ((n = in.read(bytes)) > 0)
+					buffer.write(bytes, 0, n);
+				in.close();
+			}
+			if (status != 200)
+				return "HTTP " + status;
+			return getTitle(buffer.toByteArray(), buffer.size());
+		}
+	}
+
+	/**
+	 * A submission, with the page it should get.
+	 */
+	private static class Request {
+		final byte[] body;
+		final String expected;
+		final String pair;
+
+		Request(byte[] body, String expected, String pair) {
+			this.body = body;
+			this.expected = expected;
+			this.pair = pair;
+		}
+	}
+
+	private final String[] puzzles;
+	private final String[] solutions;
+	private final int emails;
+	private final int adversarial;
+	private final Random random;
+	private final String runId;
+	private final byte[] tooLarge;
+	private final SubmissionMetrics.Histogram latencies = new SubmissionMetrics.Histogram();
+	private final Map<String, LongAdder> pages = new ConcurrentHashMap<String, LongAdder>();
+	private final Map<String, AtomicInteger> accepted = new ConcurrentHashMap<String, AtomicInteger>();
+	private final Set<String> duplicates = ConcurrentHashMap.newKeySet();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong late = new AtomicLong();
+	private final List<String> errorSamples = new ArrayList<String>();
+	private long elapsed;
+
+	/**
+	 * Create a new LoadGenerator.
+	 * 
+	 * @param puzzleCount
+	 *            The number of different puzzles to submit solutions to.
+	 * @param emailCount
+	 *            The number of different email addresses to submit from.
+	 * @param adversarial
+	 *            The percentage of submissions which are adversarial.
+	 * @param seed
+	 *            The seed of the random number generator, which also makes
+	 *            the email addresses of each run different.
+	 */
+	public LoadGenerator(int puzzleCount, int emailCount, int adversarial,
+			long seed) {
+		puzzles = new PuzzleGenerator(CLUES, seed).generate(puzzleCount);
+		solutions = new String[puzzleCount];
+		SudokuSolver solver = new SudokuSolver();
+		for (int i = 0; i < puzzleCount; i++)
+			solutions[i] = solver.solve(puzzles[i]);
+		this.emails = emailCount;
+		this.adversarial = adversarial;
+		random = new Random(seed);
+		runId = Long.toString(seed & 0xFFFFFFFFFFL, 36);
+		byte[] body = new byte[CgiApp.MAX_BODY_SIZE + 1];
+		Arrays.fill(body, (byte) 'x');
+		System.arraycopy("padding=".getBytes(StandardCharsets.US_ASCII), 0, body, 0, 8);
+		tooLarge = body;
+	}
+
+	/**
+	 * Generate a number of submissions.
+	 * 
+	 * @param count
+	 *            The number of submissions.
+	 * @return The submissions.
+	 */
+	private Request[] generate(int count) {
+		Request[] requests = new Request[count];
+		for (int i = 0; i < count; i++)
+			requests[i] = generate();
+		return requests;
+	}
+
+	/**
+	 * Generate a submission.
+	 * 
+	 * @return The submission.
+	 */
+	private Request generate() {
+		int p = random.nextInt(puzzles.length);
+		String email = "player" + random.nextInt(emails) + "." + runId
+				+ "@example.com";
+		String solution = solutions[p];
+		String puzzle = puzzles[p];
+		if (random.nextInt(100) >= adversarial)
+			return request(email, solution, puzzle);
+		switch (random.nextInt(12)) {
+		case 0:
+			return request(email.replace('@', '.'), solution, puzzle);
+		case 1:
+			return request(repeat("a", Validator.MAX_EMAIL_LENGTH) + email,
+					solution, puzzle);
+		case 2:
+			return request("a@" + repeat("b.", 120) + "c", solution, puzzle);
+		case 3:
+			return request("pl\u00e5yer@ex\u00e4mple.com", solution, puzzle);
+		case 4:
+			int cell = random.nextInt(Grid.CELLS - 9);
+			char[] swapped = solution.toCharArray();
+			char digit = swapped[cell];
+			swapped[cell] = swapped[cell + 9];
+			swapped[cell + 9] = digit;
+			return request(email, new String(swapped), puzzle);
+		case 5:
+			return request(email, solutions[(p + 1) % solutions.length],
+					puzzle);
+		case 6:
+			return request(email, solution.substring(1), puzzle);
+		case 7:
+			return request(email, solution.substring(0, 40) + "x"
+					+ solution.substring(41), puzzle);
+		case 8:
+			return request(email, solution, null);
+		case 9:
+			return request(email, solution, repeat("0", Grid.CELLS));
+		case 10:
+			return request(tooLarge);
+		default:
+			return request(("email=%zz" + email + "&solution=%&&=&solution="
+					+ solution + "%").getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+
+	/**
+	 * Create a submission of an email, a solution and a puzzle.
+	 */
+	private static Request request(String email, String solution,
+			String puzzle) {
+		StringBuilder sb = new StringBuilder(256);
+		try {
+			sb.append("email=").append(URLEncoder.encode(email, "UTF-8"));
+			sb.append("&solution=").append(
+					URLEncoder.encode(solution, "UTF-8"));
+			if (puzzle != null)
+				sb.append("&puzzle=").append(puzzle);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return request(sb.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Create a submission with a given body, working out the page it should
+	 * get by parsing and validating it the slow way.
+	 */
+	private static Request request(byte[] body) {
+		CgiApp form = new CgiApp("POST", null, Integer.toString(body.length),
+				new ByteArrayInputStream(body));
+		if (form.isRequestTooLarge())
+			return new Request(body, "Request too large", null);
+		String email = form.get("email");
+		String solution = form.get("solution");
+		if (!Validator.isValidEmail(email))
+			return new Request(body, "Invalid email", null);
+		if (!Validator.isValidPuzzle(form.get("puzzle")))
+			return new Request(body, "Invalid puzzle", null);
+		if (!Validator.isValidSolution(solution, form.get("puzzle")))
+			return new Request(body, "Invalid solution", null);
+		return new Request(body, ACCEPTED, email + " " + solution);
+	}
+
+	private static String repeat(String s, int times) {
+		StringBuilder sb = new StringBuilder(s.length() * times);
+		for (int i = 0; i < times; i++)
+			sb.append(s);
+		return sb.toString();
+	}
+
+	/**
+	 * Send submissions to a target and record what happens to them.
+	 * 
+	 * @param target
+	 *            The target.
+	 * @param requests
+	 *            The submissions.
+	 * @param concurrency
+	 *            The number of threads sending submissions.
+	 * @param rate
+	 *            The number of submissions to send a second, or 0 to send
+	 *            them back to back.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the threads to finish.
+	 */
+	private void run(final Target target, final Request[] requests,
+			int concurrency, final double rate) throws InterruptedException {
+		final AtomicInteger next = new AtomicInteger();
+		final long start = System.nanoTime();
+		Thread[] threads = new Thread[concurrency];
+		for (int t = 0; t < concurrency; t++) {
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					int i;
+					while ((i = next.getAndIncrement()) < requests.length) {
+						long due = rate > 0 ? start + (long) (i * 1e9 / rate)
+								: System.nanoTime();
+						long now;
+						while ((now = System.nanoTime()) < due)
+							LockSupport.parkNanos(due - now);
+						if (now - due > LATE_NANOS)
+							late.incrementAndGet();
+						send(target, requests[i], due);
+					}
+				}
+			}, "load " + t);
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		elapsed = System.nanoTime() - start;
+		for (Map.Entry<String, AtomicInteger> entry : accepted.entrySet())
+			if (entry.getValue().get() > 1)
+				error("accepted " + entry.getValue().get() + " times: "
+						+ entry.getKey());
+		for (String pair : duplicates)
+			if (!accepted.containsKey(pair))
+				error("duplicate of a solution never accepted: " + pair);
+	}
+
+	/**
+	 * Send a submission and check the page sent back. The latency is measured
+	 * from when the submission was due, not from when it was sent.
+	 */
+	private void send(Target target, Request request, long due) {
+		String page;
+		try {
+			page = target.send(request.body);
+		} catch (IOException e) {
+			page = e.getClass().getSimpleName();
+		} catch (RuntimeException e) {
+			page = e.toString();
+		}
+		latencies.record(System.nanoTime() - due);
+		LongAdder count = pages.get(page);
+		if (count == null) {
+			pages.putIfAbsent(page, new LongAdder());
+			count = pages.get(page);
+		}
+		count.increment();
+		if (request.pair != null && page.equals(ACCEPTED)) {
+			AtomicInteger times = accepted.get(request.pair);
+			if (times == null) {
+				accepted.putIfAbsent(request.pair, new AtomicInteger());
+				times = accepted.get(request.pair);
+			}
+			times.incrementAndGet();
+		} else if (request.pair != null && page.equals(DUPLICATE)) {
+			duplicates.add(request.pair);
+		} else if (!page.equals(request.expected)) {
+			error("expected \"" + request.expected + "\", got \"" + page
+					+ "\"");
+		}
+	}
+
+	private void error(String message) {
+		errors.incrementAndGet();
+		synchronized (errorSamples) {
+			if (errorSamples.size() < MAX_ERROR_SAMPLES)
+				errorSamples.add(message);
+		}
+	}
+
+	/**
+	 * Check that the lines added to the solutions file are exactly the
+	 * submissions which were accepted, and print what was found.
+	 * 
+	 * @param file
+	 *            The solutions file.
+	 * @param from
+	 *            The length of the file before the submissions were sent.
+	 * @return The number of lines lost, written more than once, or not
+	 *         written whole.
+	 * @throws IOException
+	 *             If the file cannot be read.
+	 */
+	private long checkFile(File file, long from) throws IOException {
+		byte[] bytes;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			bytes = new byte[(int) (raf.length() - from)];
+			raf.seek(from);
+			raf.readFully(bytes);
+		} finally {
+			raf.close();
+		}
+		String text = new String(bytes, "UTF-8");
+		Set<String> seen = new HashSet<String>();
+		long lines = 0;
+		long twice = 0;
+		long broken = 0;
+		int pos = 0;
+		while (pos < text.length()) {
+			int end = text.indexOf('\n', pos);
+			if (end < 0) {
+				broken++;
+				break;
+			}
+			String line = text.substring(pos,
+					end > pos && text.charAt(end - 1) == '\r' ? end - 1 : end);
+			pos = end + 1;
+			lines++;
+			if (!accepted.containsKey(line))
+				broken++;
+			else if (!seen.add(line))
+				twice++;
+		}
+		long lost = accepted.size() - seen.size();
+		System.err.printf("solutions file: %d lines added, %d accepted, "
+				+ "%d lost, %d written twice, %d interleaved or unknown%n",
+				lines, accepted.size(), lost, twice, broken);
+		return lost + twice + broken;
+	}
+
+	/**
+	 * Print throughput, latencies and the pages sent back.
+	 */
+	private void report() {
+		double seconds = elapsed / 1e9;
+		long count = latencies.getCount();
+		System.err.printf("%d submissions in %.3f s: %.0f submissions/s%n",
+				count, seconds, count / seconds);
+		System.err.printf(
+				"latency ms: mean %.3f p50 %.3f p90 %.3f p99 %.3f p99.9 %.3f max %.3f%n",
+				latencies.getMean() / 1e6,
+				latencies.getValueAtPercentile(50) / 1e6,
+				latencies.getValueAtPercentile(90) / 1e6,
+				latencies.getValueAtPercentile(99) / 1e6,
+				latencies.getValueAtPercentile(99.9) / 1e6,
+				latencies.getMax() / 1e6);
+		for (Map.Entry<String, LongAdder> entry : new TreeMap<String, LongAdder>(
+				pages).entrySet())
+			System.err.printf("%-20s %d%n", entry.getKey(), entry.getValue()
+					.sum());
+		if (late.get() > 0)
+			System.err.printf("%d of %d submissions sent more than %d ms late: "
+					+ "too few threads or too little CPU to keep up with "
+					+ "the rate%n", late.get(), count,
+					LATE_NANOS / 1000000);
+		System.err.printf("errors: %d%n", errors.get());
+		for (String sample : errorSamples)
+			System.err.println("  " + sample);
+	}
+
+	/**
+	 * Returns the title of an XHTML page.
+	 */
+	private static String getTitle(byte[] page, int length) throws IOException {
+		String text = new String(page, 0, length, "ISO-8859-1");
+		int start = text.indexOf("<title>");
+		int end = text.indexOf("</title>", start);
+		if (start < 0 || end < 0)
+			return "no title";
+		return text.substring(start + 7, end);
+	}
+
+	/**
+	 * Run a load test. The first argument is the solutions file to check,
+	 * the second the number of submissions, and the third where to send them:
+	 * "local" to call sudoku.respond in this JVM, "server" to start a
+	 * SudokuServer in this JVM and send them over HTTP, or the URL of a
+	 * running server. When the submissions are handled in this JVM they are
+	 * written to the given file, which should not be the real solutions file.
+	 * 
+	 * The number of threads, the arrival rate a second (0 for back to back),
+	 * the number of puzzles and emails, the percentage of adversarial
+	 * submissions and the seed are given by the properties load.concurrency,
+	 * load.rate, load.puzzles, load.emails, load.adversarial and load.seed.
+	 * 
+	 * Exits with status 1 if any submission got the wrong page, the
+	 * solutions file does not match the accepted submissions, or at a fixed
+	 * rate any submission was sent late, since then the rate was not met.
+	 * 
+	 * @param args
+	 *            The solutions file, the number of submissions and the
+	 *            target.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: java LoadGenerator solutions-file requests [local | server | url]");
+			System.exit(1);
+		}
+		File file = new File(args[0]);
+		int count = Integer.parseInt(args[1]);
+		String mode = args.length > 2 ? args[2] : "local";
+		int concurrency = Integer.getInteger("load.concurrency", 8);
+		double rate = Double.parseDouble(System.getProperty("load.rate", "0"));
+		boolean inProcess = mode.equals("local") || mode.equals("server");
+		if (inProcess) {
+			System.setProperty("solutions.file", file.getPath());
+			if (System.getProperty("solutions.index") == null)
+				System.setProperty("solutions.index", file.getPath() + ".idx");
+		}
+		LoadGenerator generator = new LoadGenerator(Integer.getInteger(
+				"load.puzzles", 16), Integer.getInteger("load.emails", 1000),
+				Integer.getInteger("load.adversarial", 20), Long.getLong(
+						"load.seed", System.nanoTime()));
+		Request[] requests = generator.generate(count);
+		SudokuServer server = null;
+		long problems;
+		try {
+			Target target;
+			if (mode.equals("local")) {
+				target = new LocalTarget();
+			} else if (mode.equals("server")) {
+				server = new SudokuServer(0);
+				server.start();
+				target = new HttpTarget(new URL("http://localhost:"
+						+ server.getPort() + "/cgi-bin/sudoku"));
+			} else {
+				target = new HttpTarget(new URL(mode));
+			}
+			long from = file.length();
+			generator.run(target, requests, concurrency, rate);
+			generator.report();
+			problems = generator.errors.get() + generator.checkFile(file, from);
+			if (rate > 0)
+				problems += generator.late.get();
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			problems = 1;
+		} catch (InterruptedException e) {
+			problems = 1;
+		} finally {
+			if (server != null)
+				server.stop(0);
+		}
+		System.exit(problems == 0 ? 0 : 1);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The PageTemplate class holds a page whose fixed parts have been encoded to
+ * bytes once, so that rendering the page only has to encode the values put
+ * into it.
+ * 
+ * A template is text containing slots of the form ${name}. A slot may appear
+ * more than once, and is given the same value everywhere. Rendering copies the
+ * fixed parts and the values into a single array of exactly the right length,
+ * which can be written with one call.
+ * 
+ * Templates are immutable and can be shared between threads.
+ * 
+ * @author Ole Sandbu
+ */
+public final class PageTemplate {
+	private final Charset charset;
+	private final byte[][] parts;
+	// slots[i] is the index in names of the slot after parts[i].
+	private final int[] slots;
+	private final String[] names;
+	private final int fixedLength;
+
+	private PageTemplate(Charset charset, byte[][] parts, int[] slots,
+			String[] names) {
+		this.charset = charset;
+		this.parts = parts;
+		this.slots = slots;
+		this.names = names;
+		int length = 0;
+		for (byte[] part : parts)
+			length += part.length;
+		fixedLength = length;
+	}
+
+	/**
+	 * Compile a template.
+	 * 
+	 * @param text
+	 *            The text of the template, with slots of the form ${name}.
+	 * @param charset
+	 *            The encoding of the page.
+	 * @return The template.
+	 * @throws IllegalArgumentException
+	 *             If a slot is not closed.
+	 */
+	public static PageTemplate compile(String text, Charset charset) {
+		List<byte[]> parts = new ArrayList<byte[]>();
+		List<Integer> slots = new ArrayList<Integer>();
+		List<String> names = new ArrayList<String>();
+		int pos = 0;
+		int start;
+		while ((start = text.indexOf("${", pos)) >= 0) {
+			int end = text.indexOf('}', start);
+			if (end < 0)
+				throw new IllegalArgumentException("Unclosed slot at " + start);
+			parts.add(text.substring(pos, start).getBytes(charset));
+			String name = text.substring(start + 2, end);
+			int index = names.indexOf(name);
+			if (index < 0) {
+				index = names.size();
+				names.add(name);
+			}
+			slots.add(index);
+			pos = end + 1;
+		}
+		parts.add(text.substring(pos).getBytes(charset));
+		int[] slotArray = new int[slots.size()];
+		for (int i = 0; i < slotArray.length; i++)
+			slotArray[i] = slots.get(i);
+		return new PageTemplate(charset, parts.toArray(new byte[parts.size()][]),
+				slotArray, names.toArray(new String[names.size()]));
+	}
+
+	/**
+	 * Returns the names of the slots, in the order in which their values are
+	 * given to render.
+	 * 
+	 * @return The names.
+	 */
+	public String[] getNames() {
+		return names.clone();
+	}
+
+	/**
+	 * Render the page.
+	 * 
+	 * @param values
+	 *            The value of each slot, in the order of getNames. Values are
+	 *            inserted as they are, so text must be escaped first.
+	 * @return The encoded page.
+	 * @throws IllegalArgumentException
+	 *             If the number of values is wrong.
+	 */
+	public byte[] render(String... values) {
+		if (values.length != names.length)
+			throw new IllegalArgumentException(names.length
+					+ " values expected");
+		byte[][] encoded = new byte[values.length][];
+		int length = fixedLength;
+		for (int slot : slots)
+			length += encodedLength(values, encoded, slot);
+		byte[] page = new byte[length];
+		int pos = 0;
+		for (int i = 0; i < parts.length; i++) {
+			System.arraycopy(parts[i], 0, page, pos, parts[i].length);
+			pos += parts[i].length;
+			if (i < slots.length)
+				pos = copy(values[slots[i]], encoded[slots[i]], page, pos);
+		}
+		return page;
+	}
+
+	/**
+	 * Render the page and write it with a single write.
+	 * 
+	 * @param out
+	 *            The stream to write the page to.
+	 * @param values
+	 *            The value of each slot, in the order of getNames.
+	 * @throws IOException
+	 *             If the page cannot be written.
+	 */
+	public void write(OutputStream out, String... values) throws IOException {
+		byte[] page = render(values);
+		out.write(page, 0, page.length);
+	}
+
+	/**
+	 * Returns the encoded length of a value. Values which are all ASCII are
+	 * copied a character at a time; others are encoded once and kept in
+	 * encoded.
+	 */
+	private int encodedLength(String[] values, byte[][] encoded, int slot) {
+		String value = values[slot];
+		if (encoded[slot] != null)
+			return encoded[slot].length;
+		for (int i = 0; i < value.length(); i++)
+			if (value.charAt(i) >= 0x80) {
+				encoded[slot] = value.getBytes(charset);
+				return encoded[slot].length;
+			}
+		return value.length();
+	}
+
+	private static int copy(String value, byte[] encoded, byte[] page, int pos) {
+		if (encoded != null) {
+			System.arraycopy(encoded, 0, page, pos, encoded.length);
+			return pos + encoded.length;
+		}
+		for (int i = 0; i < value.length(); i++)
+			page[pos++] = (byte) value.charAt(i);
+		return pos;
+	}
+
+	/**
+	 * Escape the characters of a String which have a meaning in XHTML text or
+	 * attribute values.
+	 * 
+	 * @param text
+	 *            The text.
+	 * @return The escaped text.
+	 */
+	public static String escape(String text) {
+		StringBuilder sb = null;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			String entity;
+			switch (c) {
+			case '<':
+				entity = "&lt;";
+				break;
+			case '>':
+				entity = "&gt;";
+				break;
+			case '&':
+				entity = "&amp;";
+				break;
+			case '"':
+				entity = "&quot;";
+				break;
+			default:
+				if (sb != null)
+					sb.append(c);
+				continue;
+			}
+			if (sb == null)
+				sb = new StringBuilder(text.length() + 16).append(text, 0, i);
+			sb.append(entity);
+		}
+		return sb == null ? text : sb.toString();
+	}
+}
\ No newline at end of file
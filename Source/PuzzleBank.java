@@ -0,0 +1,433 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The PuzzleBank class is a read-only, memory-mapped store of puzzles to
+ * serve in the applet, so that a page can pick a puzzle when it is requested
+ * without reading a file of puzzles into memory.
+ * 
+ * The file starts with a 64 byte header giving the number of puzzles and,
+ * for each difficulty tier, the range of puzzles in it. It is followed by
+ * fixed-width records sorted by tier, so puzzle n is found by multiplying and
+ * a random puzzle of a tier is a random index in the tier's range. Each
+ * record holds the 64-bit hash of the puzzle's canonical form, the tier, the
+ * number of givens, the number of steps the DifficultyRater took and the
+ * givens packed as 4-bit nibbles.
+ * 
+ * Reads never change the position of the mapped buffer, so a bank can be
+ * shared between threads. Banks are written by build, which rates and
+ * canonicalizes a file of puzzles and drops the equivalent ones.
+ * 
+ * @author Ole Sandbu
+ */
+public class PuzzleBank implements Closeable {
+	private static final int MAGIC = 0x53444B42; // "SDKB"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int RECORD_SIZE = 56;
+	private static final int TIERS = DifficultyRater.Tier.values().length;
+	// header fields
+	private static final int COUNT = 8;
+	private static final int RECORD_SIZE_FIELD = 12;
+	private static final int TIER_RANGES = 16;
+	// record fields
+	private static final int HASH = 0;
+	private static final int TIER = 8;
+	private static final int GIVENS = 9;
+	private static final int STEPS = 10;
+	private static final int PUZZLE = 12;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final MappedByteBuffer map;
+	private final int count;
+
+	/**
+	 * Open a puzzle bank.
+	 * 
+	 * @param file
+	 *            The bank file.
+	 * @throws IOException
+	 *             If the file cannot be opened or is not a puzzle bank.
+	 */
+	public PuzzleBank(File file) throws IOException {
+		this.file = file;
+		raf = new RandomAccessFile(file, "r");
+		try {
+			long size = raf.length();
+			if (size < HEADER_SIZE)
+				throw new IOException("Not a puzzle bank: " + file);
+			map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+					size);
+			if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION
+					|| map.getInt(RECORD_SIZE_FIELD) != RECORD_SIZE)
+				throw new IOException("Not a puzzle bank: " + file);
+			count = map.getInt(COUNT);
+			if (HEADER_SIZE + (long) count * RECORD_SIZE != size)
+				throw new IOException("Corrupt puzzle bank: " + file);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the bank file.
+	 * 
+	 * @return The file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the number of puzzles in the bank.
+	 * 
+	 * @return The number of puzzles.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of puzzles in a tier.
+	 * 
+	 * @param tier
+	 *            The tier.
+	 * @return The number of puzzles.
+	 */
+	public int size(DifficultyRater.Tier tier) {
+		return map.getInt(TIER_RANGES + tier.ordinal() * 8 + 4);
+	}
+
+	/**
+	 * Returns the index of the first puzzle of a tier.
+	 * 
+	 * @param tier
+	 *            The tier.
+	 * @return The index.
+	 */
+	public int first(DifficultyRater.Tier tier) {
+		return map.getInt(TIER_RANGES + tier.ordinal() * 8);
+	}
+
+	/**
+	 * Returns a puzzle.
+	 * 
+	 * @param n
+	 *            The index of the puzzle, 0..size()-1.
+	 * @return The puzzle as 81 characters, where 0 means an empty cell.
+	 * @throws IndexOutOfBoundsException
+	 *             If there is no puzzle n.
+	 */
+	public String get(int n) {
+		int base = offset(n) + PUZZLE;
+		char[] chars = new char[Grid.CELLS];
+		for (int i = 0; i < Grid.CELLS; i += 2) {
+			int b = map.get(base + i / 2);
+			chars[i] = (char) ('0' + ((b >> 4) & 0xF));
+			if (i + 1 < Grid.CELLS)
+				chars[i + 1] = (char) ('0' + (b & 0xF));
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Returns a random puzzle of a tier.
+	 * 
+	 * @param tier
+	 *            The tier.
+	 * @return The puzzle, or null if there are no puzzles in the tier.
+	 */
+	public String random(DifficultyRater.Tier tier) {
+		int size = size(tier);
+		if (size == 0)
+			return null;
+		return get(first(tier) + ThreadLocalRandom.current().nextInt(size));
+	}
+
+	/**
+	 * Returns the tier of a puzzle.
+	 * 
+	 * @param n
+	 *            The index of the puzzle.
+	 * @return The tier.
+	 */
+	public DifficultyRater.Tier getTier(int n) {
+		return DifficultyRater.Tier.values()[map.get(offset(n) + TIER)];
+	}
+
+	/**
+	 * Returns the hash of the canonical form of a puzzle, which is the same
+	 * for equivalent puzzles.
+	 * 
+	 * @param n
+	 *            The index of the puzzle.
+	 * @return The hash.
+	 */
+	public long getHash(int n) {
+		return map.getLong(offset(n) + HASH);
+	}
+
+	/**
+	 * Returns the number of givens of a puzzle.
+	 * 
+	 * @param n
+	 *            The index of the puzzle.
+	 * @return The number of givens.
+	 */
+	public int getGivens(int n) {
+		return map.get(offset(n) + GIVENS) & 0xFF;
+	}
+
+	/**
+	 * Returns the number of steps the DifficultyRater took to solve a puzzle.
+	 * 
+	 * @param n
+	 *            The index of the puzzle.
+	 * @return The number of steps.
+	 */
+	public int getSteps(int n) {
+		return map.getShort(offset(n) + STEPS) & 0xFFFF;
+	}
+
+	private int offset(int n) {
+		if (n < 0 || n >= count)
+			throw new IndexOutOfBoundsException("Puzzle " + n + " of "
+					+ count);
+		return HEADER_SIZE + n * RECORD_SIZE;
+	}
+
+	/**
+	 * Close the bank file. The mapping stays valid until it is garbage
+	 * collected.
+	 */
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	/**
+	 * Returns the 64-bit FNV-1a hash of a canonical form.
+	 * 
+	 * @param canonical
+	 *            The canonical form of a puzzle.
+	 * @return The hash.
+	 */
+	public static long hash(CharSequence canonical) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < canonical.length(); i++) {
+			hash ^= canonical.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Build a puzzle bank from a file of puzzles, one per line. The puzzles
+	 * are rated and canonicalized in parallel; puzzles which are not valid,
+	 * do not have a unique solution or are equivalent to an earlier puzzle
+	 * are left out.
+	 * 
+	 * @param input
+	 *            The file of puzzles.
+	 * @param output
+	 *            The bank file to write.
+	 * @return The number of puzzles in the bank.
+	 * @throws IOException
+	 *             If either file cannot be read or written.
+	 */
+	public static int build(File input, File output) throws IOException {
+		final List<String> lines = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(input), StandardCharsets.US_ASCII));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() > 0)
+					lines.add(line);
+			}
+		} finally {
+			in.close();
+		}
+		int n = lines.size();
+		final byte[][] records = new byte[n][];
+		final String[] forms = new String[n];
+		IntStream.range(0, n).parallel().forEach(new IntConsumer() {
+			public void accept(int i) {
+				String puzzle = lines.get(i);
+				if (!isPuzzle(puzzle))
+					return;
+				DifficultyRater.Rating rating = DifficultyRater.rate(puzzle);
+				forms[i] = Canonicalizer.canonical(puzzle);
+				records[i] = record(puzzle, rating, hash(forms[i]));
+			}
+		});
+		// keep the first of each set of equivalent puzzles
+		List<byte[]> kept = new ArrayList<byte[]>();
+		Set<String> seen = new HashSet<String>();
+		for (int i = 0; i < n; i++)
+			if (records[i] != null && seen.add(forms[i]))
+				kept.add(records[i]);
+		Collections.sort(kept, new Comparator<byte[]>() {
+			public int compare(byte[] a, byte[] b) {
+				if (a[TIER] != b[TIER])
+					return a[TIER] - b[TIER];
+				long x = ByteBuffer.wrap(a).getLong(HASH);
+				long y = ByteBuffer.wrap(b).getLong(HASH);
+				return x < y ? -1 : x == y ? 0 : 1;
+			}
+		});
+		write(kept, output);
+		return kept.size();
+	}
+
+	/**
+	 * Determines if a line is a puzzle with a unique solution.
+	 */
+	private static boolean isPuzzle(String puzzle) {
+		if (puzzle.length() != Grid.CELLS)
+			return false;
+		for (int i = 0; i < Grid.CELLS; i++)
+			if (Grid.digit(puzzle.charAt(i)) < 0)
+				return false;
+		SudokuSolver solver = new SudokuSolver();
+		return solver.load(puzzle) && solver.solve(2) == 1;
+	}
+
+	/**
+	 * Returns the record of a puzzle.
+	 */
+	private static byte[] record(String puzzle,
+			DifficultyRater.Rating rating, long hash) {
+		byte[] record = new byte[RECORD_SIZE];
+		ByteBuffer buffer = ByteBuffer.wrap(record);
+		buffer.putLong(HASH, hash);
+		buffer.put(TIER, (byte) rating.getTier().ordinal());
+		int givens = 0;
+		for (int i = 0; i < Grid.CELLS; i++)
+			if (Grid.digit(puzzle.charAt(i)) > 0)
+				givens++;
+		buffer.put(GIVENS, (byte) givens);
+		buffer.putShort(STEPS, (short) Math.min(rating.getSteps(), 0xFFFF));
+		SolutionRecordFormat.packNibbles(puzzle.replace('.', '0'), record,
+				PUZZLE);
+		return record;
+	}
+
+	/**
+	 * Write sorted records to a bank file, through a temporary file which is
+	 * renamed so that a bank being read is never seen half written.
+	 */
+	private static void write(List<byte[]> records, File output)
+			throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(0, MAGIC);
+		header.putInt(4, VERSION);
+		header.putInt(COUNT, records.size());
+		header.putInt(RECORD_SIZE_FIELD, RECORD_SIZE);
+		int[] firsts = new int[TIERS];
+		int[] sizes = new int[TIERS];
+		Arrays.fill(firsts, records.size());
+		for (int i = records.size() - 1; i >= 0; i--) {
+			int tier = records.get(i)[TIER];
+			firsts[tier] = i;
+			sizes[tier]++;
+		}
+		for (int tier = 0; tier < TIERS; tier++) {
+			header.putInt(TIER_RANGES + tier * 8, firsts[tier]);
+			header.putInt(TIER_RANGES + tier * 8 + 4, sizes[tier]);
+		}
+		File temp = new File(output.getPath() + ".tmp");
+		RandomAccessFile out = new RandomAccessFile(temp, "rw");
+		try {
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			channel.write(header);
+			ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+			for (byte[] record : records) {
+				if (buffer.remaining() < RECORD_SIZE) {
+					buffer.flip();
+					while (buffer.hasRemaining())
+						channel.write(buffer);
+					buffer.clear();
+				}
+				buffer.put(record);
+			}
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(true);
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(output)) {
+			output.delete();
+			if (!temp.renameTo(output))
+				throw new IOException("Cannot rename " + temp + " to "
+						+ output);
+		}
+	}
+
+	/**
+	 * Build a puzzle bank, or print puzzles from one.
+	 * 
+	 * @param args
+	 *            "build input bank", "get bank n" or "random bank tier".
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println("Usage: java PuzzleBank build input bank | get bank n | random bank tier");
+			System.exit(1);
+		}
+		try {
+			if (args[0].equals("build")) {
+				long start = System.nanoTime();
+				int count = build(new File(args[1]), new File(args[2]));
+				System.err.printf("%d puzzles in %.3f s%n", count,
+						(System.nanoTime() - start) / 1e9);
+				PuzzleBank bank = new PuzzleBank(new File(args[2]));
+				try {
+					for (DifficultyRater.Tier tier : DifficultyRater.Tier
+							.values())
+						System.err.printf("%-8s %d%n", tier, bank.size(tier));
+				} finally {
+					bank.close();
+				}
+			} else {
+				PuzzleBank bank = new PuzzleBank(new File(args[1]));
+				try {
+					if (args[0].equals("get"))
+						System.out.println(bank.get(Integer.parseInt(args[2])));
+					else
+						System.out.println(bank.random(DifficultyRater.Tier
+								.valueOf(args[2].toUpperCase())));
+				} finally {
+					bank.close();
+				}
+			}
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			System.exit(1);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,242 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The PuzzleGenerator class generates Sudoku puzzles with a unique solution in
+ * the 81 character format consumed by SudokuApplet.setCellContent.
+ * 
+ * Each puzzle is made by filling a random complete grid and then removing
+ * clues in a random order, putting a clue back whenever removing it would
+ * allow more than one solution. Puzzle number i of a generator always depends
+ * only on the seed and i, so the same seed gives the same puzzles however the
+ * work is spread across the threads of a ForkJoinPool.
+ * 
+ * @author Ole Sandbu
+ */
+public class PuzzleGenerator {
+	/** The fewest clues a Sudoku puzzle with a unique solution can have. */
+	public static final int MIN_CLUES = 17;
+	private static final int MAX_ATTEMPTS = 20;
+	// the number of puzzles generated by a single fork-join task.
+	private static final int BATCH_SIZE = 4;
+	private final int clues;
+	private final long seed;
+
+	/**
+	 * Create a new PuzzleGenerator.
+	 * 
+	 * @param clues
+	 *            The target number of clues in each puzzle.
+	 * @param seed
+	 *            The seed of the random number generator.
+	 */
+	public PuzzleGenerator(int clues, long seed) {
+		if (clues < MIN_CLUES || clues > Grid.CELLS)
+			throw new IllegalArgumentException("Clue count must be between "
+					+ MIN_CLUES + " and " + Grid.CELLS + ": " + clues);
+		this.clues = clues;
+		this.seed = seed;
+	}
+
+	/**
+	 * Generate a number of puzzles in parallel using the common ForkJoinPool.
+	 * 
+	 * @param count
+	 *            The number of puzzles.
+	 * @return The puzzles as 81 character Strings.
+	 */
+	public String[] generate(int count) {
+		return generate(count, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Generate a number of puzzles in parallel.
+	 * 
+	 * @param count
+	 *            The number of puzzles.
+	 * @param pool
+	 *            The pool to run the generation in.
+	 * @return The puzzles as 81 character Strings.
+	 */
+	public String[] generate(int count, ForkJoinPool pool) {
+		String[] puzzles = new String[count];
+		pool.invoke(new GenerateTask(puzzles, 0, count));
+		return puzzles;
+	}
+
+	/**
+	 * Generate a single puzzle.
+	 * 
+	 * @param index
+	 *            The number of the puzzle, which together with the seed
+	 *            decides its content.
+	 * @return The puzzle as an 81 character String.
+	 */
+	public String generatePuzzle(int index) {
+		return generatePuzzle(index, new SudokuSolver());
+	}
+
+	/**
+	 * Generate a single puzzle using a given solver. If the target number of
+	 * clues cannot be reached, the puzzle with the fewest clues out of a number
+	 * of attempts is returned.
+	 * 
+	 * @param index
+	 *            The number of the puzzle.
+	 * @param solver
+	 *            A solver which is not used by any other thread.
+	 * @return The puzzle as an 81 character String.
+	 */
+	private String generatePuzzle(int index, SudokuSolver solver) {
+		Random random = new Random(seed * 0x9E3779B97F4A7C15L + index);
+		int[] grid = new int[Grid.CELLS];
+		int[] order = new int[Grid.CELLS];
+		int[] best = null;
+		int bestClues = Grid.CELLS + 1;
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			fillGrid(grid, random, solver);
+			int remaining = removeClues(grid, order, random, solver);
+			if (remaining < bestClues) {
+				best = grid.clone();
+				bestClues = remaining;
+			}
+			if (remaining <= clues)
+				break;
+		}
+		return toString(best);
+	}
+
+	/**
+	 * Fill a grid with a random complete solution. The three subgrids on the
+	 * diagonal do not share any row or column, so they are filled with random
+	 * permutations of 1..9 and the solver completes the rest.
+	 * 
+	 * @param grid
+	 *            The grid to fill.
+	 * @param random
+	 *            A random number generator.
+	 * @param solver
+	 *            A solver.
+	 */
+	private static void fillGrid(int[] grid, Random random, SudokuSolver solver) {
+		for (int cell = 0; cell < Grid.CELLS; cell++)
+			grid[cell] = 0;
+		for (int box = 0; box < 9; box += 4) {
+			int[] cells = Grid.UNIT_CELLS[18 + box];
+			for (int i = 0; i < 9; i++)
+				grid[cells[i]] = i + 1;
+			for (int i = 8; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int tmp = grid[cells[i]];
+				grid[cells[i]] = grid[cells[j]];
+				grid[cells[j]] = tmp;
+			}
+		}
+		solver.load(grid);
+		solver.solve(1);
+		solver.getSolution(grid);
+	}
+
+	/**
+	 * Remove clues from a complete grid in a random order for as long as the
+	 * puzzle keeps a unique solution and has more clues than the target.
+	 * 
+	 * @param grid
+	 *            A complete grid, which is turned into a puzzle.
+	 * @param order
+	 *            An array of 81 elements used to hold the removal order.
+	 * @param random
+	 *            A random number generator.
+	 * @param solver
+	 *            A solver.
+	 * @return The number of clues left in the puzzle.
+	 */
+	private int removeClues(int[] grid, int[] order, Random random,
+			SudokuSolver solver) {
+		for (int i = 0; i < Grid.CELLS; i++)
+			order[i] = i;
+		for (int i = Grid.CELLS - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+		int remaining = Grid.CELLS;
+		for (int i = 0; i < Grid.CELLS && remaining > clues; i++) {
+			int cell = order[i];
+			int digit = grid[cell];
+			grid[cell] = 0;
+			solver.load(grid);
+			if (solver.solve(2) == 1)
+				remaining--;
+			else
+				grid[cell] = digit;
+		}
+		return remaining;
+	}
+
+	/**
+	 * Convert a grid to the 81 character format.
+	 * 
+	 * @param grid
+	 *            A grid.
+	 * @return The grid as an 81 character String.
+	 */
+	private static String toString(int[] grid) {
+		char[] chars = new char[Grid.CELLS];
+		for (int cell = 0; cell < Grid.CELLS; cell++)
+			chars[cell] = (char) ('0' + grid[cell]);
+		return new String(chars);
+	}
+
+	/**
+	 * A fork-join task which generates the puzzles in a range of indices,
+	 * splitting the range in two until it is small enough.
+	 */
+	private class GenerateTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final String[] puzzles;
+		private final int from;
+		private final int to;
+
+		GenerateTask(String[] puzzles, int from, int to) {
+			this.puzzles = puzzles;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from <= BATCH_SIZE) {
+				SudokuSolver solver = new SudokuSolver();
+				for (int i = from; i < to; i++)
+					puzzles[i] = generatePuzzle(i, solver);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new GenerateTask(puzzles, from, middle),
+						new GenerateTask(puzzles, middle, to));
+			}
+		}
+	}
+
+	/**
+	 * Generate puzzles and print them, one per line.
+	 * 
+	 * @param args
+	 *            The target number of clues, the number of puzzles and
+	 *            optionally a seed.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: java PuzzleGenerator clues count [seed]");
+			System.exit(1);
+		}
+		int clues = Integer.parseInt(args[0]);
+		int count = Integer.parseInt(args[1]);
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : System
+				.currentTimeMillis();
+		PuzzleGenerator generator = new PuzzleGenerator(clues, seed);
+		for (String puzzle : generator.generate(count))
+			System.out.println(puzzle);
+	}
+}
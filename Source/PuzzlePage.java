@@ -0,0 +1,249 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The PuzzlePage class is a CGI application which serves the page showing the
+ * applet, with the puzzle to solve filled in. The puzzle is given by the
+ * "puzzle" parameter, picked from the puzzle bank by number with "n", or at
+ * random with "tier"; without any of them a random puzzle is picked from the
+ * bank.
+ * 
+ * The page is rendered from a precompiled template and written with a single
+ * write. Rendered pages are cached by puzzle, and each page carries an ETag so
+ * that a browser showing the same puzzle again gets a "304 Not Modified"
+ * without a body.
+ * 
+ * @author Ole Sandbu
+ */
+public class PuzzlePage {
+	private static final String BANK_FILE_NAME = System.getProperty(
+			"puzzles.bank", "/cs/home/os75/public_html/sudoku/puzzles.bank");
+	private static final String OUTPUT_URL = System.getProperty(
+			"sudoku.output.url",
+			"http://host-os75.cs.st-andrews.ac.uk/cgi-bin/sudoku");
+	private static final String DEFAULT_PUZZLE = "700000400069000000810002000003008140941026000000090200097003560205807900000510000";
+	private static final int CACHE_SIZE = Integer.getInteger(
+			"puzzle.page.cache", 256).intValue();
+	private static final String TEMPLATE = "Content-Type: text/html; charset=utf-8\n"
+			+ "ETag: ${etag}\n"
+			+ "\n"
+			+ "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+			+ "<!DOCTYPE html PUBLIC  \"-//W3C//DTD XHTML 1.1//EN\" \"http://www.w3.org/TR/xhtml11/DTD/xhtml11.dtd\">\n"
+			+ "<html xmlns=\"http://www.w3.org/1999/xhtml\">\n"
+			+ "<head>\n"
+			+ "<title>Sudoku Applet</title>\n"
+			+ "</head>\n"
+			+ "<body>\n"
+			+ "<h1>Sudoku Applet</h1>\n"
+			+ "<p>\n"
+			+ "<object classid=\"clsid:8AD9C840-044E-11D1-B3E9-00805F499D93\" width=\"325\" height=\"390\">\n"
+			+ "<param name=\"archive\" value=\"Applet.jar\" />\n"
+			+ "<param name=\"code\" value=\"SudokuApplet.class\" />\n"
+			+ "<param name=\"puzzle\" value=\"${puzzle}\" />\n"
+			+ "<param name=\"outputURL\" value=\"${outputURL}\" />\n"
+			+ "<object classid=\"java:SudokuApplet.class\" width=\"325\" height=\"390\" type=\"application/x-java-applet\" archive=\"Applet.jar\">\n"
+			+ "<param name=\"puzzle\" value=\"${puzzle}\" />\n"
+			+ "<param name=\"outputURL\" value=\"${outputURL}\" />\n"
+			+ "</object>\n"
+			+ "</object>\n"
+			+ "</p>\n"
+			+ "</body>\n"
+			+ "</html>\n";
+	private static final PageTemplate PAGE = PageTemplate.compile(TEMPLATE,
+			StandardCharsets.UTF_8);
+	// part of every ETag, so that pages cached by browsers are sent again
+	// when the template changes.
+	private static final String TEMPLATE_VERSION = Long
+			.toHexString(PuzzleBank.hash(TEMPLATE));
+	private static final Map<String, byte[]> CACHE = new LinkedHashMap<String, byte[]>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	private static PuzzleBank bank;
+	private static boolean bankOpened;
+
+	/**
+	 * The main method of the application.
+	 * 
+	 * @param args
+	 *            Not used.
+	 */
+	public static void main(String[] args) {
+		respond(new CgiApp(), System.getProperty("http.if.none.match"),
+				System.out);
+		System.out.flush();
+	}
+
+	/**
+	 * Serve the page for a request.
+	 * 
+	 * @param form
+	 *            The request.
+	 * @param ifNoneMatch
+	 *            The If-None-Match header of the request, or null.
+	 * @param out
+	 *            The stream to print the response to.
+	 */
+	public static void respond(CgiApp form, String ifNoneMatch, PrintStream out) {
+		String puzzle;
+		try {
+			puzzle = choosePuzzle(form);
+			if (form.get("puzzle") == null)
+				sudoku.puzzleServed(puzzle);
+		} catch (IllegalArgumentException e) {
+			out.print("Status: 404 Not Found\nContent-Type: text/plain\n\n"
+					+ e.getMessage() + "\n");
+			return;
+		}
+		String etag = getETag(puzzle);
+		if (matches(ifNoneMatch, etag)) {
+			out.print("Status: 304 Not Modified\nETag: " + etag + "\n\n");
+			return;
+		}
+		byte[] page = getPage(puzzle, etag);
+		out.write(page, 0, page.length);
+	}
+
+	/**
+	 * Find the puzzle asked for by a request.
+	 * 
+	 * @param form
+	 *            The request.
+	 * @return The puzzle, as 81 digits.
+	 * @throws IllegalArgumentException
+	 *             If there is no such puzzle.
+	 */
+	private static String choosePuzzle(CgiApp form) {
+		String puzzle = form.get("puzzle");
+		if (puzzle != null) {
+			puzzle = puzzle.replace('.', '0');
+			if (puzzle.length() != Grid.CELLS)
+				throw new IllegalArgumentException("Not a puzzle: " + puzzle);
+			for (int i = 0; i < Grid.CELLS; i++)
+				if (puzzle.charAt(i) < '0' || puzzle.charAt(i) > '9')
+					throw new IllegalArgumentException("Not a puzzle: "
+							+ puzzle);
+			return puzzle;
+		}
+		String n = form.get("n");
+		String tier = form.get("tier");
+		PuzzleBank bank = getBank();
+		if (bank == null) {
+			if (n != null || tier != null)
+				throw new IllegalArgumentException("No puzzle bank");
+			return DEFAULT_PUZZLE;
+		}
+		if (n != null) {
+			int index;
+			try {
+				index = Integer.parseInt(n.trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Not a puzzle number: " + n);
+			}
+			if (index < 0 || index >= bank.size())
+				throw new IllegalArgumentException("No puzzle number " + index);
+			return bank.get(index);
+		}
+		if (tier == null)
+			return bank.size() == 0 ? DEFAULT_PUZZLE : bank.get(ThreadLocalRandom
+					.current().nextInt(bank.size()));
+		String found;
+		try {
+			found = bank.random(DifficultyRater.Tier.valueOf(tier.trim()
+					.toUpperCase(Locale.ROOT)));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("No such tier: " + tier);
+		}
+		if (found == null)
+			throw new IllegalArgumentException("No puzzles in tier " + tier);
+		return found;
+	}
+
+	/**
+	 * Returns the puzzle bank, opening it the first time it is needed.
+	 * 
+	 * @return The bank, or null if there is no bank.
+	 */
+	private static synchronized PuzzleBank getBank() {
+		if (!bankOpened) {
+			bankOpened = true;
+			File file = new File(BANK_FILE_NAME);
+			if (file.isFile()) {
+				try {
+					bank = new PuzzleBank(file);
+				} catch (IOException e) {
+					System.err.println(e.toString());
+				}
+			}
+		}
+		return bank;
+	}
+
+	/**
+	 * Returns the ETag of the page showing a puzzle, which depends on the
+	 * template as well as on what is filled in.
+	 * 
+	 * @param puzzle
+	 *            The puzzle.
+	 * @return The ETag, in quotes.
+	 */
+	static String getETag(String puzzle) {
+		return "\"" + TEMPLATE_VERSION + "-"
+				+ Long.toHexString(PuzzleBank.hash(puzzle + OUTPUT_URL)) + "\"";
+	}
+
+	/**
+	 * Determines if an If-None-Match header matches an ETag.
+	 * 
+	 * @param ifNoneMatch
+	 *            The header, a list of ETags or "*", or null.
+	 * @param etag
+	 *            The ETag of the page.
+	 * @return true if the page has not changed.
+	 */
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null)
+			return false;
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.startsWith("W/"))
+				tag = tag.substring(2);
+			if (tag.equals(etag) || tag.equals("*"))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the response showing a puzzle, rendering it if it is not cached.
+	 * 
+	 * @param puzzle
+	 *            The puzzle.
+	 * @param etag
+	 *            The ETag of the page.
+	 * @return The response, headers included.
+	 */
+	private static byte[] getPage(String puzzle, String etag) {
+		synchronized (CACHE) {
+			byte[] page = CACHE.get(puzzle);
+			if (page != null)
+				return page;
+		}
+		byte[] page = PAGE.render(etag, puzzle,
+				PageTemplate.escape(OUTPUT_URL));
+		synchronized (CACHE) {
+			CACHE.put(puzzle, page);
+		}
+		return page;
+	}
+}
\ No newline at end of file
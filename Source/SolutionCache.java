@@ -0,0 +1,146 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The SolutionCache class remembers the unique solutions of the puzzles
+ * served most recently, so that a submission for a known puzzle can be checked
+ * by comparing it with the solution instead of validating the whole grid.
+ * 
+ * A puzzle is solved when it is added by whoever serves it; looking a puzzle
+ * up never solves it, so a client cannot make the cache do work or evict the
+ * puzzles being played by submitting puzzles of its own. The cache holds a
+ * bounded number of puzzles, evicting the least recently used. Puzzles which
+ * do not have exactly one solution are remembered as well, so they are not
+ * solved again, but have no solution to compare with. Malformed puzzles are
+ * never cached.
+ * 
+ * The cache is thread-safe. Puzzles are solved outside the lock, so a lookup
+ * never waits for another thread's solver.
+ * 
+ * @author Ole Sandbu
+ */
+public class SolutionCache {
+	// stands for a puzzle which does not have a unique solution.
+	private static final String NO_UNIQUE_SOLUTION = "";
+	private static final ThreadLocal<SudokuSolver> SOLVER = new ThreadLocal<SudokuSolver>() {
+		protected SudokuSolver initialValue() {
+			return new SudokuSolver();
+		}
+	};
+	private final Map<String, String> solutions;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Create an empty cache.
+	 * 
+	 * @param capacity
+	 *            The maximum number of puzzles to remember.
+	 */
+	public SolutionCache(final int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity: " + capacity);
+		solutions = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the unique solution of a puzzle if it is in the cache.
+	 * 
+	 * @param puzzle
+	 *            A puzzle of 81 characters, where 0 or '.' means an empty
+	 *            cell.
+	 * @return The solution, or null if the puzzle is not in the cache, is
+	 *         malformed or does not have exactly one solution.
+	 */
+	public String get(String puzzle) {
+		String key = key(puzzle);
+		if (key == null)
+			return null;
+		String solution;
+		synchronized (this) {
+			solution = solutions.get(key);
+			if (solution != null)
+				hits++;
+			else
+				misses++;
+		}
+		return solution == NO_UNIQUE_SOLUTION ? null : solution;
+	}
+
+	/**
+	 * Add a puzzle which is being served, solving it if it is not already in
+	 * the cache.
+	 * 
+	 * @param puzzle
+	 *            A puzzle of 81 characters, where 0 or '.' means an empty
+	 *            cell.
+	 * @return The solution, or null if the puzzle is malformed or does not
+	 *         have exactly one solution.
+	 */
+	public String add(String puzzle) {
+		String key = key(puzzle);
+		if (key == null)
+			return null;
+		String solution;
+		synchronized (this) {
+			solution = solutions.get(key);
+		}
+		if (solution == null) {
+			SudokuSolver solver = SOLVER.get();
+			if (!solver.load(key))
+				return null;
+			solution = solver.solve(2) == 1 ? solver.getSolution()
+					: NO_UNIQUE_SOLUTION;
+			synchronized (this) {
+				solutions.put(key, solution);
+			}
+		}
+		return solution == NO_UNIQUE_SOLUTION ? null : solution;
+	}
+
+	/**
+	 * Returns the key of a puzzle, with '.' replaced by '0'.
+	 * 
+	 * @return The key, or null if the puzzle is not 81 characters long.
+	 */
+	private static String key(String puzzle) {
+		if (puzzle == null || puzzle.length() != Grid.CELLS)
+			return null;
+		return puzzle.indexOf('.') < 0 ? puzzle : puzzle.replace('.', '0');
+	}
+
+	/**
+	 * Returns the number of puzzles in the cache.
+	 */
+	public synchronized int size() {
+		return solutions.size();
+	}
+
+	/**
+	 * Returns the number of lookups which found the puzzle in the cache.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups which did not find the puzzle in the
+	 * cache.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Forget every puzzle.
+	 */
+	public synchronized void clear() {
+		solutions.clear();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,416 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The SolutionLog class appends records to the solutions file using group
+ * commit. Callers put their records on a queue and wait; a single writer
+ * thread takes every record which is waiting, writes them all with one write
+ * while holding an exclusive lock on the file, forces them to disk according
+ * to the sync policy and only then lets the callers continue.
+ * 
+ * The lock is a FileChannel lock, so records written by different processes
+ * (e.g. several CGI processes running at the same time) are never interleaved.
+ * If the log has a SubmissionIndex, it is brought up to date and checked while
+ * the lock is held, and a record which repeats an earlier submission is not
+ * written at all.
+ * 
+ * @author Ole Sandbu
+ */
+public class SolutionLog {
+	private static final String LINE_SEPARATOR = System.getProperty(
+			"line.separator", "\n");
+	private static final int MAX_BATCH = 1024;
+
+	/** The position returned by append for a duplicate submission. */
+	public static final long DUPLICATE = -1;
+
+	/** When records are forced to the storage device. */
+	public enum SyncPolicy {
+		/** Never force; a record is acknowledged once the OS has it. */
+		NONE,
+		/** Force the content of the file after every batch. */
+		DATA,
+		/** Force the content and metadata of the file after every batch. */
+		ALL
+	}
+
+	private final File file;
+	private final SyncPolicy policy;
+	private final SubmissionIndex index;
+	private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<Entry>();
+	private final Thread writer;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private volatile boolean closed;
+
+	/**
+	 * Open a log for appending.
+	 * 
+	 * @param file
+	 *            The file to append to, which is created if it does not exist.
+	 * @param policy
+	 *            When to force the records to disk.
+	 * @throws IOException
+	 *             If the file cannot be opened.
+	 */
+	public SolutionLog(File file, SyncPolicy policy) throws IOException {
+		this(file, policy, null);
+	}
+
+	/**
+	 * Open a log for appending which rejects duplicate submissions.
+	 * 
+	 * @param file
+	 *            The file to append to, which is created if it does not exist.
+	 * @param policy
+	 *            When to force the records to disk.
+	 * @param index
+	 *            The index of the submissions in the file, or null to accept
+	 *            duplicates.
+	 * @throws IOException
+	 *             If the file cannot be opened.
+	 */
+	public SolutionLog(File file, SyncPolicy policy, SubmissionIndex index)
+			throws IOException {
+		this.file = file;
+		this.policy = policy;
+		this.index = index;
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		writer = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "SolutionLog writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Returns the file the log is written to.
+	 * 
+	 * @return The file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the index of the submissions in the log.
+	 * 
+	 * @return The index, or null if duplicates are accepted.
+	 */
+	public SubmissionIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Append an email and a solution as one line of the log, and wait until
+	 * the line has been written according to the sync policy.
+	 * 
+	 * @param email
+	 *            An email address.
+	 * @param solution
+	 *            A solution.
+	 * @return The position in the file at which the line was written, or
+	 *         DUPLICATE if the email has already submitted the solution.
+	 * @throws IOException
+	 *             If the line could not be written.
+	 */
+	public long append(String email, String solution) throws IOException {
+		return appendAll(new String[] { email }, new String[] { solution })[0];
+	}
+
+	/**
+	 * Append a number of emails and solutions, one line each, with a single
+	 * write, and wait until the lines have been written according to the sync
+	 * policy.
+	 * 
+	 * @param emails
+	 *            The email addresses.
+	 * @param solutions
+	 *            The solutions, in the same order as the emails.
+	 * @return The position in the file at which each line was written, or
+	 *         DUPLICATE for each email which has already submitted the
+	 *         solution.
+	 * @throws IOException
+	 *             If the lines could not be written.
+	 */
+	public long[] appendAll(String[] emails, String[] solutions)
+			throws IOException {
+		if (emails.length != solutions.length)
+			throw new IllegalArgumentException("Emails and solutions differ in number");
+		Entry entry = new Entry(emails, solutions);
+		// checked and queued under the same lock as close, so that no entry
+		// is queued after Entry.CLOSE.
+		synchronized (queue) {
+			if (closed)
+				throw new IOException("Log is closed: " + file);
+			queue.add(entry);
+		}
+		return entry.await();
+	}
+
+	/**
+	 * Stop the writer thread once all the queued records have been written and
+	 * close the file.
+	 * 
+	 * @throws IOException
+	 *             If the file cannot be closed.
+	 */
+	public void close() throws IOException {
+		synchronized (queue) {
+			if (closed)
+				return;
+			closed = true;
+			queue.add(Entry.CLOSE);
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		raf.close();
+		if (index != null)
+			index.close();
+	}
+
+	/**
+	 * The loop run by the writer thread.
+	 */
+	private void writeLoop() {
+		List<Entry> batch = new ArrayList<Entry>();
+		boolean running = true;
+		while (running) {
+			batch.clear();
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				break;
+			}
+			queue.drainTo(batch, MAX_BATCH - 1);
+			int close = batch.indexOf(Entry.CLOSE);
+			if (close >= 0) {
+				List<Entry> late = batch.subList(close + 1, batch.size());
+				fail(late, new IOException("Log is closed: " + file));
+				late.clear();
+				batch.remove(close);
+				running = false;
+			}
+			if (!batch.isEmpty())
+				writeBatch(batch);
+		}
+		batch.clear();
+		queue.drainTo(batch);
+		batch.remove(Entry.CLOSE);
+		fail(batch, new IOException("Log is closed: " + file));
+	}
+
+	/**
+	 * Acknowledge a number of entries with an error.
+	 * 
+	 * @param entries
+	 *            The entries.
+	 * @param error
+	 *            The error thrown to those waiting for them.
+	 */
+	private static void fail(List<Entry> entries, IOException error) {
+		for (Entry entry : entries) {
+			entry.error = error;
+			entry.done.countDown();
+		}
+	}
+
+	/**
+	 * Write a batch of records with one write while holding the file lock, and
+	 * acknowledge them. The records are always acknowledged, with an error if
+	 * they could not be written, so that no caller is left waiting. Once they
+	 * have been written they are acknowledged as written even if the index
+	 * cannot be updated.
+	 * 
+	 * @param batch
+	 *            The records to write.
+	 */
+	private void writeBatch(List<Entry> batch) {
+		try {
+			FileLock lock = channel.lock();
+			try {
+				long start = channel.size();
+				if (index != null) {
+					index.refresh();
+					index.catchUp(channel);
+				}
+				long end = write(encodeBatch(batch, start), start);
+				if (index != null)
+					updateIndex(batch, end);
+			} finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			fail(batch, e);
+			return;
+		} catch (Throwable t) {
+			fail(batch, new IOException("Could not write to the log: " + file,
+					t));
+			return;
+		}
+		for (Entry entry : batch)
+			entry.done.countDown();
+	}
+
+	/**
+	 * Write a buffer at the end of the file and force it according to the sync
+	 * policy. If the buffer cannot be written whole, the file is truncated back
+	 * to where it was, so that no part of a line is left for the next batch to
+	 * be appended to.
+	 * 
+	 * @param buffer
+	 *            The lines to write.
+	 * @param start
+	 *            The length of the file.
+	 * @return The length of the file after the lines.
+	 * @throws IOException
+	 *             If the lines could not be written or forced.
+	 */
+	private long write(ByteBuffer buffer, long start) throws IOException {
+		long position = start;
+		boolean written = false;
+		try {
+			while (buffer.hasRemaining())
+				position += channel.write(buffer, position);
+			if (policy != SyncPolicy.NONE)
+				channel.force(policy == SyncPolicy.ALL);
+			written = true;
+		} finally {
+			if (!written) {
+				try {
+					channel.truncate(start);
+				} catch (IOException e) {
+					// the error which is already being thrown is reported.
+				}
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Add the records of a batch which has been written to the index, and
+	 * record that the index covers the file up to the end of the batch. Unless
+	 * the sync policy is NONE, the new entries are forced to disk before the
+	 * length is recorded, so that after a crash the index never claims to
+	 * cover lines it does not hold. If the index cannot be updated, the length
+	 * it covers is left as it was, so that the next catchUp indexes the batch
+	 * again from the solutions file.
+	 * 
+	 * @param batch
+	 *            The records which have been written.
+	 * @param end
+	 *            The length of the file after the batch.
+	 */
+	private void updateIndex(List<Entry> batch, long end) {
+		try {
+			for (Entry entry : batch)
+				for (int i = 0; i < entry.offsets.length; i++)
+					if (entry.offsets[i] != DUPLICATE)
+						index.add(entry.emails[i], entry.solutions[i],
+								entry.offsets[i]);
+			if (policy != SyncPolicy.NONE)
+				index.force();
+			index.setLogLength(end);
+		} catch (Throwable t) {
+			System.err.println(t.toString());
+		}
+	}
+
+	/**
+	 * Encode the records of a batch which are not duplicates, and work out the
+	 * position each of them will be written at.
+	 * 
+	 * @param batch
+	 *            The records.
+	 * @param position
+	 *            The position the batch will be written at.
+	 * @return A buffer holding the lines to write.
+	 * @throws IOException
+	 *             If the index cannot read the solutions file.
+	 */
+	private ByteBuffer encodeBatch(List<Entry> batch, long position)
+			throws IOException {
+		Set<String> seen = index == null ? null : new HashSet<String>();
+		int length = 0;
+		for (Entry entry : batch) {
+			for (int i = 0; i < entry.offsets.length; i++) {
+				String line = entry.emails[i] + " " + entry.solutions[i];
+				if (index != null
+						&& (index.contains(entry.emails[i], entry.solutions[i]) || !seen
+								.add(line))) {
+					entry.offsets[i] = DUPLICATE;
+					continue;
+				}
+				entry.bytes[i] = encode(line + LINE_SEPARATOR);
+				entry.offsets[i] = position + length;
+				length += entry.bytes[i].length;
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		for (Entry entry : batch)
+			for (int i = 0; i < entry.offsets.length; i++)
+				if (entry.offsets[i] != DUPLICATE)
+					buffer.put(entry.bytes[i]);
+		buffer.flip();
+		return buffer;
+	}
+
+	private static byte[] encode(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * One or more records, from a single call to appendAll, waiting to be
+	 * written.
+	 */
+	private static class Entry {
+		static final Entry CLOSE = new Entry(new String[0], new String[0]);
+		final String[] emails;
+		final String[] solutions;
+		final CountDownLatch done = new CountDownLatch(1);
+		final byte[][] bytes;
+		final long[] offsets;
+		IOException error;
+
+		Entry(String[] emails, String[] solutions) {
+			this.emails = emails;
+			this.solutions = solutions;
+			bytes = new byte[emails.length][];
+			offsets = new long[emails.length];
+		}
+
+		long[] await() throws IOException {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the log");
+			}
+			if (error != null)
+				throw error;
+			return offsets;
+		}
+	}
+}
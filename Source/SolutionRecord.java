@@ -0,0 +1,64 @@
+/**
+ * A SolutionRecord is one entry of the solutions file: the email address of the
+ * user who submitted a solution, the solution itself and when it was
+ * submitted.
+ * 
+ * @author Ole Sandbu
+ */
+public class SolutionRecord {
+	private final String email;
+	private final String solution;
+	private final long timestamp;
+
+	/**
+	 * Create a new SolutionRecord.
+	 * 
+	 * @param email
+	 *            An email address.
+	 * @param solution
+	 *            A solution of 81 digits.
+	 * @param timestamp
+	 *            The time of the submission in milliseconds since the epoch,
+	 *            or 0 if it is not known.
+	 */
+	public SolutionRecord(String email, String solution, long timestamp) {
+		this.email = email;
+		this.solution = solution;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Returns the email address.
+	 * 
+	 * @return The email address.
+	 */
+	public String getEmail() {
+		return email;
+	}
+
+	/**
+	 * Returns the solution.
+	 * 
+	 * @return The solution as 81 digits.
+	 */
+	public String getSolution() {
+		return solution;
+	}
+
+	/**
+	 * Returns the time of the submission.
+	 * 
+	 * @return The time in milliseconds since the epoch, or 0 if it is not
+	 *         known.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns the record in the format of a line of the text solutions file.
+	 */
+	public String toString() {
+		return email + " " + solution;
+	}
+}
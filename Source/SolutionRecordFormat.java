@@ -0,0 +1,151 @@
+/**
+ * The SolutionRecordFormat class describes the binary format of the solutions
+ * file, which is read and written by SolutionRecordReader and
+ * SolutionRecordWriter.
+ * 
+ * The file starts with the four bytes "SDKS" and a version byte. It is then a
+ * sequence of records, each of which is a type byte, a two byte length, that
+ * many bytes of payload and a CRC32 of the type, length and payload.
+ * 
+ * An EMAIL record defines the next entry of the email dictionary; its payload
+ * is the UTF-8 encoded address, and the entries are numbered from 0 in the
+ * order they appear. A SOLUTION record holds the dictionary number of the
+ * email (as a variable length integer), the timestamp as a long and the packed
+ * solution. A solution made up only of the digits 1..9 is packed as a base 9
+ * number in 33 bytes; any other solution of 81 digits is packed as 41 bytes of
+ * 4-bit nibbles.
+ * 
+ * @author Ole Sandbu
+ */
+final class SolutionRecordFormat {
+	static final byte[] MAGIC = { 'S', 'D', 'K', 'S' };
+	static final int VERSION = 1;
+	static final int EMAIL = 'E';
+	static final int SOLUTION = 'S';
+	static final int NIBBLES = 0;
+	static final int BASE9 = 1;
+	static final int NIBBLE_BYTES = (Grid.CELLS + 1) / 2;
+	static final int BASE9_BYTES = 33;
+	static final int MAX_PAYLOAD = 0xFFFF;
+
+	private SolutionRecordFormat() {
+	}
+
+	/**
+	 * Determines if a solution can be packed at all.
+	 * 
+	 * @param solution
+	 *            A solution.
+	 * @return true if it consists of exactly 81 digits.
+	 */
+	static boolean isPackable(CharSequence solution) {
+		if (solution.length() != Grid.CELLS)
+			return false;
+		for (int i = 0; i < Grid.CELLS; i++) {
+			char c = solution.charAt(i);
+			if (c < '0' || c > '9')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Determines if a packable solution can be packed in base 9.
+	 * 
+	 * @param solution
+	 *            A solution of 81 digits.
+	 * @return true if it does not contain a 0.
+	 */
+	static boolean isBase9(CharSequence solution) {
+		for (int i = 0; i < Grid.CELLS; i++)
+			if (solution.charAt(i) == '0')
+				return false;
+		return true;
+	}
+
+	/**
+	 * Pack a solution of the digits 1..9 as a big-endian base 9 number.
+	 * 
+	 * @param solution
+	 *            The solution.
+	 * @param dest
+	 *            The destination array.
+	 * @param offset
+	 *            The index in dest of the first of the 33 bytes.
+	 */
+	static void packBase9(CharSequence solution, byte[] dest, int offset) {
+		int last = offset + BASE9_BYTES - 1;
+		for (int i = offset; i <= last; i++)
+			dest[i] = 0;
+		for (int i = 0; i < Grid.CELLS; i++) {
+			// number = number * 9 + digit
+			int carry = solution.charAt(i) - '1';
+			for (int j = last; j >= offset; j--) {
+				int v = (dest[j] & 0xFF) * 9 + carry;
+				dest[j] = (byte) v;
+				carry = v >>> 8;
+			}
+		}
+	}
+
+	/**
+	 * Unpack a solution packed by packBase9.
+	 * 
+	 * @param src
+	 *            The source array, which is modified.
+	 * @param offset
+	 *            The index in src of the first of the 33 bytes.
+	 * @param dest
+	 *            The array to write the 81 digits to.
+	 */
+	static void unpackBase9(byte[] src, int offset, char[] dest) {
+		int last = offset + BASE9_BYTES - 1;
+		for (int i = Grid.CELLS - 1; i >= 0; i--) {
+			// digit = number % 9, number = number / 9
+			int remainder = 0;
+			for (int j = offset; j <= last; j++) {
+				int v = (remainder << 8) | (src[j] & 0xFF);
+				src[j] = (byte) (v / 9);
+				remainder = v % 9;
+			}
+			dest[i] = (char) ('1' + remainder);
+		}
+	}
+
+	/**
+	 * Pack a solution of 81 digits as 4-bit nibbles.
+	 * 
+	 * @param solution
+	 *            The solution.
+	 * @param dest
+	 *            The destination array.
+	 * @param offset
+	 *            The index in dest of the first of the 41 bytes.
+	 */
+	static void packNibbles(CharSequence solution, byte[] dest, int offset) {
+		for (int i = 0; i < NIBBLE_BYTES; i++) {
+			int high = solution.charAt(2 * i) - '0';
+			int low = 2 * i + 1 < Grid.CELLS ? solution.charAt(2 * i + 1) - '0'
+					: 0;
+			dest[offset + i] = (byte) (high << 4 | low);
+		}
+	}
+
+	/**
+	 * Unpack a solution packed by packNibbles.
+	 * 
+	 * @param src
+	 *            The source array.
+	 * @param offset
+	 *            The index in src of the first of the 41 bytes.
+	 * @param dest
+	 *            The array to write the 81 digits to.
+	 */
+	static void unpackNibbles(byte[] src, int offset, char[] dest) {
+		for (int i = 0; i < Grid.CELLS; i++) {
+			int b = src[offset + i / 2];
+			int digit = i % 2 == 0 ? (b >> 4) & 0xF : b & 0xF;
+			dest[i] = (char) ('0' + digit);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The SolutionRecordReader class reads solution records from a stream in the
+ * binary format described by SolutionRecordFormat, checking the CRC of each
+ * record as it is read.
+ * 
+ * @author Ole Sandbu
+ */
+public class SolutionRecordReader implements Closeable {
+	private final InputStream in;
+	private final List<String> emails = new ArrayList<String>();
+	private final CRC32 crc = new CRC32();
+	private final byte[] buffer = new byte[3 + SolutionRecordFormat.MAX_PAYLOAD + 4];
+	private final char[] digits = new char[Grid.CELLS];
+	// the number of records read, of either type, so records are numbered
+	// from 1.
+	private long records;
+
+	/**
+	 * Create a new SolutionRecordReader and check the file header.
+	 * 
+	 * @param in
+	 *            The stream to read from, which should be buffered.
+	 * @throws IOException
+	 *             If the header cannot be read or is not the expected one.
+	 */
+	public SolutionRecordReader(InputStream in) throws IOException {
+		this.in = in;
+		byte[] header = new byte[SolutionRecordFormat.MAGIC.length + 1];
+		readFully(header, 0, header.length);
+		for (int i = 0; i < SolutionRecordFormat.MAGIC.length; i++)
+			if (header[i] != SolutionRecordFormat.MAGIC[i])
+				throw new IOException("Not a solutions file");
+		if (header[header.length - 1] != SolutionRecordFormat.VERSION)
+			throw new IOException("Unsupported version: "
+					+ header[header.length - 1]);
+	}
+
+	/**
+	 * Read the next solution record.
+	 * 
+	 * @return The record, or null at the end of the stream.
+	 * @throws IOException
+	 *             If the stream cannot be read or is corrupt.
+	 */
+	public SolutionRecord read() throws IOException {
+		while (true) {
+			int type = in.read();
+			if (type < 0)
+				return null;
+			buffer[0] = (byte) type;
+			readFully(buffer, 1, 2);
+			int length = (buffer[1] & 0xFF) << 8 | (buffer[2] & 0xFF);
+			readFully(buffer, 3, length + 4);
+			crc.reset();
+			crc.update(buffer, 0, 3 + length);
+			int pos = 3 + length;
+			int stored = (buffer[pos] & 0xFF) << 24
+					| (buffer[pos + 1] & 0xFF) << 16
+					| (buffer[pos + 2] & 0xFF) << 8 | (buffer[pos + 3] & 0xFF);
+			records++;
+			if (stored != (int) crc.getValue())
+				throw new IOException("CRC mismatch in record " + records);
+			if (type == SolutionRecordFormat.EMAIL)
+				emails.add(new String(buffer, 3, length, "UTF-8"));
+			else if (type == SolutionRecordFormat.SOLUTION)
+				return decodeSolution(length);
+			else
+				throw new IOException("Unknown record type: " + type);
+		}
+	}
+
+	/**
+	 * Decode the payload of a SOLUTION record in the buffer.
+	 * 
+	 * @param length
+	 *            The length of the payload.
+	 * @return The record.
+	 * @throws IOException
+	 *             If the payload is corrupt.
+	 */
+	private SolutionRecord decodeSolution(int length) throws IOException {
+		int pos = 3;
+		int end = 3 + length;
+		int id = 0;
+		for (int shift = 0; ; shift += 7) {
+			if (pos >= end || shift > 28)
+				throw new IOException("Corrupt email number");
+			int b = buffer[pos++];
+			id |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				break;
+		}
+		if (id >= emails.size() || end - pos < 9)
+			throw new IOException("Corrupt solution record");
+		long timestamp = 0;
+		for (int i = 0; i < 8; i++)
+			timestamp = timestamp << 8 | (buffer[pos++] & 0xFF);
+		int encoding = buffer[pos++];
+		if (encoding == SolutionRecordFormat.BASE9
+				&& end - pos == SolutionRecordFormat.BASE9_BYTES)
+			SolutionRecordFormat.unpackBase9(buffer, pos, digits);
+		else if (encoding == SolutionRecordFormat.NIBBLES
+				&& end - pos == SolutionRecordFormat.NIBBLE_BYTES)
+			SolutionRecordFormat.unpackNibbles(buffer, pos, digits);
+		else
+			throw new IOException("Corrupt solution encoding");
+		return new SolutionRecord(emails.get(id), new String(digits), timestamp);
+	}
+
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = in.read(b, off, len);
+			if (n < 0)
+				throw new EOFException("Truncated solutions file");
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Close the underlying stream.
+	 */
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,205 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The SolutionRecordWriter class writes solution records to a stream in the
+ * binary format described by SolutionRecordFormat. Each email address is
+ * written once, the first time it is used, and later records refer to it by
+ * number.
+ * 
+ * @author Ole Sandbu
+ */
+public class SolutionRecordWriter implements Closeable {
+	private final OutputStream out;
+	private final Map<String, Integer> emails = new HashMap<String, Integer>();
+	private final CRC32 crc = new CRC32();
+	private final byte[] buffer = new byte[3 + SolutionRecordFormat.MAX_PAYLOAD + 4];
+
+	/**
+	 * Create a new SolutionRecordWriter and write the file header.
+	 * 
+	 * @param out
+	 *            The stream to write to, which should be buffered.
+	 * @throws IOException
+	 *             If the header cannot be written.
+	 */
+	public SolutionRecordWriter(OutputStream out) throws IOException {
+		this.out = out;
+		out.write(SolutionRecordFormat.MAGIC);
+		out.write(SolutionRecordFormat.VERSION);
+	}
+
+	/**
+	 * Write a record.
+	 * 
+	 * @param record
+	 *            The record.
+	 * @throws IOException
+	 *             If the record cannot be written.
+	 */
+	public void write(SolutionRecord record) throws IOException {
+		write(record.getEmail(), record.getSolution(), record.getTimestamp());
+	}
+
+	/**
+	 * Write a record.
+	 * 
+	 * @param email
+	 *            An email address.
+	 * @param solution
+	 *            A solution of 81 digits.
+	 * @param timestamp
+	 *            The time of the submission in milliseconds since the epoch,
+	 *            or 0 if it is not known.
+	 * @throws IOException
+	 *             If the record cannot be written.
+	 */
+	public void write(String email, CharSequence solution, long timestamp)
+			throws IOException {
+		if (!SolutionRecordFormat.isPackable(solution))
+			throw new IllegalArgumentException("Not a solution: " + solution);
+		Integer id = emails.get(email);
+		if (id == null) {
+			byte[] bytes = email.getBytes("UTF-8");
+			if (bytes.length > SolutionRecordFormat.MAX_PAYLOAD)
+				throw new IllegalArgumentException("Email too long");
+			System.arraycopy(bytes, 0, buffer, 3, bytes.length);
+			writeRecord(SolutionRecordFormat.EMAIL, bytes.length);
+			id = Integer.valueOf(emails.size());
+			emails.put(email, id);
+		}
+		int pos = 3;
+		for (int v = id.intValue(); ; v >>>= 7) {
+			if ((v & ~0x7F) == 0) {
+				buffer[pos++] = (byte) v;
+				break;
+			}
+			buffer[pos++] = (byte) (v & 0x7F | 0x80);
+		}
+		for (int shift = 56; shift >= 0; shift -= 8)
+			buffer[pos++] = (byte) (timestamp >>> shift);
+		if (SolutionRecordFormat.isBase9(solution)) {
+			buffer[pos++] = SolutionRecordFormat.BASE9;
+			SolutionRecordFormat.packBase9(solution, buffer, pos);
+			pos += SolutionRecordFormat.BASE9_BYTES;
+		} else {
+			buffer[pos++] = SolutionRecordFormat.NIBBLES;
+			SolutionRecordFormat.packNibbles(solution, buffer, pos);
+			pos += SolutionRecordFormat.NIBBLE_BYTES;
+		}
+		writeRecord(SolutionRecordFormat.SOLUTION, pos - 3);
+	}
+
+	/**
+	 * Write the record whose payload has been put in the buffer.
+	 * 
+	 * @param type
+	 *            The type of the record.
+	 * @param length
+	 *            The length of the payload.
+	 * @throws IOException
+	 *             If the record cannot be written.
+	 */
+	private void writeRecord(int type, int length) throws IOException {
+		buffer[0] = (byte) type;
+		buffer[1] = (byte) (length >>> 8);
+		buffer[2] = (byte) length;
+		crc.reset();
+		crc.update(buffer, 0, 3 + length);
+		int value = (int) crc.getValue();
+		int pos = 3 + length;
+		buffer[pos++] = (byte) (value >>> 24);
+		buffer[pos++] = (byte) (value >>> 16);
+		buffer[pos++] = (byte) (value >>> 8);
+		buffer[pos++] = (byte) value;
+		out.write(buffer, 0, pos);
+	}
+
+	/**
+	 * Flush the underlying stream.
+	 * 
+	 * @throws IOException
+	 *             If the stream cannot be flushed.
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Close the underlying stream.
+	 */
+	public void close() throws IOException {
+		out.close();
+	}
+
+	/**
+	 * Convert a text solutions file, with one "email solution" line per
+	 * submission, to the binary format. Lines which do not hold an email
+	 * followed by 81 digits are skipped.
+	 * 
+	 * @param textFile
+	 *            The text file to read.
+	 * @param binaryFile
+	 *            The binary file to write.
+	 * @return The number of lines skipped.
+	 * @throws IOException
+	 *             If an error occurs while reading or writing.
+	 */
+	public static int convert(String textFile, String binaryFile)
+			throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new BufferedInputStream(new FileInputStream(textFile)), "UTF-8"));
+		SolutionRecordWriter writer = new SolutionRecordWriter(
+				new BufferedOutputStream(new FileOutputStream(binaryFile)));
+		int skipped = 0;
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				int space = line.lastIndexOf(' ');
+				if (space <= 0
+						|| !SolutionRecordFormat.isPackable(line
+								.substring(space + 1))) {
+					skipped++;
+					continue;
+				}
+				writer.write(line.substring(0, space), line
+						.substring(space + 1), 0);
+			}
+		} finally {
+			in.close();
+			writer.close();
+		}
+		return skipped;
+	}
+
+	/**
+	 * Convert a text solutions file to the binary format.
+	 * 
+	 * @param args
+	 *            The text file and the binary file.
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("Usage: java SolutionRecordWriter solutions.txt solutions.bin");
+			System.exit(1);
+		}
+		try {
+			int skipped = convert(args[0], args[1]);
+			if (skipped > 0)
+				System.err.println("Skipped " + skipped + " malformed lines");
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			System.exit(1);
+		}
+	}
+}
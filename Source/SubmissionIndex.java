@@ -0,0 +1,527 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The SubmissionIndex class is a memory-mapped hash index over the solutions
+ * file. It answers "has this email already submitted this solution?" and "how
+ * many solutions has this email submitted?" without reading the solutions
+ * file.
+ * 
+ * The index file holds two open-addressing hash tables with linear probing:
+ * one keyed by a 64-bit hash of (email, solution) which stores the position of
+ * the line in the solutions file, and one keyed by a 64-bit hash of the email
+ * which stores the number of submissions. The header records how much of the
+ * solutions file has been indexed, so an index which has fallen behind can be
+ * brought up to date by reading only the lines after that point.
+ * 
+ * Two different pairs can have the same hash, so a pair is only taken to be
+ * in the index once the line at the stored position has been read back from
+ * the solutions file and found to hold the same email and solution. The
+ * solutions file used for this is the one last given to catchUp.
+ * 
+ * The index is not locked by itself. SolutionLog only uses it while holding
+ * the lock on the solutions file, which keeps the index and the file in step
+ * between processes.
+ * 
+ * @author Ole Sandbu
+ */
+public class SubmissionIndex implements Closeable {
+	private static final int MAGIC = 0x53444B49; // "SDKI"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int SLOT_SIZE = 16;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int MAX_CAPACITY = 1 << 26;
+	// header fields
+	private static final int CAPACITY = 8;
+	private static final int PAIR_COUNT = 12;
+	private static final int EMAIL_COUNT = 16;
+	private static final int LOG_LENGTH = 24;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private MappedByteBuffer map;
+	private int capacity;
+	private FileChannel log;
+
+	/**
+	 * Open an index, creating an empty one if the file does not exist.
+	 * 
+	 * @param file
+	 *            The index file.
+	 * @throws IOException
+	 *             If the file cannot be opened or is not an index.
+	 */
+	public SubmissionIndex(File file) throws IOException {
+		this.file = file;
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		if (channel.size() == 0)
+			create(INITIAL_CAPACITY);
+		else
+			refresh();
+	}
+
+	/**
+	 * Returns the index file.
+	 * 
+	 * @return The file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Initialise an empty index of a given capacity.
+	 * 
+	 * @param capacity
+	 *            The number of slots in each table, a power of two.
+	 * @throws IOException
+	 *             If the file cannot be resized.
+	 */
+	private void create(int capacity) throws IOException {
+		long size = HEADER_SIZE + 2L * capacity * SLOT_SIZE;
+		map = null;
+		raf.setLength(0);
+		raf.setLength(size);
+		map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		map.putInt(0, MAGIC);
+		map.putInt(4, VERSION);
+		map.putInt(CAPACITY, capacity);
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Map the index again if another process has resized it since it was
+	 * last mapped.
+	 * 
+	 * @throws IOException
+	 *             If the file is not an index.
+	 */
+	public synchronized void refresh() throws IOException {
+		if (map != null && channel.size() == map.capacity()
+				&& map.getInt(CAPACITY) == capacity)
+			return;
+		long size = channel.size();
+		if (size < HEADER_SIZE)
+			throw new IOException("Not a submission index: " + file);
+		map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION)
+			throw new IOException("Not a submission index: " + file);
+		capacity = map.getInt(CAPACITY);
+		if (HEADER_SIZE + 2L * capacity * SLOT_SIZE != size)
+			throw new IOException("Corrupt submission index: " + file);
+	}
+
+	/**
+	 * Determines if an email has already submitted a solution.
+	 * 
+	 * @param email
+	 *            An email address.
+	 * @param solution
+	 *            A solution.
+	 * @return true if the pair is in the index.
+	 * @throws IOException
+	 *             If the solutions file cannot be read.
+	 */
+	public synchronized boolean contains(String email, CharSequence solution)
+			throws IOException {
+		return findPair(email, solution) >= 0;
+	}
+
+	/**
+	 * Returns the position in the solutions file of the line holding an email
+	 * and solution.
+	 * 
+	 * @param email
+	 *            An email address.
+	 * @param solution
+	 *            A solution.
+	 * @return The position, or -1 if the pair is not in the index.
+	 * @throws IOException
+	 *             If the solutions file cannot be read.
+	 */
+	public synchronized long offsetOf(String email, CharSequence solution)
+			throws IOException {
+		int slot = findPair(email, solution);
+		return slot < 0 ? -1 : map.getLong(slot + 8);
+	}
+
+	/**
+	 * Returns the number of solutions submitted by an email.
+	 * 
+	 * @param email
+	 *            An email address.
+	 * @return The number of submissions.
+	 */
+	public synchronized int countByEmail(String email) {
+		int slot = find(emailsStart(), emailHash(email));
+		return slot < 0 ? 0 : map.getInt(slot + 8);
+	}
+
+	/**
+	 * Returns the number of (email, solution) pairs in the index.
+	 * 
+	 * @return The number of pairs.
+	 */
+	public synchronized int size() {
+		return map.getInt(PAIR_COUNT);
+	}
+
+	/**
+	 * Add a submission to the index.
+	 * 
+	 * @param email
+	 *            An email address.
+	 * @param solution
+	 *            A solution.
+	 * @param offset
+	 *            The position of the line in the solutions file.
+	 * @return false if the pair was already in the index, true otherwise.
+	 * @throws IOException
+	 *             If the index has to grow and cannot be resized.
+	 */
+	public synchronized boolean add(String email, CharSequence solution,
+			long offset) throws IOException {
+		long hash = pairHash(email, solution);
+		if (findPair(email, solution) >= 0)
+			return false;
+		if (Math.max(map.getInt(PAIR_COUNT), map.getInt(EMAIL_COUNT)) + 1 > capacity / 4 * 3)
+			grow();
+		insertPair(hash, offset);
+		long emailHash = emailHash(email);
+		int slot = find(emailsStart(), emailHash);
+		if (slot >= 0)
+			map.putInt(slot + 8, map.getInt(slot + 8) + 1);
+		else
+			insertEmail(emailHash, 1);
+		return true;
+	}
+
+	/**
+	 * Returns how much of the solutions file has been indexed.
+	 * 
+	 * @return The position just after the last indexed line.
+	 */
+	public synchronized long getLogLength() {
+		return map.getLong(LOG_LENGTH);
+	}
+
+	/**
+	 * Record how much of the solutions file has been indexed.
+	 * 
+	 * @param length
+	 *            The position just after the last indexed line.
+	 */
+	public synchronized void setLogLength(long length) {
+		map.putLong(LOG_LENGTH, length);
+	}
+
+	/**
+	 * Index the lines which have been added to the solutions file since it was
+	 * last indexed. The file is also the one read to confirm that a pair is in
+	 * the index, until catchUp is called again.
+	 * 
+	 * @param log
+	 *            The solutions file, which should be locked by the caller.
+	 * @throws IOException
+	 *             If the file cannot be read.
+	 */
+	public synchronized void catchUp(FileChannel log) throws IOException {
+		this.log = log;
+		long position = getLogLength();
+		long size = log.size();
+		if (position > size) {
+			// the solutions file has been truncated or replaced.
+			clear();
+			position = 0;
+		}
+		if (position == size)
+			return;
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		byte[] line = new byte[buffer.capacity()];
+		int lineLength = 0;
+		long lineStart = position;
+		while (position < size) {
+			buffer.clear();
+			int n = log.read(buffer, position);
+			if (n <= 0)
+				break;
+			for (int i = 0; i < n; i++) {
+				byte b = buffer.get(i);
+				if (b == '\n') {
+					indexLine(line, lineLength, lineStart);
+					lineLength = 0;
+					lineStart = position + i + 1;
+				} else if (lineLength < line.length) {
+					line[lineLength++] = b;
+				}
+			}
+			position += n;
+		}
+		// an unterminated last line is indexed the next time.
+		setLogLength(lineStart);
+	}
+
+	/**
+	 * Index one "email solution" line of the solutions file.
+	 */
+	private void indexLine(byte[] line, int length, long offset)
+			throws IOException {
+		if (length > 0 && line[length - 1] == '\r')
+			length--;
+		int space = length - 1;
+		while (space >= 0 && line[space] != ' ')
+			space--;
+		if (space <= 0)
+			return;
+		String email = new String(line, 0, space, "UTF-8");
+		String solution = new String(line, space + 1, length - space - 1,
+				"UTF-8");
+		add(email, solution, offset);
+	}
+
+	/**
+	 * Remove everything from the index.
+	 * 
+	 * @throws IOException
+	 *             If the file cannot be resized.
+	 */
+	public synchronized void clear() throws IOException {
+		create(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Rebuild the index from the start of the solutions file.
+	 * 
+	 * @param log
+	 *            The solutions file.
+	 * @throws IOException
+	 *             If an error occurs while reading or writing.
+	 */
+	public synchronized void rebuild(FileChannel log) throws IOException {
+		clear();
+		catchUp(log);
+	}
+
+	/**
+	 * Flush the index to disk.
+	 */
+	public synchronized void force() {
+		map.force();
+	}
+
+	/**
+	 * Close the index file.
+	 */
+	public synchronized void close() throws IOException {
+		map.force();
+		raf.close();
+	}
+
+	private int pairsStart() {
+		return HEADER_SIZE;
+	}
+
+	private int emailsStart() {
+		return HEADER_SIZE + capacity * SLOT_SIZE;
+	}
+
+	/**
+	 * Find the slot holding a key in one of the tables.
+	 * 
+	 * @return The position of the slot in the file, or -1 if it is not there.
+	 */
+	private int find(int table, long hash) {
+		int mask = capacity - 1;
+		for (int i = start(hash, mask); ; i = (i + 1) & mask) {
+			int slot = table + i * SLOT_SIZE;
+			long key = map.getLong(slot);
+			if (key == hash)
+				return slot;
+			if (key == 0)
+				return -1;
+		}
+	}
+
+	/**
+	 * Find the slot of a pair, skipping slots whose hash is the same but whose
+	 * line in the solutions file holds a different pair. Without a solutions
+	 * file the hash alone is compared.
+	 * 
+	 * @return The position of the slot in the file, or -1 if it is not there.
+	 */
+	private int findPair(String email, CharSequence solution)
+			throws IOException {
+		long hash = pairHash(email, solution);
+		int mask = capacity - 1;
+		byte[] line = null;
+		for (int i = start(hash, mask); ; i = (i + 1) & mask) {
+			int slot = pairsStart() + i * SLOT_SIZE;
+			long key = map.getLong(slot);
+			if (key == 0)
+				return -1;
+			if (key != hash)
+				continue;
+			if (log == null)
+				return slot;
+			if (line == null)
+				line = (email + " " + solution)
+						.getBytes(StandardCharsets.UTF_8);
+			if (isLine(map.getLong(slot + 8), line))
+				return slot;
+		}
+	}
+
+	/**
+	 * Determines if the line at a position in the solutions file is a given
+	 * line.
+	 */
+	private boolean isLine(long offset, byte[] line) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(line.length + 1);
+		while (buffer.hasRemaining())
+			if (log.read(buffer, offset + buffer.position()) < 0)
+				break;
+		if (buffer.position() < line.length)
+			return false;
+		for (int i = 0; i < line.length; i++)
+			if (buffer.get(i) != line[i])
+				return false;
+		if (buffer.position() == line.length)
+			return true;
+		byte end = buffer.get(line.length);
+		return end == '\n' || end == '\r';
+	}
+
+	/**
+	 * Find the empty slot a new key should go in.
+	 */
+	private int freeSlot(int table, long hash) {
+		int mask = capacity - 1;
+		for (int i = start(hash, mask); ; i = (i + 1) & mask) {
+			int slot = table + i * SLOT_SIZE;
+			if (map.getLong(slot) == 0)
+				return slot;
+		}
+	}
+
+	private void insertPair(long hash, long offset) {
+		int slot = freeSlot(pairsStart(), hash);
+		map.putLong(slot, hash);
+		map.putLong(slot + 8, offset);
+		map.putInt(PAIR_COUNT, map.getInt(PAIR_COUNT) + 1);
+	}
+
+	private void insertEmail(long hash, int count) {
+		int slot = freeSlot(emailsStart(), hash);
+		map.putLong(slot, hash);
+		map.putInt(slot + 8, count);
+		map.putInt(EMAIL_COUNT, map.getInt(EMAIL_COUNT) + 1);
+	}
+
+	/**
+	 * Double the capacity of the tables. The file is resized in place, so that
+	 * other processes see the change the next time they call refresh.
+	 * 
+	 * @throws IOException
+	 *             If the file cannot be resized.
+	 */
+	private void grow() throws IOException {
+		if (capacity >= MAX_CAPACITY)
+			throw new IOException("Submission index is full: " + file);
+		int pairs = map.getInt(PAIR_COUNT);
+		int emails = map.getInt(EMAIL_COUNT);
+		long logLength = map.getLong(LOG_LENGTH);
+		long[] pairKeys = new long[pairs];
+		long[] offsets = new long[pairs];
+		long[] emailKeys = new long[emails];
+		int[] counts = new int[emails];
+		int p = 0;
+		int e = 0;
+		for (int i = 0; i < capacity; i++) {
+			int slot = pairsStart() + i * SLOT_SIZE;
+			if (map.getLong(slot) != 0) {
+				pairKeys[p] = map.getLong(slot);
+				offsets[p++] = map.getLong(slot + 8);
+			}
+			slot = emailsStart() + i * SLOT_SIZE;
+			if (map.getLong(slot) != 0) {
+				emailKeys[e] = map.getLong(slot);
+				counts[e++] = map.getInt(slot + 8);
+			}
+		}
+		create(capacity * 2);
+		for (int i = 0; i < p; i++)
+			insertPair(pairKeys[i], offsets[i]);
+		for (int i = 0; i < e; i++)
+			insertEmail(emailKeys[i], counts[i]);
+		map.putLong(LOG_LENGTH, logLength);
+	}
+
+	private static int start(long hash, int mask) {
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	/**
+	 * Returns the 64-bit FNV-1a hash of an email, which is never 0.
+	 */
+	private static long emailHash(String email) {
+		return nonZero(hash(0xcbf29ce484222325L, email));
+	}
+
+	/**
+	 * Returns the 64-bit FNV-1a hash of an email and a solution, which is
+	 * never 0.
+	 */
+	private static long pairHash(String email, CharSequence solution) {
+		long h = hash(0xcbf29ce484222325L, email);
+		h = (h ^ ' ') * 0x100000001b3L;
+		return nonZero(hash(h, solution));
+	}
+
+	private static long hash(long h, CharSequence s) {
+		for (int i = 0; i < s.length(); i++)
+			h = (h ^ s.charAt(i)) * 0x100000001b3L;
+		return h;
+	}
+
+	private static long nonZero(long hash) {
+		return hash == 0 ? 1 : hash;
+	}
+
+	/**
+	 * Rebuild an index from a solutions file, or look up an email in it.
+	 * 
+	 * @param args
+	 *            The solutions file and the index file, optionally followed
+	 *            by an email address to look up.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: java SubmissionIndex solutions.txt solutions.idx [email]");
+			System.exit(1);
+		}
+		try {
+			SubmissionIndex index = new SubmissionIndex(new File(args[1]));
+			if (args.length > 2) {
+				System.out.println(index.countByEmail(args[2]));
+			} else {
+				RandomAccessFile log = new RandomAccessFile(args[0], "r");
+				index.rebuild(log.getChannel());
+				log.close();
+				System.err.println("Indexed " + index.size() + " submissions");
+			}
+			index.close();
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			System.exit(1);
+		}
+	}
+}
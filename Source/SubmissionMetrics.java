@@ -0,0 +1,572 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The SubmissionMetrics class records how long each stage of a submission
+ * takes and how many submissions end in each way, cheaply enough to be left
+ * on in production.
+ * 
+ * The time of each stage goes into a Histogram, and each outcome has a
+ * LongAdder, so recording never takes a lock. The metrics can be read through
+ * JMX, as the plain text served by the metrics endpoint of SudokuServer, or
+ * from a file to which snapshots are written. A CGI process only lives for one
+ * submission, so instead of overwriting the file it adds its counts to those
+ * already in it.
+ * 
+ * @author Ole Sandbu
+ */
+public class SubmissionMetrics implements SubmissionMetricsMXBean {
+	/**
+	 * The stages a submission goes through.
+	 */
+	public enum Stage {
+		/** Parsing the query string or body of the request. */
+		PARSE,
+		/** Validating the email address. */
+		EMAIL,
+		/** Validating the solution. */
+		SOLUTION,
+		/** Appending the submission to the solutions file. */
+		APPEND
+	}
+
+	/**
+	 * The ways a submission can end.
+	 */
+	public enum Outcome {
+		/** The submission was appended to the solutions file. */
+		ACCEPTED,
+		/** The request was too large. */
+		TOO_LARGE,
+		/** The email address was invalid. */
+		INVALID_EMAIL,
+		/** The solution was invalid. */
+		INVALID_SOLUTION,
+		/** The email address had already submitted the solution. */
+		DUPLICATE,
+		/** The submission could not be appended to the solutions file. */
+		ERROR,
+		/** A record of a batch was not an email and a solution. */
+		MALFORMED,
+		/** The puzzle which was served was missing or not a puzzle. */
+		INVALID_PUZZLE
+	}
+
+	/**
+	 * The Histogram class counts values in buckets whose width grows with the
+	 * values, like an HDR histogram, so that any percentile can be read to
+	 * within about 3% from a fixed array of counters.
+	 * 
+	 * Values below 64 each have their own bucket; above that, each power of
+	 * two is split into 32 buckets.
+	 */
+	public static final class Histogram {
+		private static final int SUB_BITS = 5;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+		private static final int BUCKETS = index(Long.MAX_VALUE) + 1;
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(
+				new LongBinaryOperator() {
+					public long applyAsLong(long left, long right) {
+						return Math.max(left, right);
+					}
+				}, 0);
+
+		/**
+		 * Record a value.
+		 * 
+		 * @param value
+		 *            The value; negative values are recorded as 0.
+		 */
+		public void record(long value) {
+			if (value < 0)
+				value = 0;
+			counts.incrementAndGet(index(value));
+			count.increment();
+			sum.add(value);
+			max.accumulate(value);
+		}
+
+		/**
+		 * Returns the number of values recorded.
+		 * 
+		 * @return The count.
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+
+		/**
+		 * Returns the sum of the values recorded.
+		 * 
+		 * @return The sum.
+		 */
+		public long getSum() {
+			return sum.sum();
+		}
+
+		/**
+		 * Returns the largest value recorded.
+		 * 
+		 * @return The largest value, or 0 if none have been recorded.
+		 */
+		public long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * Returns the mean of the values recorded.
+		 * 
+		 * @return The mean, or 0 if none have been recorded.
+		 */
+		public double getMean() {
+			long n = count.sum();
+			return n == 0 ? 0 : (double) sum.sum() / n;
+		}
+
+		/**
+		 * Returns the value below which a given percentage of the values
+		 * recorded fall.
+		 * 
+		 * @param percentile
+		 *            The percentage, from 0 to 100.
+		 * @return The highest value in the bucket holding the percentile, but
+		 *         no more than the largest value recorded.
+		 */
+		public long getValueAtPercentile(double percentile) {
+			long[] snapshot = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++)
+				total += snapshot[i] = counts.get(i);
+			if (total == 0)
+				return 0;
+			long target = Math.max(1,
+					(long) Math.ceil(percentile / 100 * total));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += snapshot[i];
+				if (seen >= target)
+					return Math.min(highestValue(i), max.get());
+			}
+			return max.get();
+		}
+
+		/**
+		 * Set the histogram back to empty.
+		 */
+		void reset() {
+			for (int i = 0; i < BUCKETS; i++)
+				counts.set(i, 0);
+			count.reset();
+			sum.reset();
+			max.reset();
+		}
+
+		/**
+		 * Add the values of another histogram to this one.
+		 */
+		void add(Histogram other) {
+			for (int i = 0; i < BUCKETS; i++) {
+				long n = other.counts.get(i);
+				if (n != 0)
+					counts.addAndGet(i, n);
+			}
+			count.add(other.count.sum());
+			sum.add(other.sum.sum());
+			max.accumulate(other.max.get());
+		}
+
+		/**
+		 * Returns the bucket of a value.
+		 */
+		private static int index(long value) {
+			if (value < 2 * SUB_BUCKETS)
+				return (int) value;
+			int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS - 1;
+			return shift * SUB_BUCKETS + (int) (value >>> shift);
+		}
+
+		/**
+		 * Returns the highest value which goes into a bucket.
+		 */
+		private static long highestValue(int index) {
+			if (index < 2 * SUB_BUCKETS)
+				return index;
+			int shift = index / SUB_BUCKETS - 1;
+			return ((long) (index - shift * SUB_BUCKETS + 1) << shift) - 1;
+		}
+	}
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+	private static final String OBJECT_NAME = "sudoku:type=SubmissionMetrics";
+	private final Histogram[] stages = new Histogram[Stage.values().length];
+	private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+
+	/**
+	 * Create a new SubmissionMetrics with nothing recorded.
+	 */
+	public SubmissionMetrics() {
+		for (int i = 0; i < stages.length; i++)
+			stages[i] = new Histogram();
+		for (int i = 0; i < outcomes.length; i++)
+			outcomes[i] = new LongAdder();
+	}
+
+	/**
+	 * Record the time taken by a stage.
+	 * 
+	 * @param stage
+	 *            The stage.
+	 * @param nanos
+	 *            The time taken, in nanoseconds.
+	 */
+	public void record(Stage stage, long nanos) {
+		stages[stage.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Count a submission.
+	 * 
+	 * @param outcome
+	 *            How the submission ended.
+	 */
+	public void count(Outcome outcome) {
+		outcomes[outcome.ordinal()].increment();
+	}
+
+	/**
+	 * Returns the histogram of the time taken by a stage, in nanoseconds.
+	 * 
+	 * @param stage
+	 *            The stage.
+	 * @return The histogram.
+	 */
+	public Histogram getHistogram(Stage stage) {
+		return stages[stage.ordinal()];
+	}
+
+	/**
+	 * Returns the number of submissions which ended in a given way.
+	 * 
+	 * @param outcome
+	 *            The outcome.
+	 * @return The number of submissions.
+	 */
+	public long getCount(Outcome outcome) {
+		return outcomes[outcome.ordinal()].sum();
+	}
+
+	/**
+	 * Implements SubmissionMetricsMXBean.getAccepted().
+	 */
+	public long getAccepted() {
+		return getCount(Outcome.ACCEPTED);
+	}
+
+	/**
+	 * Implements SubmissionMetricsMXBean.getRejected().
+	 */
+	public long getRejected() {
+		long rejected = 0;
+		for (Outcome outcome : Outcome.values())
+			if (outcome != Outcome.ACCEPTED)
+				rejected += getCount(outcome);
+		return rejected;
+	}
+
+	/**
+	 * Implements SubmissionMetricsMXBean.getOutcomes().
+	 */
+	public Map<String, Long> getOutcomes() {
+		Map<String, Long> map = new LinkedHashMap<String, Long>();
+		for (Outcome outcome : Outcome.values())
+			map.put(name(outcome), getCount(outcome));
+		return map;
+	}
+
+	/**
+	 * Implements SubmissionMetricsMXBean.getLatencyPercentiles().
+	 */
+	public Map<String, Long> getLatencyPercentiles() {
+		Map<String, Long> map = new LinkedHashMap<String, Long>();
+		for (Stage stage : Stage.values())
+			for (double percentile : PERCENTILES)
+				map.put(name(stage) + ".p" + format(percentile).replace(".", ""),
+						getHistogram(stage).getValueAtPercentile(percentile));
+		return map;
+	}
+
+	/**
+	 * Implements SubmissionMetricsMXBean.getSnapshot(). Each outcome
+	 * and stage is one line of the form name{labels} value, and the buckets
+	 * of the histograms are included so that snapshots can be added up.
+	 */
+	public String getSnapshot() {
+		StringBuilder sb = new StringBuilder(2048);
+		sb.append("# sudoku submission metrics, latencies in nanoseconds\n");
+		for (Outcome outcome : Outcome.values())
+			sb.append("submissions_total{outcome=\"").append(name(outcome))
+					.append("\"} ").append(getCount(outcome)).append('\n');
+		for (Stage stage : Stage.values()) {
+			Histogram histogram = getHistogram(stage);
+			String label = "{stage=\"" + name(stage) + "\"";
+			sb.append("stage_latency_count").append(label).append("} ")
+					.append(histogram.getCount()).append('\n');
+			sb.append("stage_latency_sum").append(label).append("} ")
+					.append(histogram.getSum()).append('\n');
+			sb.append("stage_latency_max").append(label).append("} ")
+					.append(histogram.getMax()).append('\n');
+			for (double percentile : PERCENTILES)
+				sb.append("stage_latency").append(label)
+						.append(",quantile=\"")
+						.append(BigDecimal.valueOf(percentile).movePointLeft(2)
+								.stripTrailingZeros().toPlainString())
+						.append("\"} ")
+						.append(histogram.getValueAtPercentile(percentile))
+						.append('\n');
+			for (int i = 0; i < Histogram.BUCKETS; i++) {
+				long n = histogram.counts.get(i);
+				if (n != 0)
+					sb.append("stage_latency_bucket").append(label)
+							.append(",le=\"")
+							.append(Histogram.highestValue(i)).append("\"} ")
+							.append(n).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Implements SubmissionMetricsMXBean.reset().
+	 */
+	public void reset() {
+		for (Histogram histogram : stages)
+			histogram.reset();
+		for (LongAdder adder : outcomes)
+			adder.reset();
+	}
+
+	/**
+	 * Add the metrics of another SubmissionMetrics to these.
+	 * 
+	 * @param other
+	 *            The metrics to add.
+	 */
+	public void add(SubmissionMetrics other) {
+		for (int i = 0; i < stages.length; i++)
+			stages[i].add(other.stages[i]);
+		for (int i = 0; i < outcomes.length; i++)
+			outcomes[i].add(other.outcomes[i].sum());
+	}
+
+	/**
+	 * Read metrics in the format of getSnapshot. Percentiles are worked out
+	 * again from the buckets, and lines which are not understood are ignored.
+	 * 
+	 * @param text
+	 *            The metrics.
+	 * @return The metrics read.
+	 */
+	public static SubmissionMetrics parse(String text) {
+		SubmissionMetrics metrics = new SubmissionMetrics();
+		BufferedReader in = new BufferedReader(new StringReader(text));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				int open = line.indexOf('{');
+				int close = line.indexOf("} ");
+				if (line.startsWith("#") || open < 0 || close < open)
+					continue;
+				try {
+					metrics.parseLine(line.substring(0, open), line.substring(
+							open + 1, close), Long.parseLong(line.substring(
+							close + 2).trim()));
+				} catch (IllegalArgumentException e) {
+					// not a line written by getSnapshot
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return metrics;
+	}
+
+	/**
+	 * Add one line of a snapshot to these metrics.
+	 */
+	private void parseLine(String name, String labels, long value) {
+		if (name.equals("submissions_total")) {
+			outcomes[Outcome.valueOf(label(labels, "outcome")).ordinal()]
+					.add(value);
+			return;
+		}
+		Histogram histogram = stages[Stage.valueOf(label(labels, "stage"))
+				.ordinal()];
+		if (name.equals("stage_latency_count"))
+			histogram.count.add(value);
+		else if (name.equals("stage_latency_sum"))
+			histogram.sum.add(value);
+		else if (name.equals("stage_latency_max"))
+			histogram.max.accumulate(value);
+		else if (name.equals("stage_latency_bucket"))
+			histogram.counts.addAndGet(Histogram.index(Long.parseLong(label(
+					labels, "le"))), value);
+	}
+
+	/**
+	 * Returns the value of a label, such as stage in stage="email", in upper
+	 * case.
+	 */
+	private static String label(String labels, String name) {
+		String key = name + "=\"";
+		int start = labels.indexOf(key);
+		if (start < 0)
+			throw new IllegalArgumentException("No label " + name);
+		start += key.length();
+		int end = labels.indexOf('"', start);
+		if (end < 0)
+			throw new IllegalArgumentException("No label " + name);
+		return labels.substring(start, end).toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Write a snapshot of the metrics to a file, replacing what was in it.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 */
+	public void writeTo(File file) throws IOException {
+		update(file, false);
+	}
+
+	/**
+	 * Add the metrics to those in a file, while holding a lock on the file so
+	 * that several processes can do so at once.
+	 * 
+	 * @param file
+	 *            The file, which is created if it does not exist.
+	 * @throws IOException
+	 *             If the file cannot be read or written.
+	 */
+	public void addTo(File file) throws IOException {
+		update(file, true);
+	}
+
+	/**
+	 * Write the metrics to a file while holding a lock on it, adding those
+	 * already in the file if add is true.
+	 */
+	private void update(File file, boolean add) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			FileLock lock = channel.lock();
+			try {
+				SubmissionMetrics metrics = this;
+				if (add) {
+					ByteBuffer buffer = ByteBuffer.allocate((int) channel
+							.size());
+					while (buffer.hasRemaining())
+						if (channel.read(buffer, buffer.position()) < 0)
+							break;
+					metrics = parse(new String(buffer.array(), 0, buffer
+							.position(), StandardCharsets.US_ASCII));
+					metrics.add(this);
+				}
+				ByteBuffer out = ByteBuffer.wrap(metrics.getSnapshot()
+						.getBytes(StandardCharsets.US_ASCII));
+				long pos = 0;
+				while (out.hasRemaining())
+					pos += channel.write(out, pos);
+				channel.truncate(pos);
+			} finally {
+				lock.release();
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Write a snapshot of the metrics to a file at a fixed rate, from a daemon
+	 * thread.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @param seconds
+	 *            The number of seconds between snapshots.
+	 */
+	public void startSnapshots(final File file, long seconds) {
+		ScheduledExecutorService executor = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "metrics snapshots");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				try {
+					writeTo(file);
+				} catch (IOException e) {
+					System.err.println(e.toString());
+				}
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Register the metrics with the platform MBean server, under the name
+	 * "sudoku:type=SubmissionMetrics".
+	 * 
+	 * @throws JMException
+	 *             If the metrics cannot be registered.
+	 */
+	public void register() throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+				new ObjectName(OBJECT_NAME));
+	}
+
+	/**
+	 * Returns the name of a stage or outcome as it is shown.
+	 */
+	private static String name(Enum<?> value) {
+		return value.name().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns a number without a fractional part if it has none.
+	 */
+	private static String format(double value) {
+		return value == Math.rint(value) ? Long.toString((long) value)
+				: Double.toString(value);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,53 @@
+import java.util.Map;
+
+/**
+ * The management interface of SubmissionMetrics, through which the counts and
+ * latencies of submissions can be read with JMX tools such as jconsole.
+ * 
+ * @author Ole Sandbu
+ */
+public interface SubmissionMetricsMXBean {
+	/**
+	 * Returns the number of submissions which were appended to the solutions
+	 * file.
+	 * 
+	 * @return The number of accepted submissions.
+	 */
+	long getAccepted();
+
+	/**
+	 * Returns the number of submissions which were not appended to the
+	 * solutions file, for any reason.
+	 * 
+	 * @return The number of rejected submissions.
+	 */
+	long getRejected();
+
+	/**
+	 * Returns the number of submissions with each outcome.
+	 * 
+	 * @return The counts, by the name of the outcome.
+	 */
+	Map<String, Long> getOutcomes();
+
+	/**
+	 * Returns percentiles of the time spent in each stage of a submission, in
+	 * nanoseconds. The keys are of the form "email.p99".
+	 * 
+	 * @return The percentiles.
+	 */
+	Map<String, Long> getLatencyPercentiles();
+
+	/**
+	 * Returns all the metrics in the plain-text format served by the metrics
+	 * endpoint.
+	 * 
+	 * @return The metrics.
+	 */
+	String getSnapshot();
+
+	/**
+	 * Set all counts and histograms back to zero.
+	 */
+	void reset();
+}
\ No newline at end of file
@@ -0,0 +1,487 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The SubmissionStatistics class keeps running totals over the solutions file:
+ * the number of submissions per email, the number of distinct users who have
+ * submitted each solution, and the first user to submit each solution. As a
+ * puzzle has a unique solution, the solution identifies the puzzle.
+ * 
+ * Each update only reads the lines added since the last one, starting from the
+ * offset it stopped at. The totals and offset can be saved to a checkpoint
+ * file, so that a new process carries on where the last one stopped instead of
+ * reading the whole file again. Queries are answered from an immutable
+ * snapshot which is replaced after each update. A snapshot shares the state of
+ * the one before it and only adds what the update changed, so publishing it
+ * costs about as much as the lines read.
+ * 
+ * @author Ole Sandbu
+ */
+public class SubmissionStatistics {
+	private static final int MAGIC = 0x53444B54; // "SDKT"
+	private static final int VERSION = 1;
+	private long offset;
+	private long totalSubmissions;
+	private final Map<String, Integer> submissionsByEmail = new HashMap<String, Integer>();
+	private final Map<String, Set<String>> solversBySolution = new HashMap<String, Set<String>>();
+	private final Map<String, String> firstSubmitters = new HashMap<String, String>();
+	// the keys changed since the last snapshot was published.
+	private final Set<String> changedEmails = new HashSet<String>();
+	private final Set<String> changedSolutions = new HashSet<String>();
+	private volatile Snapshot snapshot = new Snapshot(0, 0, null);
+
+	/**
+	 * Returns the position in the solutions file up to which the statistics
+	 * have been collected.
+	 * 
+	 * @return The offset.
+	 */
+	public synchronized long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the latest snapshot of the statistics.
+	 * 
+	 * @return The snapshot.
+	 */
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Read the complete lines added to the solutions file since the last
+	 * update and add them to the statistics.
+	 * 
+	 * @param log
+	 *            The solutions file.
+	 * @return The number of lines read.
+	 * @throws IOException
+	 *             If the file cannot be read.
+	 */
+	public synchronized int update(File log) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(log, "r");
+		int lines = 0;
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if (size < offset)
+				throw new IOException("Solutions file is shorter than the checkpoint: "
+						+ log);
+			ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+			byte[] line = new byte[1024];
+			int lineLength = 0;
+			long position = offset;
+			while (position < size) {
+				buffer.clear();
+				int n = channel.read(buffer, position);
+				if (n <= 0)
+					break;
+				for (int i = 0; i < n; i++) {
+					byte b = buffer.get(i);
+					if (b == '\n') {
+						addLine(line, lineLength);
+						lines++;
+						lineLength = 0;
+						offset = position + i + 1;
+					} else {
+						if (lineLength == line.length) {
+							byte[] longer = new byte[line.length * 2];
+							System.arraycopy(line, 0, longer, 0, lineLength);
+							line = longer;
+						}
+						line[lineLength++] = b;
+					}
+				}
+				position += n;
+			}
+		} finally {
+			raf.close();
+		}
+		if (lines > 0)
+			publish(snapshot.top);
+		return lines;
+	}
+
+	/**
+	 * Add one "email solution" line to the statistics.
+	 */
+	private void addLine(byte[] line, int length) throws IOException {
+		if (length > 0 && line[length - 1] == '\r')
+			length--;
+		int space = length - 1;
+		while (space >= 0 && line[space] != ' ')
+			space--;
+		if (space <= 0)
+			return;
+		String email = new String(line, 0, space, "UTF-8");
+		String solution = new String(line, space + 1, length - space - 1,
+				"UTF-8");
+		add(email, solution);
+	}
+
+	private void add(String email, String solution) {
+		totalSubmissions++;
+		Integer count = submissionsByEmail.get(email);
+		submissionsByEmail.put(email, count == null ? 1 : count + 1);
+		changedEmails.add(email);
+		Set<String> solvers = solversBySolution.get(solution);
+		if (solvers == null) {
+			solvers = new HashSet<String>();
+			solversBySolution.put(solution, solvers);
+			firstSubmitters.put(solution, email);
+		}
+		if (solvers.add(email))
+			changedSolutions.add(solution);
+	}
+
+	/**
+	 * Publish a new snapshot holding the changes since the last one on top of
+	 * a given layer.
+	 * 
+	 * @param below
+	 *            The layer to put the changes on, or null to start afresh.
+	 */
+	private void publish(Layer below) {
+		Map<String, Integer> emails = new HashMap<String, Integer>();
+		for (String email : changedEmails)
+			emails.put(email, submissionsByEmail.get(email));
+		Map<String, Integer> solvers = new HashMap<String, Integer>();
+		Map<String, String> first = new HashMap<String, String>();
+		for (String solution : changedSolutions) {
+			solvers.put(solution, solversBySolution.get(solution).size());
+			first.put(solution, firstSubmitters.get(solution));
+		}
+		changedEmails.clear();
+		changedSolutions.clear();
+		snapshot = new Snapshot(offset, totalSubmissions, Layer.push(below,
+				emails, solvers, first));
+	}
+
+	/**
+	 * Save the statistics and offset to a checkpoint file. The checkpoint is
+	 * written to a temporary file and forced to disk, and then atomically
+	 * replaces the old one, so a crash leaves either the old or the new
+	 * checkpoint whole.
+	 * 
+	 * @param file
+	 *            The checkpoint file.
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 */
+	public synchronized void save(File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				fos));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(offset);
+			out.writeLong(totalSubmissions);
+			out.writeInt(submissionsByEmail.size());
+			for (Map.Entry<String, Integer> e : submissionsByEmail.entrySet()) {
+				out.writeUTF(e.getKey());
+				out.writeInt(e.getValue());
+			}
+			out.writeInt(solversBySolution.size());
+			for (Map.Entry<String, Set<String>> e : solversBySolution
+					.entrySet()) {
+				out.writeUTF(e.getKey());
+				out.writeUTF(firstSubmitters.get(e.getKey()));
+				out.writeInt(e.getValue().size());
+				for (String email : e.getValue())
+					out.writeUTF(email);
+			}
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(),
+				StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Replace the statistics with the ones saved in a checkpoint file.
+	 * 
+	 * @param file
+	 *            The checkpoint file.
+	 * @throws IOException
+	 *             If the file cannot be read or is not a checkpoint.
+	 */
+	public synchronized void load(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Not a statistics checkpoint: " + file);
+			submissionsByEmail.clear();
+			solversBySolution.clear();
+			firstSubmitters.clear();
+			offset = in.readLong();
+			totalSubmissions = in.readLong();
+			for (int i = in.readInt(); i > 0; i--)
+				submissionsByEmail.put(in.readUTF(), in.readInt());
+			for (int i = in.readInt(); i > 0; i--) {
+				String solution = in.readUTF();
+				firstSubmitters.put(solution, in.readUTF());
+				Set<String> solvers = new HashSet<String>();
+				for (int j = in.readInt(); j > 0; j--)
+					solvers.add(in.readUTF());
+				solversBySolution.put(solution, solvers);
+			}
+		} finally {
+			in.close();
+		}
+		changedEmails.clear();
+		changedEmails.addAll(submissionsByEmail.keySet());
+		changedSolutions.clear();
+		changedSolutions.addAll(solversBySolution.keySet());
+		publish(null);
+	}
+
+	/**
+	 * One layer of the state shared by snapshots: the values of the keys
+	 * which changed in one or more updates, on top of the layers below.
+	 * Layers are never changed once made. When a new layer is as large as the
+	 * one below it the two are merged, so there are only about log n layers
+	 * and each entry is copied about log n times in all.
+	 */
+	private static final class Layer {
+		final Layer below;
+		final Map<String, Integer> submissionsByEmail;
+		final Map<String, Integer> solverCounts;
+		final Map<String, String> firstSubmitters;
+
+		Layer(Layer below, Map<String, Integer> submissionsByEmail,
+				Map<String, Integer> solverCounts,
+				Map<String, String> firstSubmitters) {
+			this.below = below;
+			this.submissionsByEmail = submissionsByEmail;
+			this.solverCounts = solverCounts;
+			this.firstSubmitters = firstSubmitters;
+		}
+
+		int size() {
+			return submissionsByEmail.size() + solverCounts.size();
+		}
+
+		/**
+		 * Put a layer of changes on top of another, merging layers which are
+		 * no larger than the ones on top of them.
+		 */
+		static Layer push(Layer below, Map<String, Integer> submissionsByEmail,
+				Map<String, Integer> solverCounts,
+				Map<String, String> firstSubmitters) {
+			Layer top = new Layer(below, submissionsByEmail, solverCounts,
+					firstSubmitters);
+			while (top.below != null && top.size() >= top.below.size()) {
+				Layer lower = top.below;
+				top = new Layer(lower.below, merge(lower.submissionsByEmail,
+						top.submissionsByEmail), merge(lower.solverCounts,
+						top.solverCounts), merge(lower.firstSubmitters,
+						top.firstSubmitters));
+			}
+			return top;
+		}
+
+		private static <V> Map<String, V> merge(Map<String, V> lower,
+				Map<String, V> upper) {
+			Map<String, V> merged = new HashMap<String, V>(lower);
+			merged.putAll(upper);
+			return merged;
+		}
+	}
+
+	/**
+	 * An immutable view of the statistics at one point in time.
+	 */
+	public static class Snapshot {
+		private static final Function<Layer, Map<String, Integer>> SUBMISSIONS_BY_EMAIL = new Function<Layer, Map<String, Integer>>() {
+			public Map<String, Integer> apply(Layer layer) {
+				return layer.submissionsByEmail;
+			}
+		};
+		private static final Function<Layer, Map<String, Integer>> SOLVER_COUNTS = new Function<Layer, Map<String, Integer>>() {
+			public Map<String, Integer> apply(Layer layer) {
+				return layer.solverCounts;
+			}
+		};
+		private static final Function<Layer, Map<String, String>> FIRST_SUBMITTERS = new Function<Layer, Map<String, String>>() {
+			public Map<String, String> apply(Layer layer) {
+				return layer.firstSubmitters;
+			}
+		};
+		private final long offset;
+		private final long totalSubmissions;
+		private final Layer top;
+		private volatile Map<String, Integer> submissionsByEmail;
+		private volatile Map<String, Integer> solverCounts;
+
+		private Snapshot(long offset, long totalSubmissions, Layer top) {
+			this.offset = offset;
+			this.totalSubmissions = totalSubmissions;
+			this.top = top;
+		}
+
+		/**
+		 * Look up a key in the layers, from the top down.
+		 */
+		private <V> V get(Function<Layer, Map<String, V>> table, String key) {
+			for (Layer layer = top; layer != null; layer = layer.below) {
+				V value = table.apply(layer).get(key);
+				if (value != null)
+					return value;
+			}
+			return null;
+		}
+
+		/**
+		 * Returns the whole of one of the tables, merging the layers.
+		 */
+		private <V> Map<String, V> getAll(Function<Layer, Map<String, V>> table) {
+			List<Layer> layers = new ArrayList<Layer>();
+			for (Layer layer = top; layer != null; layer = layer.below)
+				layers.add(layer);
+			Map<String, V> all = new HashMap<String, V>();
+			for (int i = layers.size() - 1; i >= 0; i--)
+				all.putAll(table.apply(layers.get(i)));
+			return Collections.unmodifiableMap(all);
+		}
+
+		/**
+		 * Returns the position in the solutions file the snapshot was taken
+		 * at.
+		 * 
+		 * @return The offset.
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * Returns the total number of submissions.
+		 * 
+		 * @return The number of submissions.
+		 */
+		public long getTotalSubmissions() {
+			return totalSubmissions;
+		}
+
+		/**
+		 * Returns the number of submissions made by an email.
+		 * 
+		 * @param email
+		 *            An email address.
+		 * @return The number of submissions.
+		 */
+		public int getSubmissions(String email) {
+			Integer count = get(SUBMISSIONS_BY_EMAIL, email);
+			return count == null ? 0 : count;
+		}
+
+		/**
+		 * Returns the number of submissions made by each email. The map is
+		 * put together the first time it is asked for.
+		 * 
+		 * @return A map from email to number of submissions.
+		 */
+		public Map<String, Integer> getSubmissionsByEmail() {
+			Map<String, Integer> map = submissionsByEmail;
+			if (map == null)
+				submissionsByEmail = map = getAll(SUBMISSIONS_BY_EMAIL);
+			return map;
+		}
+
+		/**
+		 * Returns the number of distinct emails which have submitted a
+		 * solution.
+		 * 
+		 * @param solution
+		 *            A solution.
+		 * @return The number of solvers.
+		 */
+		public int getSolvers(String solution) {
+			Integer count = get(SOLVER_COUNTS, solution);
+			return count == null ? 0 : count;
+		}
+
+		/**
+		 * Returns the number of distinct solvers of each solution. The map is
+		 * put together the first time it is asked for.
+		 * 
+		 * @return A map from solution to number of solvers.
+		 */
+		public Map<String, Integer> getSolversBySolution() {
+			Map<String, Integer> map = solverCounts;
+			if (map == null)
+				solverCounts = map = getAll(SOLVER_COUNTS);
+			return map;
+		}
+
+		/**
+		 * Returns the first email to submit a solution.
+		 * 
+		 * @param solution
+		 *            A solution.
+		 * @return The email, or null if nobody has submitted the solution.
+		 */
+		public String getFirstSubmitter(String solution) {
+			return get(FIRST_SUBMITTERS, solution);
+		}
+	}
+
+	/**
+	 * Bring a checkpoint up to date with the solutions file and print a
+	 * summary.
+	 * 
+	 * @param args
+	 *            The solutions file and the checkpoint file.
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("Usage: java SubmissionStatistics solutions.txt checkpoint");
+			System.exit(1);
+		}
+		SubmissionStatistics stats = new SubmissionStatistics();
+		File checkpoint = new File(args[1]);
+		try {
+			if (checkpoint.exists())
+				stats.load(checkpoint);
+			int lines = stats.update(new File(args[0]));
+			stats.save(checkpoint);
+			Snapshot snapshot = stats.getSnapshot();
+			System.out.println("New submissions: " + lines);
+			System.out.println("Total submissions: "
+					+ snapshot.getTotalSubmissions());
+			System.out.println("Users: "
+					+ snapshot.getSubmissionsByEmail().size());
+			System.out.println("Distinct solutions: "
+					+ snapshot.getSolversBySolution().size());
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			System.exit(1);
+		}
+	}
+}
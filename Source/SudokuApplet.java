@@ -25,7 +25,11 @@ public class SudokuApplet extends JApplet implements ActionListener {
 	private static final long serialVersionUID = 1L;
 	private static final int COMPONENT_GAP_X = 0;
 	private static final int COMPONENT_GAP_Y = 5;
-	private JTextField[][] fields;
+	private final GridModel model = new GridModel();
+	private final CandidateEngine candidates = new CandidateEngine();
+	private final HintEngine hintEngine = new HintEngine();
+	private SudokuBoard board;
+	private JButton hintButton;
 	private JButton sendButton;
 	private JTextField emailField;
 
@@ -33,7 +37,7 @@ public class SudokuApplet extends JApplet implements ActionListener {
 	 * Initialise the content of the Applet.
 	 */
 	public void init() {
-		JPanel grid = initGrid();
+		SudokuBoard grid = initGrid();
 		JPanel buttonPanel = initButtonPanel();
 		setLayout(new BorderLayout(COMPONENT_GAP_X, COMPONENT_GAP_Y));
 		add(grid, BorderLayout.CENTER);
@@ -48,33 +52,24 @@ public class SudokuApplet extends JApplet implements ActionListener {
 	 * 
 	 * @return The grid.
 	 */
-	private JPanel initGrid() {
-		JPanel grid = new JPanel();
-		// create a new 9x9 grid
-		GridLayout gridLayout = new GridLayout(9, 9);
-		grid.setLayout(gridLayout);
-		fields = new JTextField[9][9];
-		for (int row = 0; row < 9; row++)
-			for (int col = 0; col < 9; col++) {
-				JTextField field = new JTextField();
-				field.setName(row + "," + col);
-				field.setHorizontalAlignment(JTextField.CENTER);
-				grid.add(field);
-				field.addKeyListener(new SudokuListener(fields, field));
-				fields[row][col] = field;
-			}
-		return grid;
+	private SudokuBoard initGrid() {
+		// the candidates must be updated before the board is redrawn
+		model.addGridModelListener(candidates);
+		board = new SudokuBoard(model, candidates);
+		board.selectFirstCell();
+		return board;
 	}
 
 	/**
 	 * Initalise a panel containing a textfield in which the user can enter
-	 * their email and a submit button.
+	 * their email, with a hint button and a submit button below it, so that
+	 * the buttons do not take the width of the textfield.
 	 * 
 	 * @return A JPanel.
 	 */
 	private JPanel initButtonPanel() {
-		JPanel buttonPanel = new JPanel(new BorderLayout());
-		buttonPanel.add(new JLabel("Email:"), BorderLayout.WEST);
+		JPanel emailPanel = new JPanel(new BorderLayout());
+		emailPanel.add(new JLabel("Email:"), BorderLayout.WEST);
 		emailField = new JTextField();
 		emailField.addKeyListener(new KeyAdapter() {
 			public void keyPressed(KeyEvent evt) {
@@ -83,10 +78,18 @@ public class SudokuApplet extends JApplet implements ActionListener {
 				}
 			}
 		});
-		buttonPanel.add(emailField, BorderLayout.CENTER);
+		emailPanel.add(emailField, BorderLayout.CENTER);
+		hintButton = new JButton("Hint");
+		hintButton.addActionListener(this);
 		sendButton = new JButton("Submit");
 		sendButton.addActionListener(this);
-		buttonPanel.add(sendButton, BorderLayout.EAST);
+		JPanel buttons = new JPanel(new GridLayout(1, 2));
+		buttons.add(hintButton);
+		buttons.add(sendButton);
+		JPanel buttonPanel = new JPanel(new BorderLayout(COMPONENT_GAP_X,
+				COMPONENT_GAP_Y));
+		buttonPanel.add(emailPanel, BorderLayout.NORTH);
+		buttonPanel.add(buttons, BorderLayout.SOUTH);
 		return buttonPanel;
 	}
 
@@ -99,16 +102,7 @@ public class SudokuApplet extends JApplet implements ActionListener {
 	 * @return The content of the Sudoku grid.
 	 */
 	public String getCellContent() {
-		StringBuilder sb = new StringBuilder();
-		for (int row = 0; row < 9; row++)
-			for (int col = 0; col < 9; col++) {
-				String text = fields[row][col].getText();
-				if (text.length() == 0)
-					sb.append('0');
-				else
-					sb.append(text);
-			}
-		return sb.toString();
+		return model.getContent();
 	}
 
 	/**
@@ -117,7 +111,7 @@ public class SudokuApplet extends JApplet implements ActionListener {
 	 * @param gridContent
 	 * @return A 9x9 character array.
 	 */
-	public char[][] getGrid(String gridContent) {
+	public static char[][] getGrid(String gridContent) {
 		char[][] grid = new char[9][9];
 		int idx = 0;
 		for (int row = 0; row < 9; row++)
@@ -136,28 +130,43 @@ public class SudokuApplet extends JApplet implements ActionListener {
 	 *            The cell content.
 	 */
 	public void setCellContent(String gridContent) {
-		char[][] grid = getGrid(gridContent);
-		for (int row = 0; row < 9; row++)
-			for (int col = 0; col < 9; col++) {
-				if (grid[row][col] > '0') {
-					fields[row][col]
-							.setText(Character.toString(grid[row][col]));
-					fields[row][col].setFocusable(false);
-					fields[row][col].setEditable(false);
-				}
-			}
+		model.load(gridContent);
+		board.selectFirstCell();
 	}
 
 	/**
 	 * Implements ActionListener.actionPerformed(ActionEvent). Makes the send
-	 * button send the solution to the server.
+	 * button send the solution to the server and the hint button show a hint.
 	 */
 	public void actionPerformed(ActionEvent evt) {
 		if (evt.getSource() == sendButton) {
 			sendSolution();
+		} else if (evt.getSource() == hintButton) {
+			showHint();
 		}
 	}
 
+	/**
+	 * Find the next digit which can be placed by logic, move the cursor to its
+	 * cell and explain how it was found in a popup.
+	 */
+	private void showHint() {
+		if (model.hasConflicts()) {
+			reportError("Please correct the highlighted cells first.",
+					"No hint");
+			return;
+		}
+		HintEngine.Hint hint = hintEngine.getHint(getCellContent());
+		if (hint == null) {
+			reportError("No hint could be found for this grid.", "No hint");
+			return;
+		}
+		board.setSelectedCell(hint.getCell());
+		board.requestFocusInWindow();
+		JOptionPane.showMessageDialog(this, hint.getExplanation(), "Hint",
+				JOptionPane.INFORMATION_MESSAGE);
+	}
+
 	/**
 	 * Send the solution given in the grid to the server if it has been
 	 * completed and a valid email address has been entered.
@@ -172,6 +181,9 @@ public class SudokuApplet extends JApplet implements ActionListener {
 			String solution = getCellContent();
 			String outputURL = getParameter("outputURL") + "?email=" + email
 					+ "&solution=" + solution;
+			String puzzle = getParameter("puzzle");
+			if (puzzle != null)
+				outputURL += "&puzzle=" + puzzle;
 			try {
 				getAppletContext().showDocument(new URL(outputURL));
 			} catch (MalformedURLException e) {
@@ -208,11 +220,7 @@ public class SudokuApplet extends JApplet implements ActionListener {
 	 * @return true if all the cells have been filled, false otherwise.
 	 */
 	private boolean allCellsFilled() {
-		for (int row = 0; row < 9; row++)
-			for (int col = 0; col < 9; col++)
-				if (fields[row][col].getText().length() == 0)
-					return false;
-		return true;
+		return model.isComplete();
 	}
 
 	/**
@@ -238,4 +246,4 @@ public class SudokuApplet extends JApplet implements ActionListener {
 		JOptionPane.showConfirmDialog(null, message, title,
 				JOptionPane.DEFAULT_OPTION, JOptionPane.ERROR_MESSAGE);
 	}
-}
+}
\ No newline at end of file
@@ -0,0 +1,346 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.FocusEvent;
+import java.awt.event.FocusListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import javax.swing.JComponent;
+
+/**
+ * The SudokuBoard class is a single component which draws the whole Sudoku
+ * grid and lets the user fill it in from the keyboard. It replaces a grid of
+ * 81 textfields, each with a listener of its own.
+ * 
+ * The board only draws what its GridModel and CandidateEngine hold. One cell
+ * is selected at a time; typing a digit puts it in the selected cell, any
+ * other character empties it, and the arrow keys move the selection to the
+ * next cell which is not a given. When a cell changes, only that cell and its
+ * peers are repainted.
+ * 
+ * @author Ole Sandbu
+ */
+public class SudokuBoard extends JComponent implements GridModelListener,
+		KeyListener, FocusListener {
+	private static final long serialVersionUID = 1L;
+	private static final int PREFERRED_CELL_SIZE = 36;
+	private static final Color VALID_COLOR = Color.WHITE;
+	private static final Color INVALID_COLOR = Color.PINK;
+	private static final Color UNEDITABLE_VALID_COLOR = new Color(238, 238, 238);
+	private static final Color UNEDITABLE_INVALID_COLOR = new Color(247, 207,
+			207);
+	private static final Color SELECTED_COLOR = new Color(184, 207, 229);
+	private static final Color DIGIT_COLOR = Color.BLACK;
+	private static final Color PENCIL_MARK_COLOR = Color.GRAY;
+	private static final Color LINE_COLOR = Color.GRAY;
+	private static final Color BOX_LINE_COLOR = Color.BLACK;
+	private static final Font DEFAULT_FONT = new Font(Font.SANS_SERIF,
+			Font.PLAIN, 12);
+	private final GridModel model;
+	private final CandidateEngine candidates;
+	private int selected = -1;
+
+	/**
+	 * Create a board showing a grid.
+	 * 
+	 * @param model
+	 *            The grid.
+	 * @param candidates
+	 *            The candidates of the grid, drawn in the empty cells, or
+	 *            null to draw none. It must be notified of changes to the
+	 *            grid before the board is.
+	 */
+	public SudokuBoard(GridModel model, CandidateEngine candidates) {
+		this.model = model;
+		this.candidates = candidates;
+		model.addGridModelListener(this);
+		setFocusable(true);
+		setOpaque(true);
+		addKeyListener(this);
+		addFocusListener(this);
+		addMouseListener(new MouseAdapter() {
+			public void mousePressed(MouseEvent evt) {
+				int cell = cellAt(evt.getX(), evt.getY());
+				if (cell >= 0 && !SudokuBoard.this.model.isGiven(cell))
+					setSelectedCell(cell);
+				requestFocusInWindow();
+			}
+		});
+	}
+
+	/**
+	 * Returns the preferred size of the board.
+	 */
+	public Dimension getPreferredSize() {
+		if (isPreferredSizeSet())
+			return super.getPreferredSize();
+		return new Dimension(9 * PREFERRED_CELL_SIZE + 1,
+				9 * PREFERRED_CELL_SIZE + 1);
+	}
+
+	/**
+	 * Returns the selected cell.
+	 * 
+	 * @return The cell, 0..80 in row-major order, or -1 if none is selected.
+	 */
+	public int getSelectedCell() {
+		return selected;
+	}
+
+	/**
+	 * Select a cell, so that what the user types goes into it.
+	 * 
+	 * @param cell
+	 *            The cell, or -1 to select none.
+	 */
+	public void setSelectedCell(int cell) {
+		if (cell == selected)
+			return;
+		int old = selected;
+		selected = cell;
+		if (old >= 0)
+			repaintCell(old);
+		if (cell >= 0)
+			repaintCell(cell);
+	}
+
+	/**
+	 * Select the first cell which is not a given, after the givens have been
+	 * loaded into the model.
+	 */
+	public void selectFirstCell() {
+		selected = -1;
+		setSelectedCell(next(80, 1));
+		repaint();
+	}
+
+	/**
+	 * Implements GridModelListener.cellChanged(int, int, int). Repaints the
+	 * cell and its peers, whose colors and candidates may have changed.
+	 */
+	public void cellChanged(int cell, int oldDigit, int newDigit) {
+		repaintCell(cell);
+		for (int i = cell * Grid.PEERS, end = i + Grid.PEERS; i < end; i++)
+			repaintCell(Grid.PEER_CELLS[i]);
+	}
+
+	/**
+	 * Puts a digit typed by the user into the selected cell, or empties it
+	 * for any other character.
+	 */
+	public void keyTyped(KeyEvent e) {
+		if (selected < 0)
+			return;
+		char c = e.getKeyChar();
+		if (c >= '1' && c <= '9')
+			model.set(selected, c - '0');
+		else
+			model.set(selected, 0);
+		e.consume();
+	}
+
+	/**
+	 * Listens for key presses. If any of the arrow keys are pressed, the
+	 * selection is moved to the closest cell in the direction of the arrow
+	 * which is not a given.
+	 */
+	public void keyPressed(KeyEvent e) {
+		if (selected < 0)
+			return;
+		int code = e.getKeyCode();
+		if (code == KeyEvent.VK_RIGHT) {
+			setSelectedCell(next(selected, 1));
+		} else if (code == KeyEvent.VK_LEFT) {
+			setSelectedCell(next(selected, -1));
+		} else if (code == KeyEvent.VK_DOWN) {
+			setSelectedCell(nextInColumn(selected, 1));
+		} else if (code == KeyEvent.VK_UP) {
+			setSelectedCell(nextInColumn(selected, -1));
+		} else {
+			return;
+		}
+		e.consume();
+	}
+
+	/**
+	 * Does nothing.
+	 */
+	public void keyReleased(KeyEvent e) {
+	}
+
+	/**
+	 * Repaints the selected cell, which is only highlighted while the board
+	 * has the focus.
+	 */
+	public void focusGained(FocusEvent e) {
+		if (selected >= 0)
+			repaintCell(selected);
+	}
+
+	/**
+	 * Repaints the selected cell, which is only highlighted while the board
+	 * has the focus.
+	 */
+	public void focusLost(FocusEvent e) {
+		if (selected >= 0)
+			repaintCell(selected);
+	}
+
+	/**
+	 * Returns the next cell which is not a given, in row-major order and
+	 * wrapping around, or the cell itself if there is none.
+	 */
+	private int next(int cell, int step) {
+		int c = cell;
+		do {
+			c = (c + step + Grid.CELLS) % Grid.CELLS;
+		} while (model.isGiven(c) && c != cell);
+		return c;
+	}
+
+	/**
+	 * Returns the next cell in the same column which is not a given, wrapping
+	 * around, or the cell itself if there is none.
+	 */
+	private int nextInColumn(int cell, int step) {
+		int col = Grid.COL[cell];
+		int row = Grid.ROW[cell];
+		int c;
+		do {
+			row = (row + step + 9) % 9;
+			c = row * 9 + col;
+		} while (model.isGiven(c) && c != cell);
+		return c;
+	}
+
+	/**
+	 * Returns the size of a cell in pixels.
+	 */
+	private int cellSize() {
+		return Math.max(1, (Math.min(getWidth(), getHeight()) - 1) / 9);
+	}
+
+	/**
+	 * Returns the cell at a point, or -1 if the point is outside the grid.
+	 */
+	private int cellAt(int x, int y) {
+		int size = cellSize();
+		int col = x / size;
+		int row = y / size;
+		if (x < 0 || y < 0 || col >= 9 || row >= 9)
+			return -1;
+		return row * 9 + col;
+	}
+
+	/**
+	 * Repaint a cell, including the lines around it.
+	 */
+	private void repaintCell(int cell) {
+		int size = cellSize();
+		repaint(Grid.COL[cell] * size - 1, Grid.ROW[cell] * size - 1,
+				size + 3, size + 3);
+	}
+
+	/**
+	 * Paint the cells which intersect the clip, and the lines of the grid.
+	 */
+	protected void paintComponent(Graphics g) {
+		int size = cellSize();
+		Rectangle clip = g.getClipBounds();
+		if (clip == null)
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		int firstCol = Math.max(0, clip.x / size);
+		int lastCol = Math.min(8, (clip.x + clip.width) / size);
+		int firstRow = Math.max(0, clip.y / size);
+		int lastRow = Math.min(8, (clip.y + clip.height) / size);
+		if (isOpaque()) {
+			g.setColor(getBackground());
+			g.fillRect(clip.x, clip.y, clip.width, clip.height);
+		}
+		Font font = getFont() != null ? getFont() : DEFAULT_FONT;
+		Font digitFont = font.deriveFont(Font.BOLD, size * 0.6f);
+		Font pencilFont = font.deriveFont(Font.PLAIN,
+				Math.max(size / 3 - 2, 6));
+		for (int row = firstRow; row <= lastRow; row++)
+			for (int col = firstCol; col <= lastCol; col++)
+				paintCell(g, row * 9 + col, col * size, row * size, size,
+						digitFont, pencilFont);
+		paintLines(g, size);
+	}
+
+	/**
+	 * Paint the background and content of a cell.
+	 */
+	private void paintCell(Graphics g, int cell, int x, int y, int size,
+			Font digitFont, Font pencilFont) {
+		g.setColor(colorOf(cell));
+		g.fillRect(x, y, size, size);
+		int digit = model.get(cell);
+		if (digit != 0) {
+			g.setColor(DIGIT_COLOR);
+			g.setFont(digitFont);
+			drawCentered(g, String.valueOf(digit), x, y, size);
+		} else if (candidates != null) {
+			int mask = candidates.getCandidates(cell);
+			if (mask == 0)
+				return;
+			int third = size / 3;
+			g.setColor(PENCIL_MARK_COLOR);
+			g.setFont(pencilFont);
+			for (int d = 1; d <= 9; d++)
+				if ((mask & Grid.bit(d)) != 0)
+					drawCentered(g, String.valueOf(d), x + (d - 1) % 3
+							* third, y + (d - 1) / 3 * third, third);
+		}
+	}
+
+	/**
+	 * Returns the background color of a cell.
+	 */
+	private Color colorOf(int cell) {
+		if (cell == selected && hasFocus())
+			return SELECTED_COLOR;
+		if (model.isConflicting(cell))
+			return model.isGiven(cell) ? UNEDITABLE_INVALID_COLOR
+					: INVALID_COLOR;
+		return model.isGiven(cell) ? UNEDITABLE_VALID_COLOR : VALID_COLOR;
+	}
+
+	/**
+	 * Draw a String centered in a square.
+	 */
+	private static void drawCentered(Graphics g, String text, int x, int y,
+			int size) {
+		FontMetrics metrics = g.getFontMetrics();
+		g.drawString(text, x + (size - metrics.stringWidth(text)) / 2, y
+				+ (size - metrics.getHeight()) / 2 + metrics.getAscent());
+	}
+
+	/**
+	 * Paint the lines between the cells, with thicker lines around the
+	 * subgrids.
+	 */
+	private void paintLines(Graphics g, int size) {
+		Graphics2D g2 = (Graphics2D) g;
+		int end = 9 * size;
+		for (int i = 0; i <= 9; i++) {
+			if (i % 3 == 0) {
+				g2.setColor(BOX_LINE_COLOR);
+				g2.setStroke(new BasicStroke(2));
+			} else {
+				g2.setColor(LINE_COLOR);
+				g2.setStroke(new BasicStroke(1));
+			}
+			g2.drawLine(i * size, 0, i * size, end);
+			g2.drawLine(0, i * size, end, i * size);
+		}
+	}
+}
\ No newline at end of file
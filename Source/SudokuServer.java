@@ -0,0 +1,311 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.management.JMException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The SudokuServer class runs the sudoku CGI application inside a single,
+ * long-running JVM using the HTTP server built into the JDK, so that a
+ * submission does not have to pay for starting a new JVM.
+ * 
+ * Each request is turned into a CgiApp in the same way as the CGI interface
+ * would, handed to sudoku.respond, and the CGI headers it prints are turned
+ * into HTTP response headers. Requests are handled on virtual threads when the
+ * JVM supports them, and on a cached thread pool otherwise.
+ * 
+ * @author Ole Sandbu
+ */
+public class SudokuServer {
+	private static final int DEFAULT_PORT = 8080;
+	private static final String SUBMIT_PATH = "/cgi-bin/sudoku";
+	private static final String BATCH_PATH = "/cgi-bin/sudoku-batch";
+	private static final String PUZZLE_PATH = "/cgi-bin/puzzle";
+	private static final String METRICS_PATH = "/metrics";
+	private static final int WARMUP_ITERATIONS = 20000;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	static {
+		// without TCP_NODELAY the body of each response waits for the client
+		// to acknowledge the headers, which can take 40 ms.
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	/**
+	 * Create a new SudokuServer listening on a given port.
+	 * 
+	 * @param port
+	 *            The port number.
+	 * @throws IOException
+	 *             If the server cannot be bound to the port.
+	 */
+	public SudokuServer(int port) throws IOException {
+		sudoku.setSolutionCache(new SolutionCache(Integer.getInteger(
+				"solutions.cache", 256)));
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		executor = newExecutor();
+		server.setExecutor(executor);
+		server.createContext(SUBMIT_PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleSubmission(exchange);
+			}
+		});
+		server.createContext(BATCH_PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleBatch(exchange);
+			}
+		});
+		server.createContext(PUZZLE_PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handlePuzzlePage(exchange);
+			}
+		});
+		server.createContext(METRICS_PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleMetrics(exchange);
+			}
+		});
+	}
+
+	/**
+	 * Create an executor which runs each task on a new virtual thread, or a
+	 * cached thread pool if virtual threads are not available.
+	 * 
+	 * @return An executor.
+	 */
+	private static ExecutorService newExecutor() {
+		try {
+			Method method = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (Exception e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Start accepting requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stop accepting requests and wait up to a given time for the ones being
+	 * handled to finish.
+	 * 
+	 * @param delay
+	 *            The maximum number of seconds to wait.
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the port the server is listening on.
+	 * 
+	 * @return The port number.
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Handle a request to the sudoku CGI application.
+	 * 
+	 * @param exchange
+	 *            The request and response.
+	 * @throws IOException
+	 *             If an error occurs while reading the request or writing the
+	 *             response.
+	 */
+	private void handleSubmission(HttpExchange exchange) throws IOException {
+		try {
+			CgiApp form = new CgiApp(exchange.getRequestMethod(), exchange
+					.getRequestURI().getRawQuery(), exchange
+					.getRequestHeaders().getFirst("Content-Length"), exchange
+					.getRequestBody());
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+			PrintStream out = new PrintStream(buffer, false, "ISO-8859-1");
+			sudoku.respond(form, out);
+			out.flush();
+			sendCgiResponse(exchange, buffer.toByteArray());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Handle a request to the batch submission CGI application.
+	 * 
+	 * @param exchange
+	 *            The request and response.
+	 * @throws IOException
+	 *             If an error occurs while reading the request or writing the
+	 *             response.
+	 */
+	private void handleBatch(HttpExchange exchange) throws IOException {
+		try {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+			PrintStream out = new PrintStream(buffer, false, "ISO-8859-1");
+			BatchSubmission.respond(exchange.getRequestMethod(), exchange
+					.getRequestHeaders().getFirst("Content-Length"), exchange
+					.getRequestBody(), out);
+			out.flush();
+			sendCgiResponse(exchange, buffer.toByteArray());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Handle a request for the page showing a puzzle.
+	 * 
+	 * @param exchange
+	 *            The request and response.
+	 * @throws IOException
+	 *             If an error occurs while reading the request or writing the
+	 *             response.
+	 */
+	private void handlePuzzlePage(HttpExchange exchange) throws IOException {
+		try {
+			CgiApp form = new CgiApp(exchange.getRequestMethod(), exchange
+					.getRequestURI().getRawQuery(), exchange
+					.getRequestHeaders().getFirst("Content-Length"), exchange
+					.getRequestBody());
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(2048);
+			PrintStream out = new PrintStream(buffer, false, "ISO-8859-1");
+			PuzzlePage.respond(form, exchange.getRequestHeaders().getFirst(
+					"If-None-Match"), out);
+			out.flush();
+			sendCgiResponse(exchange, buffer.toByteArray());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Handle a request for the metrics of the submissions handled so far, as
+	 * plain text.
+	 * 
+	 * @param exchange
+	 *            The request and response.
+	 * @throws IOException
+	 *             If an error occurs while writing the response.
+	 */
+	private void handleMetrics(HttpExchange exchange) throws IOException {
+		try {
+			sendCgiResponse(exchange, ("Content-Type: text/plain\n\n" + sudoku
+					.getMetrics().getSnapshot()).getBytes("ISO-8859-1"));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Send the output of a CGI application as an HTTP response. The output
+	 * starts with header lines such as "Content-Type: text/html" followed by
+	 * an empty line; a "Status" header gives the HTTP status code.
+	 * 
+	 * @param exchange
+	 *            The request and response.
+	 * @param output
+	 *            The output of the CGI application.
+	 * @throws IOException
+	 *             If an error occurs while writing the response.
+	 */
+	static void sendCgiResponse(HttpExchange exchange, byte[] output)
+			throws IOException {
+		int status = 200;
+		int pos = 0;
+		while (pos < output.length) {
+			int end = pos;
+			while (end < output.length && output[end] != '\n')
+				end++;
+			int lineEnd = end > pos && output[end - 1] == '\r' ? end - 1 : end;
+			String line = new String(output, pos, lineEnd - pos, "ISO-8859-1");
+			pos = end + 1;
+			if (line.length() == 0)
+				break;
+			int colon = line.indexOf(':');
+			if (colon <= 0)
+				continue;
+			String name = line.substring(0, colon).trim();
+			String value = line.substring(colon + 1).trim();
+			if (name.equalsIgnoreCase("Status"))
+				status = Integer.parseInt(value.split(" ")[0]);
+			else
+				exchange.getResponseHeaders().add(name, value);
+		}
+		if (pos > output.length)
+			pos = output.length;
+		int length = output.length - pos;
+		if (status == 304 || status == 204 || length == 0) {
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(status, length);
+		OutputStream body = exchange.getResponseBody();
+		body.write(output, pos, length);
+		body.close();
+	}
+
+	/**
+	 * Run the validation code enough times for the JIT compiler to compile it
+	 * before the first real submission arrives.
+	 */
+	private static void warmUp() {
+		String solution = "534678912672195348198342567859761423426853791713924856961537284287419635345286179";
+		String puzzle = "530070000600195000098000060800060003400803001700020006060000280000419005000080079";
+		int valid = 0;
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			if (Validator.isValidEmail("player" + (i & 7) + "@example.com")
+					&& Validator.isValidSolution(solution, puzzle))
+				valid++;
+		}
+		if (valid != WARMUP_ITERATIONS)
+			throw new IllegalStateException("Warm-up validation failed");
+	}
+
+	/**
+	 * Start a server.
+	 * 
+	 * @param args
+	 *            Optionally the port number to listen on.
+	 */
+	public static void main(String[] args) {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		warmUp();
+		SubmissionMetrics metrics = sudoku.getMetrics();
+		try {
+			metrics.register();
+		} catch (JMException e) {
+			System.err.println(e.toString());
+		}
+		String metricsFile = System.getProperty("metrics.file");
+		if (metricsFile != null)
+			metrics.startSnapshots(new File(metricsFile), Long.getLong(
+					"metrics.interval", 60).longValue());
+		try {
+			SudokuServer server = new SudokuServer(port);
+			server.start();
+			System.err.println("Listening on port " + server.getPort());
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,269 @@
+/**
+ * The SudokuSolver class solves Sudoku puzzles given in the 81 character format
+ * used by SudokuApplet, where 0 (or '.') is an empty cell and 1..9 is a given.
+ * 
+ * The grid is kept as an array of 81 digits together with a 9-bit mask of the
+ * digits used in each row, column and subgrid, so the candidates of a cell are
+ * found with a couple of bitwise operations. The search always fills the empty
+ * cell with the fewest candidates first and undoes its moves in place, so no
+ * memory is allocated while solving.
+ * 
+ * A SudokuSolver is not thread-safe; use one instance per thread.
+ * 
+ * @author Ole Sandbu
+ */
+public class SudokuSolver {
+	private final int[] cells = new int[Grid.CELLS];
+	private final int[] solution = new int[Grid.CELLS];
+	private final int[] rows = new int[9];
+	private final int[] cols = new int[9];
+	private final int[] boxes = new int[9];
+	// the empty cells; the ones before the current depth have been filled.
+	private final int[] empties = new int[Grid.CELLS];
+	private int emptyCount;
+	private int solutions;
+	private int limit;
+	private boolean loaded;
+
+	/**
+	 * Load a puzzle to be solved.
+	 * 
+	 * @param puzzle
+	 *            A puzzle of 81 characters.
+	 * @return true if the puzzle is well formed and none of its givens clash,
+	 *         false otherwise.
+	 */
+	public boolean load(CharSequence puzzle) {
+		clear();
+		if (puzzle == null || puzzle.length() != Grid.CELLS)
+			return false;
+		for (int cell = 0; cell < Grid.CELLS; cell++)
+			if (!place(cell, Grid.digit(puzzle.charAt(cell))))
+				return false;
+		loaded = true;
+		return true;
+	}
+
+	/**
+	 * Load a puzzle to be solved from an array of digits.
+	 * 
+	 * @param puzzle
+	 *            An array of at least 81 digits, 0 meaning an empty cell.
+	 * @return true if the puzzle is well formed and none of its givens clash,
+	 *         false otherwise.
+	 */
+	public boolean load(int[] puzzle) {
+		clear();
+		if (puzzle == null || puzzle.length < Grid.CELLS)
+			return false;
+		for (int cell = 0; cell < Grid.CELLS; cell++)
+			if (!place(cell, puzzle[cell]))
+				return false;
+		loaded = true;
+		return true;
+	}
+
+	/**
+	 * Reset the grid to be empty.
+	 */
+	private void clear() {
+		for (int i = 0; i < 9; i++) {
+			rows[i] = 0;
+			cols[i] = 0;
+			boxes[i] = 0;
+		}
+		emptyCount = 0;
+		solutions = 0;
+		loaded = false;
+	}
+
+	/**
+	 * Put a digit into a cell while loading a puzzle.
+	 * 
+	 * @param cell
+	 *            A cell.
+	 * @param digit
+	 *            The digit 0..9, 0 meaning the cell is empty.
+	 * @return false if the digit is not allowed in the cell, true otherwise.
+	 */
+	private boolean place(int cell, int digit) {
+		if (digit < 0 || digit > 9)
+			return false;
+		cells[cell] = digit;
+		if (digit == 0) {
+			empties[emptyCount++] = cell;
+			return true;
+		}
+		int bit = Grid.bit(digit);
+		int row = Grid.ROW[cell];
+		int col = Grid.COL[cell];
+		int box = Grid.BOX[cell];
+		if (((rows[row] | cols[col] | boxes[box]) & bit) != 0)
+			return false;
+		rows[row] |= bit;
+		cols[col] |= bit;
+		boxes[box] |= bit;
+		return true;
+	}
+
+	/**
+	 * Solve the loaded puzzle, stopping when a given number of solutions have
+	 * been found. The first solution found can be retrieved with getSolution.
+	 * 
+	 * @param limit
+	 *            The maximum number of solutions to look for. Use 1 to just
+	 *            solve the puzzle and 2 to check that the solution is unique.
+	 * @return The number of solutions found, at most limit.
+	 */
+	public int solve(int limit) {
+		if (!loaded)
+			return 0;
+		this.limit = limit;
+		solutions = 0;
+		search(0);
+		return solutions;
+	}
+
+	/**
+	 * Fill the remaining empty cells, starting at a given depth in the list of
+	 * empty cells.
+	 * 
+	 * @param depth
+	 *            The number of empty cells which have been filled.
+	 */
+	private void search(int depth) {
+		if (depth == emptyCount) {
+			if (solutions++ == 0)
+				System.arraycopy(cells, 0, solution, 0, Grid.CELLS);
+			return;
+		}
+		// find the empty cell with the fewest candidates.
+		int best = depth;
+		int bestMask = 0;
+		int bestCount = 10;
+		for (int i = depth; i < emptyCount; i++) {
+			int cell = empties[i];
+			int mask = Grid.ALL_DIGITS
+					& ~(rows[Grid.ROW[cell]] | cols[Grid.COL[cell]] | boxes[Grid.BOX[cell]]);
+			int count = Integer.bitCount(mask);
+			if (count < bestCount) {
+				best = i;
+				bestMask = mask;
+				bestCount = count;
+				if (count <= 1)
+					break;
+			}
+		}
+		if (bestCount == 0)
+			return;
+		int cell = empties[best];
+		empties[best] = empties[depth];
+		empties[depth] = cell;
+		int row = Grid.ROW[cell];
+		int col = Grid.COL[cell];
+		int box = Grid.BOX[cell];
+		while (bestMask != 0 && solutions < limit) {
+			int bit = bestMask & -bestMask;
+			bestMask ^= bit;
+			rows[row] |= bit;
+			cols[col] |= bit;
+			boxes[box] |= bit;
+			cells[cell] = Grid.digitOf(bit);
+			search(depth + 1);
+			rows[row] ^= bit;
+			cols[col] ^= bit;
+			boxes[box] ^= bit;
+		}
+		cells[cell] = 0;
+	}
+
+	/**
+	 * Copy the first solution found by solve into an array.
+	 * 
+	 * @param dest
+	 *            An array of at least 81 elements.
+	 */
+	public void getSolution(int[] dest) {
+		System.arraycopy(solution, 0, dest, 0, Grid.CELLS);
+	}
+
+	/**
+	 * Write the first solution found by solve as 81 ASCII digits into an
+	 * array.
+	 * 
+	 * @param dest
+	 *            The destination array.
+	 * @param offset
+	 *            The index of the first cell in the destination array.
+	 */
+	public void getSolution(byte[] dest, int offset) {
+		for (int cell = 0; cell < Grid.CELLS; cell++)
+			dest[offset + cell] = (byte) ('0' + solution[cell]);
+	}
+
+	/**
+	 * Returns the first solution found by solve as an 81 character String.
+	 * 
+	 * @return The solution.
+	 */
+	public String getSolution() {
+		char[] chars = new char[Grid.CELLS];
+		for (int cell = 0; cell < Grid.CELLS; cell++)
+			chars[cell] = (char) ('0' + solution[cell]);
+		return new String(chars);
+	}
+
+	/**
+	 * Solve a puzzle.
+	 * 
+	 * @param puzzle
+	 *            A puzzle of 81 characters.
+	 * @return The first solution found, or null if the puzzle has none.
+	 */
+	public String solve(String puzzle) {
+		if (!load(puzzle) || solve(1) == 0)
+			return null;
+		return getSolution();
+	}
+
+	/**
+	 * Count the solutions of a puzzle, up to a given limit.
+	 * 
+	 * @param puzzle
+	 *            A puzzle of 81 characters.
+	 * @param limit
+	 *            The maximum number of solutions to count.
+	 * @return The number of solutions, at most limit, or 0 if the puzzle is
+	 *         malformed.
+	 */
+	public int countSolutions(String puzzle, int limit) {
+		if (!load(puzzle))
+			return 0;
+		return solve(limit);
+	}
+
+	/**
+	 * Determines if a puzzle has exactly one solution.
+	 * 
+	 * @param puzzle
+	 *            A puzzle of 81 characters.
+	 * @return true if the puzzle has a unique solution, false otherwise.
+	 */
+	public boolean hasUniqueSolution(String puzzle) {
+		return countSolutions(puzzle, 2) == 1;
+	}
+
+	/**
+	 * Solve the puzzles given as arguments and print their solutions.
+	 * 
+	 * @param args
+	 *            Puzzles of 81 characters.
+	 */
+	public static void main(String[] args) {
+		SudokuSolver solver = new SudokuSolver();
+		for (String puzzle : args) {
+			String solution = solver.solve(puzzle);
+			System.out.println(solution == null ? "No solution" : solution);
+		}
+	}
+}
@@ -1,12 +1,18 @@
-import java.util.regex.Pattern;
-
 public class Validator {
-	private static final String VALID_EMAIL_REGEX = "\\b[\\w.%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,6}\\b";
-	private static final Pattern VALID_EMAIL_PATTERN = Pattern
-			.compile(VALID_EMAIL_REGEX);
+	private static final int CELLS = 81;
+	/** The fewest givens a puzzle with a unique solution can have. */
+	public static final int MIN_GIVENS = 17;
+	/** The longest email address which is accepted (RFC 5321). */
+	public static final int MAX_EMAIL_LENGTH = 254;
 
 	/**
-	 * Determines if an email address is valid.
+	 * Determines if an email address is valid. An address is valid if it
+	 * matches the regular expression
+	 * <code>\b[\w.%+-]+@[a-zA-Z0-9.-]+\.[a-zA-Z]{2,6}\b</code> and is no
+	 * longer than MAX_EMAIL_LENGTH characters.
+	 * 
+	 * The address is checked one character at a time without backtracking, so
+	 * the time taken is linear in its length and no memory is allocated.
 	 * 
 	 * @param email
 	 *            An email address.
@@ -14,6 +20,155 @@ public class Validator {
 	 *         return false.
 	 */
 	public static boolean isValidEmail(String email) {
-		return email != null && VALID_EMAIL_PATTERN.matcher(email).matches();
+		if (email == null)
+			return false;
+		int length = email.length();
+		if (length == 0 || length > MAX_EMAIL_LENGTH)
+			return false;
+		// the local part must start with a word character (\b).
+		if (!isWordChar(email.charAt(0)))
+			return false;
+		int i = 1;
+		char c = 0;
+		while (i < length && (c = email.charAt(i)) != '@') {
+			if (!isWordChar(c) && c != '.' && c != '%' && c != '+' && c != '-')
+				return false;
+			i++;
+		}
+		if (i == length)
+			return false;
+		// the domain is [a-zA-Z0-9.-]+ and must end with a dot followed by a
+		// top-level domain of 2 to 6 letters.
+		int domainStart = i + 1;
+		int lastDot = -1;
+		for (i = domainStart; i < length; i++) {
+			c = email.charAt(i);
+			if (c == '.')
+				lastDot = i;
+			else if (!isLetter(c) && !(c >= '0' && c <= '9') && c != '-')
+				return false;
+		}
+		if (lastDot <= domainStart)
+			return false;
+		int tldLength = length - lastDot - 1;
+		if (tldLength < 2 || tldLength > 6)
+			return false;
+		for (i = lastDot + 1; i < length; i++)
+			if (!isLetter(email.charAt(i)))
+				return false;
+		return true;
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isWordChar(char c) {
+		return isLetter(c) || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	/**
+	 * Determines if a string is a Sudoku puzzle which could have been served:
+	 * 81 digits where 0 means an empty cell, with at least MIN_GIVENS givens.
+	 * A puzzle with fewer givens cannot have a unique solution, and one without
+	 * any would let every solution keep its givens.
+	 * 
+	 * @param puzzle
+	 *            A puzzle.
+	 * @return true if the puzzle is valid, false otherwise.
+	 */
+	public static boolean isValidPuzzle(CharSequence puzzle) {
+		if (puzzle == null || puzzle.length() != CELLS)
+			return false;
+		int givens = 0;
+		for (int i = 0; i < CELLS; i++) {
+			char c = puzzle.charAt(i);
+			if (c < '0' || c > '9')
+				return false;
+			if (c != '0')
+				givens++;
+		}
+		return givens >= MIN_GIVENS;
+	}
+
+	/**
+	 * Determines if a string is a complete and correct solution to a Sudoku
+	 * puzzle, i.e. that it contains exactly 81 digits in the range 1..9 and
+	 * that no digit appears twice in any row, column or subgrid.
+	 * 
+	 * @param solution
+	 *            A solution to be validated.
+	 * @return true if the solution is valid, false otherwise.
+	 */
+	public static boolean isValidSolution(CharSequence solution) {
+		return isValidSolution(solution, null);
+	}
+
+	/**
+	 * Determines if a string is a complete and correct solution to a given
+	 * Sudoku puzzle. The solution is valid if it contains exactly 81 digits in
+	 * the range 1..9, no digit appears twice in any row, column or subgrid and
+	 * every given (non-zero) cell of the puzzle is kept unchanged.
+	 * 
+	 * The solution is read once, one cell at a time. Each row, column and
+	 * subgrid is represented by a 9-bit mask of the digits seen so far, packed
+	 * into primitive locals so that no memory is allocated.
+	 * 
+	 * @param solution
+	 *            A solution to be validated.
+	 * @param puzzle
+	 *            The puzzle the solution was made for, as 81 characters where
+	 *            0 means an empty cell, or null if the givens should not be
+	 *            checked.
+	 * @return true if the solution is valid, false otherwise.
+	 */
+	public static boolean isValidSolution(CharSequence solution,
+			CharSequence puzzle) {
+		if (solution == null || solution.length() != CELLS)
+			return false;
+		if (puzzle != null && puzzle.length() != CELLS)
+			return false;
+		// columns 0..6 share a long, columns 7 and 8 share an int.
+		long lowColumns = 0;
+		int highColumns = 0;
+		// the three subgrids of the current band.
+		int subgrids = 0;
+		int idx = 0;
+		for (int row = 0; row < 9; row++) {
+			int rowMask = 0;
+			if (row % 3 == 0)
+				subgrids = 0;
+			for (int col = 0; col < 9; col++, idx++) {
+				char c = solution.charAt(idx);
+				if (c < '1' || c > '9')
+					return false;
+				if (puzzle != null) {
+					char given = puzzle.charAt(idx);
+					if (given >= '1' && given <= '9' && given != c)
+						return false;
+				}
+				int bit = 1 << (c - '1');
+				if ((rowMask & bit) != 0)
+					return false;
+				rowMask |= bit;
+				if (col < 7) {
+					long colBit = (long) bit << (col * 9);
+					if ((lowColumns & colBit) != 0)
+						return false;
+					lowColumns |= colBit;
+				} else {
+					int colBit = bit << ((col - 7) * 9);
+					if ((highColumns & colBit) != 0)
+						return false;
+					highColumns |= colBit;
+				}
+				int subgridBit = bit << (col / 3 * 9);
+				if ((subgrids & subgridBit) != 0)
+					return false;
+				subgrids |= subgridBit;
+			}
+		}
+		// 81 digits without repetition means every unit holds all of 1..9.
+		return true;
 	}
 }
@@ -1,23 +1,33 @@
-import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.regex.Pattern;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 
 /**
- * The sudoku class is a CGI application which takes two parameters, "solution"
- * and "email", and, if they are found to be valid, appends them to a file.
- * Then, if everything has been completed successfully, it prints a message to
- * the user saying "Thank you."
+ * The sudoku class is a CGI application which takes three parameters,
+ * "solution", "email" and "puzzle", and, if they are found to be valid, appends
+ * the email and solution to a file. The puzzle is the one which was served, so
+ * that the solution can be checked against its givens; a submission without it
+ * is rejected. Then, if everything has been completed successfully, it prints
+ * a message to the user saying "Thank you."
  * 
  * @author Ole Sandbu
  */
 public class sudoku extends CgiApp {
-	private static final String FILE_NAME = "/cs/home/os75/public_html/sudoku/solutions.txt";
-
-	// regular expression which matches strings containing exactly 81 numbers.
-	private static final String SOLUTION_REGEX = "[\\d]{81}";
-	private static final Pattern SOLUTION_PATTERN = Pattern
-			.compile(SOLUTION_REGEX);
+	private static final String FILE_NAME = System.getProperty(
+			"solutions.file", "/cs/home/os75/public_html/sudoku/solutions.txt");
+	private static final String INDEX_FILE_NAME = System.getProperty(
+			"solutions.index", FILE_NAME + ".idx");
+	private static final SolutionLog.SyncPolicy SYNC_POLICY = SolutionLog.SyncPolicy
+			.valueOf(System.getProperty("solutions.sync", "DATA"));
+	private static final PageTemplate PAGE = PageTemplate.compile(CgiApp
+			.getXHTMLHeader()
+			+ "\n<head><title>${title}</title></head><body>\n${content}\n</body></html>\n",
+			StandardCharsets.ISO_8859_1);
+	private static final SubmissionMetrics METRICS = new SubmissionMetrics();
+	private static SolutionLog log;
+	// only set in a long-lived server, which fills it with the puzzles it serves.
+	private static volatile SolutionCache solutionCache;
 
 	/**
 	 * Constructor which reads the arguments from the URL.
@@ -36,25 +46,106 @@ public class sudoku extends CgiApp {
 	 */
 	public static void main(String[] args) {
 		sudoku sudoku = new sudoku();
-		String email = sudoku.get("email");
-		if (!Validator.isValidEmail(email)) {
-			printXHTMLPage("Invalid email",
+		respond(sudoku, System.out);
+		System.out.flush();
+		saveMetrics();
+	}
+
+	/**
+	 * Add the metrics of this JVM to the file named by the metrics.file
+	 * system property, if it is set, so that the metrics of CGI processes,
+	 * which handle one request each, are not lost when they exit.
+	 */
+	static void saveMetrics() {
+		String metricsFile = System.getProperty("metrics.file");
+		if (metricsFile != null) {
+			try {
+				METRICS.addTo(new File(metricsFile));
+			} catch (IOException e) {
+				System.err.println(e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Handle a submission. Attempts to save the email and solution given in
+	 * the form to a file, and prints a page saying thank you if everything is
+	 * completed successfully, otherwise a page reporting the error which has
+	 * occured.
+	 * 
+	 * @param form
+	 *            The parsed form data of the request.
+	 * @param out
+	 *            The stream to print the response to, including the CGI
+	 *            header.
+	 */
+	public static void respond(CgiApp form, PrintStream out) {
+		METRICS.record(SubmissionMetrics.Stage.PARSE, form.getParseTime());
+		if (form.isRequestTooLarge()) {
+			METRICS.count(SubmissionMetrics.Outcome.TOO_LARGE);
+			printXHTMLPage(out, "Request too large",
+					"The solution was not submitted, because the request was too large.");
+			return;
+		}
+		String email = form.get("email");
+		long start = System.nanoTime();
+		boolean valid = Validator.isValidEmail(email);
+		long end = System.nanoTime();
+		METRICS.record(SubmissionMetrics.Stage.EMAIL, end - start);
+		if (!valid) {
+			METRICS.count(SubmissionMetrics.Outcome.INVALID_EMAIL);
+			printXHTMLPage(out, "Invalid email",
 					"The solution was not submitted, because the email provided is invalid.");
 			return;
 		}
-		String solution = sudoku.get("solution");
-		if (!isValidSolution(solution)) {
-			printXHTMLPage("Invalid solution",
+		String solution = form.get("solution");
+		String puzzle = form.get("puzzle");
+		start = end;
+		boolean validPuzzle = Validator.isValidPuzzle(puzzle);
+		valid = validPuzzle && isValidSolution(solution, puzzle);
+		end = System.nanoTime();
+		METRICS.record(SubmissionMetrics.Stage.SOLUTION, end - start);
+		if (!validPuzzle) {
+			METRICS.count(SubmissionMetrics.Outcome.INVALID_PUZZLE);
+			printXHTMLPage(out, "Invalid puzzle",
+					"The solution was not submitted, because the puzzle it solves is missing or invalid.");
+			return;
+		}
+		if (!valid) {
+			METRICS.count(SubmissionMetrics.Outcome.INVALID_SOLUTION);
+			printXHTMLPage(out, "Invalid solution",
 					"The solution was not submitted, because it was found to be invalid.");
 			return;
 		}
+		start = end;
 		try {
-			appendFile(email, solution);
+			valid = appendFile(email, solution);
 		} catch (IOException e) {
-			printXHTMLPage("Error", e.toString());
+			METRICS.record(SubmissionMetrics.Stage.APPEND, System.nanoTime()
+					- start);
+			METRICS.count(SubmissionMetrics.Outcome.ERROR);
+			printXHTMLPage(out, "Error", e.toString());
 			return;
 		}
-		printThankYouPage();
+		METRICS.record(SubmissionMetrics.Stage.APPEND, System.nanoTime()
+				- start);
+		if (!valid) {
+			METRICS.count(SubmissionMetrics.Outcome.DUPLICATE);
+			printXHTMLPage(out, "Duplicate solution",
+					"The solution was not submitted, because it has already been submitted from this email address.");
+			return;
+		}
+		METRICS.count(SubmissionMetrics.Outcome.ACCEPTED);
+		printThankYouPage(out);
+	}
+
+	/**
+	 * Returns the metrics of the submissions handled by this JVM.
+	 * 
+	 * @return The metrics.
+	 */
+	static SubmissionMetrics getMetrics() {
+		return METRICS;
 	}
 
 	/**
@@ -65,56 +156,109 @@ public class sudoku extends CgiApp {
 	 *            An email address.
 	 * @param solution
 	 *            The given solution.
+	 * @return false if the email has already submitted the solution, true
+	 *         otherwise.
 	 * @throws IOException
 	 *             If an error occurs while attempting to write to the file.
 	 */
-	private static void appendFile(String email, String solution)
+	private static boolean appendFile(String email, String solution)
 			throws IOException {
-		PrintWriter out = new PrintWriter(new FileWriter(FILE_NAME, true));
-		out.println(email + " " + solution);
-		out.close();
+		return getLog().append(email, solution) != SolutionLog.DUPLICATE;
+	}
+
+	/**
+	 * Returns the log used to append to the file with all the solutions,
+	 * opening it the first time it is used.
+	 * 
+	 * @return The log.
+	 * @throws IOException
+	 *             If the file cannot be opened.
+	 */
+	static synchronized SolutionLog getLog() throws IOException {
+		if (log == null)
+			log = new SolutionLog(new File(FILE_NAME), SYNC_POLICY,
+					new SubmissionIndex(new File(INDEX_FILE_NAME)));
+		return log;
 	}
 
 	/**
 	 * Print a webpage saying "Thank you" to the user.
 	 */
 	public static void printThankYouPage() {
-		printXHTMLPage("Thank you", "<p>Thank you</p>");
+		printThankYouPage(System.out);
+	}
+
+	/**
+	 * Print a webpage saying "Thank you" to the user.
+	 * 
+	 * @param out
+	 *            The stream to print the page to.
+	 */
+	public static void printThankYouPage(PrintStream out) {
+		printXHTMLPage(out, "Thank you", "<p>Thank you</p>");
 	}
 
 	/**
-	 * Print a XHTML document to the user.
+	 * Print a XHTML document to the user, with a single write of a page
+	 * rendered from a precompiled template.
 	 * 
+	 * @param out
+	 *            The stream to print the document to.
 	 * @param title
 	 *            The title of the document.
 	 * @param content
 	 *            The content (body) of the document.
 	 */
-	private static void printXHTMLPage(String title, String content) {
-		printXHTMLHeader(title);
-		System.out.println(content);
-		System.out.println("</body></html>");
+	private static void printXHTMLPage(PrintStream out, String title,
+			String content) {
+		byte[] page = PAGE.render(title, content);
+		out.write(page, 0, page.length);
 	}
 
 	/**
-	 * Print a XHTML-header with a given title.
+	 * Keep the solutions of the puzzles served by this JVM in a cache, so that
+	 * submissions for them can be checked by comparing them with the solution.
+	 * Only worth doing in a long-lived server; a CGI process lives for a single
+	 * submission.
 	 * 
-	 * @param title
-	 *            A title.
+	 * @param cache
+	 *            The cache, or null to stop caching.
+	 */
+	static void setSolutionCache(SolutionCache cache) {
+		solutionCache = cache;
+	}
+
+	/**
+	 * Record that a puzzle has been served, so that its solution is cached if
+	 * there is a cache. Only puzzles chosen by the server should be given,
+	 * never ones taken from a request.
+	 * 
+	 * @param puzzle
+	 *            The puzzle.
 	 */
-	private static void printXHTMLHeader(String title) {
-		System.out.println(CgiApp.getXHTMLHeader());
-		System.out.println("<head><title>" + title + "</title></head><body>");
+	static void puzzleServed(String puzzle) {
+		SolutionCache cache = solutionCache;
+		if (cache != null)
+			cache.add(puzzle);
 	}
 
 	/**
-	 * Determines if a string is a valid solution to a a sudoku puzzle.
+	 * Determines if a string is a valid solution to a a sudoku puzzle. If the
+	 * puzzle was served by this JVM and has a unique solution, the string is
+	 * simply compared with its cached solution; otherwise it is validated
+	 * without solving the puzzle.
 	 * 
 	 * @param solution
 	 *            A solution to be validated.
+	 * @param puzzle
+	 *            The puzzle which was served.
 	 * @return true if the solution is valid, false otherwise.
 	 */
-	private static boolean isValidSolution(String solution) {
-		return solution != null && SOLUTION_PATTERN.matcher(solution).matches();
+	private static boolean isValidSolution(String solution, String puzzle) {
+		SolutionCache cache = solutionCache;
+		String known = cache == null ? null : cache.get(puzzle);
+		if (known != null)
+			return known.equals(solution);
+		return Validator.isValidSolution(solution, puzzle);
 	}
 }
\ No newline at end of file
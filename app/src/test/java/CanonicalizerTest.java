@@ -0,0 +1,131 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that Canonicalizer gives every grid the same canonical form as any
+ * transposition, band, stack, row and column permutation and relabelling of
+ * it, and the form found by trying every transformation.
+ * 
+ * @author Ole Sandbu
+ */
+public class CanonicalizerTest {
+	private static final String PUZZLE = "700000400069000000810002000003008140941026000000090200097003560205807900000510000";
+	private static final String SOLUTION = "752681493369475821814932657623758149941326785578194236197243568235867914486519372";
+	private static final String SEVENTEEN = "000000010400000000020000000000050407008000300001090000300400200050100000000806000";
+	private static final String EMPTY = "000000000000000000000000000000000000000000000000000000000000000000000000000000000";
+	/** Canonical forms found by trying all 2 * 6^8 transformations. */
+	private static final String[][] KNOWN = {
+			{ PUZZLE, "000000000000001002001034056000000670000350400030207089078500030240100005500409068" },
+			{ SOLUTION, "123456789456789123789132564295641837631875942847923615312567498568394271974218356" },
+			{ SEVENTEEN, "000000001000000020000003000000040500006000300007810000010020004030000070950000000" },
+			{ EMPTY, EMPTY } };
+	private static final int TRANSFORMS = 500;
+
+	/**
+	 * Shuffle an array of 0..n-1 in place.
+	 */
+	private static int[] permutation(Random random, int n) {
+		int[] perm = new int[n];
+		for (int i = 0; i < n; i++)
+			perm[i] = i;
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int t = perm[i];
+			perm[i] = perm[j];
+			perm[j] = t;
+		}
+		return perm;
+	}
+
+	/**
+	 * Returns a random one of the 9! * 2 * 6^8 transformations of a grid.
+	 */
+	private static String transform(Random random, String grid) {
+		boolean transpose = random.nextBoolean();
+		int[] rows = new int[9];
+		int[] cols = new int[9];
+		int[] bands = permutation(random, 3);
+		int[] stacks = permutation(random, 3);
+		for (int b = 0; b < 3; b++) {
+			int[] inBand = permutation(random, 3);
+			int[] inStack = permutation(random, 3);
+			for (int i = 0; i < 3; i++) {
+				rows[b * 3 + i] = bands[b] * 3 + inBand[i];
+				cols[b * 3 + i] = stacks[b] * 3 + inStack[i];
+			}
+		}
+		int[] labels = permutation(random, 9);
+		char[] out = new char[81];
+		for (int r = 0; r < 9; r++)
+			for (int c = 0; c < 9; c++) {
+				int cell = transpose ? cols[c] * 9 + rows[r] : rows[r] * 9
+						+ cols[c];
+				char d = grid.charAt(cell);
+				out[r * 9 + c] = d == '0' ? '0' : (char) ('1' + labels[d - '1']);
+			}
+		return new String(out);
+	}
+
+	private static void assertInvariant(Random random, String grid) {
+		Canonicalizer canonicalizer = new Canonicalizer();
+		String form = canonicalizer.canonicalize(grid);
+		for (int i = 0; i < TRANSFORMS; i++) {
+			String transformed = transform(random, grid);
+			assertEquals(form, canonicalizer.canonicalize(transformed),
+					transformed);
+		}
+	}
+
+	/**
+	 * The canonical forms of a puzzle, its solution, a 17-clue puzzle and the
+	 * empty grid are the smallest of all their transformations.
+	 */
+	@Test
+	public void matchesKnownForms() {
+		for (String[] known : KNOWN)
+			assertEquals(known[1], Canonicalizer.canonical(known[0]), known[0]);
+	}
+
+	/**
+	 * Random transformations of complete, partial, sparse and empty grids
+	 * have the same canonical form as the grid.
+	 */
+	@Test
+	public void isInvariantUnderTransformations() {
+		Random random = new Random(5);
+		for (String[] known : KNOWN)
+			assertInvariant(random, known[0]);
+		for (String puzzle : new PuzzleGenerator(25, 6).generate(4)) {
+			assertInvariant(random, puzzle);
+			assertInvariant(random, new SudokuSolver().solve(puzzle));
+		}
+		// a grid with an empty band, stack, row and column.
+		char[] sparse = SEVENTEEN.toCharArray();
+		for (int i = 0; i < 81; i++)
+			if (i / 27 == 1 || i % 9 / 3 == 2 || i / 9 == 0 || i % 9 == 0)
+				sparse[i] = '0';
+		assertInvariant(random, new String(sparse));
+	}
+
+	/**
+	 * Grids which are not equivalent have different forms.
+	 */
+	@Test
+	public void distinguishesDifferentGrids() {
+		String form = Canonicalizer.canonical(PUZZLE);
+		for (int i = 0; i < 81; i++) {
+			if (PUZZLE.charAt(i) == '0')
+				continue;
+			// one given fewer can not be a transformation of the puzzle.
+			String fewer = PUZZLE.substring(0, i) + "0"
+					+ PUZZLE.substring(i + 1);
+			assertNotEquals(form, Canonicalizer.canonical(fewer), fewer);
+		}
+		assertNotEquals(Canonicalizer.canonical(SEVENTEEN), Canonicalizer
+				.canonical(PUZZLE));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,196 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that CgiApp decodes form data the way it did before FormDecoder: get,
+ * getCheckbox and getAllNames give the same results as the old unescape and
+ * parseQuery for well-formed input, multi-byte UTF-8 escapes decode to the
+ * characters they encode, and malformed escapes are kept as they are.
+ * 
+ * @author Ole Sandbu
+ */
+public class CgiAppTest {
+	/** Pieces of well-formed input which the old decoder handled. */
+	private static final String[] TOKENS = { "a", "b", "ab", "K", "=", "=",
+			"&", "&", "\n", "+", "%41", "%2b", "%2B", "%3D", "%26", "%25",
+			"%20", "%00", "%7f", "%0A" };
+	private static final String[] NAMES = { "a", "b", "ab", "K", "a b", "A",
+			"+", "=", "&", "%", "", "x" };
+	private static final int SAMPLES = 100000;
+
+	/**
+	 * The old parseQuery, given the query string or body.
+	 */
+	private static Map<String, String> oldParse(String input) {
+		Hashtable<String, String> formInput = new Hashtable<String, String>(31);
+		StringTokenizer t = new StringTokenizer(input, "&\n");
+		while (t.hasMoreTokens())
+			oldPut(formInput, t.nextToken());
+		return formInput;
+	}
+
+	/**
+	 * The old put.
+	 */
+	private static void oldPut(Map<String, String> formInput, String s) {
+		s = s.replace('+', ' ');
+		int equalSignPos = s.indexOf('=');
+		if (equalSignPos > 0) {
+			String key = oldUnescape(s.substring(0, equalSignPos));
+			String value = oldUnescape(s.substring(equalSignPos + 1));
+			formInput.put(key, value);
+		}
+	}
+
+	/**
+	 * The old unescape.
+	 */
+	private static String oldUnescape(String s) {
+		String target = new String();
+		String source = s;
+		int nextEscape;
+		do {
+			nextEscape = source.indexOf('%');
+			if (nextEscape != -1) {
+				String header = source.substring(0, nextEscape);
+				String trailer = source.substring(nextEscape + 3);
+				String escape = source.substring(nextEscape + 1, nextEscape + 3);
+				byte charValue[] = new byte[1];
+				try {
+					charValue[0] = (byte) Integer.parseInt(escape, 16);
+				} catch (NumberFormatException e) {
+				}
+				String unescaped = new String(charValue, 0, 1);
+				target = target.concat(header);
+				target = target.concat(unescaped);
+				source = trailer;
+			} else
+				target = target.concat(source);
+		} while (nextEscape != -1);
+		return target;
+	}
+
+	private static CgiApp get(String query) {
+		return new CgiApp("GET", query, null, null);
+	}
+
+	private static CgiApp post(String body) {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		return new CgiApp("POST", null, Integer.toString(bytes.length),
+				new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Checks that a form holds exactly the pairs the old decoder found.
+	 */
+	private static void assertSameAsOld(String input, CgiApp form) {
+		Map<String, String> old = oldParse(input);
+		assertEquals(old.keySet(), new HashSet<String>(Arrays.asList(form
+				.getAllNames())), input);
+		for (String name : NAMES) {
+			assertEquals(old.get(name), form.get(name), input);
+			assertEquals(old.containsKey(name), form.getCheckbox(name), input);
+		}
+		for (Map.Entry<String, String> entry : old.entrySet()) {
+			assertEquals(entry.getValue(), form.get(entry.getKey()), input);
+			assertTrue(form.getCheckbox(entry.getKey()), input);
+		}
+	}
+
+	/**
+	 * Random well-formed input, as a query string and as a body.
+	 */
+	@Test
+	public void matchesOldDecoderOnRandomInput() {
+		Random random = new Random(3);
+		for (int i = 0; i < SAMPLES; i++) {
+			int tokens = random.nextInt(16);
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0; j < tokens; j++)
+				sb.append(TOKENS[random.nextInt(TOKENS.length)]);
+			String input = sb.toString();
+			assertSameAsOld(input, get(input));
+			assertSameAsOld(input, post(input));
+		}
+	}
+
+	/**
+	 * '+', escapes, repeated names, empty values and pairs without a name or
+	 * an '='.
+	 */
+	@Test
+	public void matchesOldDecoderOnEdgeCases() {
+		String[] cases = { "", "a", "a=", "=", "=b", "a=1", "a=1&a=2",
+				"a=1&a=", "a=&a=1", "a=b=c", "a==", "&&a=1&&", "a=1\nb=2",
+				"a+b=c+d", "a%2Bb=c%2bd", "a%3Db=c", "a=%26&b=%3D", "a=%25",
+				"A=1&a=2", "email=a%40b.co&solution=12", "a=%00" };
+		for (String input : cases) {
+			assertSameAsOld(input, get(input));
+			assertSameAsOld(input, post(input));
+		}
+		CgiApp form = get("a=1&a=&b");
+		assertEquals("", form.get("a"));
+		assertTrue(form.getCheckbox("a"));
+		assertNull(form.get("b"));
+		assertFalse(form.getCheckbox("b"));
+	}
+
+	/**
+	 * Escaped and raw multi-byte UTF-8 decode to the characters they encode,
+	 * where the old decoder turned each byte into a character of its own.
+	 */
+	@Test
+	public void decodesMultiByteUtf8() throws UnsupportedEncodingException {
+		String[] values = { "%C3%A5", "%c3%a5", "%E2%82%AC", "%F0%9F%98%80",
+				"pl%C3%A5yer+%E2%82%AC", "a%C3%A5%20b" };
+		for (String value : values) {
+			String expected = URLDecoder.decode(value, "UTF-8");
+			assertEquals(expected, get("v=" + value).get("v"), value);
+			assertEquals(expected, post("v=" + value).get("v"), value);
+			assertEquals("1", get(value + "=1").get(expected), value);
+		}
+		assertEquals("\u00e5\u20ac", get("v=\u00e5\u20ac").get("v"));
+		assertEquals("\u00e5\u20ac", post("v=\u00e5\u20ac").get("v"));
+		assertEquals("\ud83d\ude00", get("v=\ud83d\ude00").get("v"));
+		// malformed UTF-8 becomes U+FFFD.
+		assertEquals("\ufffd", get("v=%C3").get("v"));
+		assertEquals("\ufffd(", get("v=%C3%28").get("v"));
+		assertEquals("\ufffd", get("v=%80").get("v"));
+		// as does an overlong encoding.
+		assertEquals("\ufffd", get("v=%C0%80").get("v"));
+	}
+
+	/**
+	 * Malformed and truncated escapes are kept as they are, where the old
+	 * decoder turned them into NUL or threw an exception.
+	 */
+	@Test
+	public void keepsMalformedEscapes() {
+		String[][] cases = { { "a=%", "%" }, { "a=%4", "%4" },
+				{ "a=%zz", "%zz" }, { "a=%4z", "%4z" }, { "a=100%", "100%" },
+				{ "a=%%41", "%A" }, { "a=%g1&b=2", "%g1" },
+				{ "a=50%+off", "50% off" } };
+		for (String[] c : cases) {
+			assertEquals(c[1], get(c[0]).get("a"), c[0]);
+			assertEquals(c[1], post(c[0]).get("a"), c[0]);
+		}
+		assertEquals("2", get("a=%g1&b=2").get("b"));
+		assertEquals("1", get("%=1").get("%"));
+		assertEquals("1", get("%4=1").get("%4"));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,149 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that PuzzleBank.build keeps one of each set of equivalent valid
+ * puzzles, sorted into contiguous tier ranges, and that a bank reads back
+ * the puzzles and their ratings.
+ * 
+ * @author Ole Sandbu
+ */
+public class PuzzleBankTest {
+	private static final String EMPTY = "000000000000000000000000000000000000000000000000000000000000000000000000000000000";
+	private static final int DRAWS = 20;
+
+	@TempDir
+	File dir;
+
+	/**
+	 * Returns an equivalent puzzle: the transpose with every digit d
+	 * relabelled d + 1, and 9 relabelled 1.
+	 */
+	private static String equivalent(String puzzle) {
+		char[] out = new char[81];
+		for (int r = 0; r < 9; r++)
+			for (int c = 0; c < 9; c++) {
+				char d = puzzle.charAt(c * 9 + r);
+				out[r * 9 + c] = d == '0' ? '0' : (char) ('1' + (d - '0') % 9);
+			}
+		return new String(out);
+	}
+
+	private static void write(File file, List<String> lines)
+			throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file),
+				StandardCharsets.US_ASCII);
+		try {
+			for (String line : lines)
+				out.write(line + "\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Equivalent copies, invalid lines and puzzles without a unique solution
+	 * are left out, and every kept puzzle reads back with its tier, hash and
+	 * givens.
+	 */
+	@Test
+	public void buildsAndReadsBack() throws IOException {
+		String[] puzzles = new PuzzleGenerator(24, 9).generate(8);
+		List<String> lines = new ArrayList<String>();
+		Map<String, String> byForm = new HashMap<String, String>();
+		for (String puzzle : puzzles) {
+			lines.add(puzzle);
+			byForm.put(Canonicalizer.canonical(puzzle), puzzle);
+		}
+		for (String puzzle : puzzles)
+			lines.add(equivalent(puzzle));
+		lines.add(puzzles[0]);
+		lines.add("");
+		lines.add("not a puzzle");
+		lines.add(puzzles[1].substring(1));
+		lines.add(EMPTY);
+		File input = new File(dir, "puzzles.txt");
+		File output = new File(dir, "puzzles.bank");
+		write(input, lines);
+
+		assertEquals(byForm.size(), PuzzleBank.build(input, output));
+		PuzzleBank bank = new PuzzleBank(output);
+		try {
+			assertEquals(byForm.size(), bank.size());
+			for (int n = 0; n < bank.size(); n++) {
+				String puzzle = bank.get(n);
+				String form = Canonicalizer.canonical(puzzle);
+				assertEquals(byForm.get(form), puzzle);
+				assertEquals(PuzzleBank.hash(form), bank.getHash(n));
+				assertEquals(DifficultyRater.rate(puzzle).getTier(),
+						bank.getTier(n));
+				assertEquals(puzzle.replace("0", "").length(),
+						bank.getGivens(n));
+				assertTrue(bank.getSteps(n) > 0);
+			}
+		} finally {
+			bank.close();
+		}
+	}
+
+	/**
+	 * The tier ranges cover the bank in order, hold only puzzles of their
+	 * tier, and random draws from a tier stay in its range.
+	 */
+	@Test
+	public void tierRanges() throws IOException {
+		List<String> lines = new ArrayList<String>();
+		for (String puzzle : new PuzzleGenerator(22, 3).generate(6))
+			lines.add(puzzle);
+		for (String puzzle : new PuzzleGenerator(40, 4).generate(6))
+			lines.add(puzzle);
+		File input = new File(dir, "puzzles.txt");
+		File output = new File(dir, "puzzles.bank");
+		write(input, lines);
+		PuzzleBank.build(input, output);
+		PuzzleBank bank = new PuzzleBank(output);
+		try {
+			int next = 0;
+			int empty = 0;
+			for (DifficultyRater.Tier tier : DifficultyRater.Tier.values()) {
+				int first = bank.first(tier);
+				int size = bank.size(tier);
+				if (size == 0) {
+					assertNull(bank.random(tier));
+					empty++;
+					continue;
+				}
+				assertEquals(next, first, tier.toString());
+				next = first + size;
+				List<String> range = new ArrayList<String>();
+				for (int n = first; n < next; n++) {
+					assertEquals(tier, bank.getTier(n));
+					range.add(bank.get(n));
+				}
+				for (int i = 0; i < DRAWS; i++)
+					assertTrue(range.contains(bank.random(tier)), tier
+							.toString());
+			}
+			assertEquals(bank.size(), next);
+			assertTrue(empty < DifficultyRater.Tier.values().length - 1,
+					"only one tier");
+		} finally {
+			bank.close();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that solution records read back as they were written, whether written
+ * directly or converted from a text solutions file, and that corrupt or
+ * truncated files are rejected.
+ * 
+ * @author Ole Sandbu
+ */
+public class SolutionRecordTest {
+	private static final String SOLUTION = "735164928469385712812972356523748149941526837678391245197253564245817693386519472";
+	private static final String[] EMAILS = { "a@b.co", "player.one@example.com",
+			"pl\u00e5yer@example.com", "x_y%z+w-v@mail-1.example.museum" };
+
+	@TempDir
+	File dir;
+
+	private static String randomDigits(Random random, char lowest) {
+		char[] digits = new char[Grid.CELLS];
+		for (int i = 0; i < digits.length; i++)
+			digits[i] = (char) (lowest + random.nextInt('9' - lowest + 1));
+		return new String(digits);
+	}
+
+	private static byte[] write(List<SolutionRecord> records)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SolutionRecordWriter writer = new SolutionRecordWriter(bytes);
+		try {
+			for (SolutionRecord record : records)
+				writer.write(record);
+		} finally {
+			writer.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static List<SolutionRecord> read(byte[] bytes) throws IOException {
+		List<SolutionRecord> records = new ArrayList<SolutionRecord>();
+		SolutionRecordReader reader = new SolutionRecordReader(
+				new ByteArrayInputStream(bytes));
+		try {
+			SolutionRecord record;
+			while ((record = reader.read()) != null)
+				records.add(record);
+		} finally {
+			reader.close();
+		}
+		return records;
+	}
+
+	private static void assertSameRecords(List<SolutionRecord> expected,
+			List<SolutionRecord> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getEmail(), actual.get(i).getEmail());
+			assertEquals(expected.get(i).getSolution(), actual.get(i)
+					.getSolution());
+			assertEquals(expected.get(i).getTimestamp(), actual.get(i)
+					.getTimestamp());
+		}
+	}
+
+	/**
+	 * Records with repeated emails, solutions packed in base 9 and as nibbles
+	 * and any timestamp read back unchanged.
+	 */
+	@Test
+	public void readsBackWhatWasWritten() throws IOException {
+		Random random = new Random(4);
+		List<SolutionRecord> records = new ArrayList<SolutionRecord>();
+		records.add(new SolutionRecord(EMAILS[0], SOLUTION, 0));
+		records.add(new SolutionRecord(EMAILS[0], SOLUTION, Long.MAX_VALUE));
+		records.add(new SolutionRecord(EMAILS[1], "111111111111111111111111111111111111111111111111111111111111111111111111111111111", -1));
+		records.add(new SolutionRecord(EMAILS[1], "999999999999999999999999999999999999999999999999999999999999999999999999999999999", 1));
+		records.add(new SolutionRecord(EMAILS[2], "000000000000000000000000000000000000000000000000000000000000000000000000000000000", 2));
+		for (int i = 0; i < 2000; i++) {
+			// enough emails for their numbers to take more than one byte.
+			String email = i % 3 == 0 ? EMAILS[random.nextInt(EMAILS.length)]
+					: "player" + random.nextInt(500) + "@example.com";
+			String solution = randomDigits(random, random.nextBoolean() ? '1'
+					: '0');
+			records.add(new SolutionRecord(email, solution, random.nextLong()));
+		}
+		assertSameRecords(records, read(write(records)));
+	}
+
+	/**
+	 * A text solutions file converts to records with the same emails and
+	 * solutions, skipping lines which are not an email and 81 digits.
+	 */
+	@Test
+	public void convertsTextFile() throws IOException {
+		File text = new File(dir, "solutions.txt");
+		File binary = new File(dir, "solutions.bin");
+		String other = SOLUTION.substring(1) + "0";
+		String lines = EMAILS[0] + " " + SOLUTION + "\n" + EMAILS[2] + " "
+				+ other + "\r\n" + "no solution\n" + EMAILS[1] + " "
+				+ SOLUTION.substring(1) + "\n" + "\n" + SOLUTION + "\n"
+				+ EMAILS[0] + " " + other;
+		Files.write(text.toPath(), lines.getBytes(StandardCharsets.UTF_8));
+		assertEquals(4, SolutionRecordWriter.convert(text.getPath(), binary
+				.getPath()));
+		List<SolutionRecord> expected = Arrays.asList(new SolutionRecord(
+				EMAILS[0], SOLUTION, 0), new SolutionRecord(EMAILS[2], other,
+				0), new SolutionRecord(EMAILS[0], other, 0));
+		assertSameRecords(expected, read(Files.readAllBytes(binary.toPath())));
+		SolutionRecordReader reader = new SolutionRecordReader(
+				new FileInputStream(binary));
+		try {
+			for (int i = 0; i < expected.size(); i++)
+				reader.read();
+			assertNull(reader.read());
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * A changed byte in a record or its CRC is reported with the number of
+	 * the record, counting email and solution records from 1.
+	 */
+	@Test
+	public void rejectsCorruptCrc() throws IOException {
+		List<SolutionRecord> records = Arrays.asList(new SolutionRecord(
+				EMAILS[0], SOLUTION, 0), new SolutionRecord(EMAILS[0],
+				SOLUTION, 1), new SolutionRecord(EMAILS[1], SOLUTION, 2));
+		final byte[] bytes = write(records);
+		assertSameRecords(records, read(bytes));
+		// header, email, solution, solution, email, solution
+		int emailLength = 3 + EMAILS[0].length() + 4;
+		int solutionLength = 3 + 1 + 8 + 1 + 33 + 4;
+		int third = 5 + emailLength + solutionLength;
+		int[][] cases = { { bytes.length - 1, 5 },
+				{ third + solutionLength - 5, 3 }, { third + 3, 3 },
+				{ 5 + 3, 1 }, { 5 + emailLength - 1, 1 } };
+		for (int[] c : cases) {
+			final byte[] corrupt = bytes.clone();
+			corrupt[c[0]] ^= 0x10;
+			IOException e = assertThrows(IOException.class, new Executable() {
+				public void execute() throws IOException {
+					read(corrupt);
+				}
+			});
+			assertEquals("CRC mismatch in record " + c[1], e.getMessage());
+		}
+	}
+
+	/**
+	 * Files which are truncated within a record or are not solutions files
+	 * are rejected.
+	 */
+	@Test
+	public void rejectsTruncatedAndForeignFiles() throws IOException {
+		final byte[] bytes = write(Arrays.asList(new SolutionRecord(EMAILS[0],
+				SOLUTION, 0)));
+		// cut between records, the file is shorter but not corrupt.
+		int afterEmail = 5 + 3 + EMAILS[0].length() + 4;
+		assertEquals(0, read(Arrays.copyOf(bytes, 5)).size());
+		assertEquals(0, read(Arrays.copyOf(bytes, afterEmail)).size());
+		for (int length = 0; length < bytes.length; length++) {
+			if (length == 5 || length == afterEmail)
+				continue;
+			final byte[] truncated = Arrays.copyOf(bytes, length);
+			assertThrows(EOFException.class, new Executable() {
+				public void execute() throws IOException {
+					read(truncated);
+				}
+			});
+		}
+		final byte[] foreign = bytes.clone();
+		foreign[0] = 'X';
+		assertThrows(IOException.class, new Executable() {
+			public void execute() throws IOException {
+				read(foreign);
+			}
+		});
+	}
+}
\ No newline at end of file
@@ -0,0 +1,192 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that SubmissionIndex finds the pairs added to it and rejects
+ * duplicates, keeps them when it grows and is reopened, and that catchUp
+ * indexes a solutions file from where it left off.
+ * 
+ * @author Ole Sandbu
+ */
+public class SubmissionIndexTest {
+	private static final String SOLUTION = "735164928469385712812972356523748149941526837678391245197253564245817693386519472";
+
+	@TempDir
+	File dir;
+
+	private static String solution(int i) {
+		String n = Integer.toString(i);
+		return SOLUTION.substring(n.length()) + n;
+	}
+
+	/**
+	 * Append lines to a solutions file.
+	 */
+	private static void append(File file, String text) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(raf.length());
+			raf.write(text.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * A pair is found once added, can not be added twice, and is counted
+	 * against its email.
+	 */
+	@Test
+	public void addsAndRejectsDuplicates() throws IOException {
+		SubmissionIndex index = new SubmissionIndex(new File(dir, "idx"));
+		try {
+			assertFalse(index.contains("a@b.co", SOLUTION));
+			assertEquals(-1, index.offsetOf("a@b.co", SOLUTION));
+			assertTrue(index.add("a@b.co", SOLUTION, 0));
+			assertFalse(index.add("a@b.co", SOLUTION, 100));
+			assertTrue(index.add("a@b.co", solution(1), 100));
+			assertTrue(index.add("c@d.co", SOLUTION, 200));
+			assertTrue(index.contains("a@b.co", SOLUTION));
+			assertEquals(0, index.offsetOf("a@b.co", SOLUTION));
+			assertEquals(100, index.offsetOf("a@b.co", solution(1)));
+			assertEquals(200, index.offsetOf("c@d.co", SOLUTION));
+			assertFalse(index.contains("c@d.co", solution(1)));
+			assertEquals(3, index.size());
+			assertEquals(2, index.countByEmail("a@b.co"));
+			assertEquals(1, index.countByEmail("c@d.co"));
+			assertEquals(0, index.countByEmail("e@f.co"));
+		} finally {
+			index.close();
+		}
+	}
+
+	/**
+	 * Growing keeps every pair, count and the indexed length, and the grown
+	 * index reads back the same when reopened.
+	 */
+	@Test
+	public void keepsEverythingWhenGrowing() throws IOException {
+		File file = new File(dir, "idx");
+		int pairs = 5000;
+		SubmissionIndex index = new SubmissionIndex(file);
+		long initialSize = file.length();
+		try {
+			index.setLogLength(12345);
+			for (int i = 0; i < pairs; i++)
+				assertTrue(index.add("player" + i % 700 + "@example.com",
+						solution(i), i * 100L));
+			assertTrue(file.length() > initialSize);
+			assertEquals(12345, index.getLogLength());
+		} finally {
+			index.close();
+		}
+		index = new SubmissionIndex(file);
+		try {
+			assertEquals(pairs, index.size());
+			assertEquals(12345, index.getLogLength());
+			for (int i = 0; i < pairs; i++) {
+				String email = "player" + i % 700 + "@example.com";
+				assertEquals(i * 100L, index.offsetOf(email, solution(i)));
+				assertFalse(index.add(email, solution(i), 0));
+			}
+			for (int i = 0; i < 700; i++)
+				assertEquals(i < pairs % 700 ? pairs / 700 + 1 : pairs / 700,
+						index.countByEmail("player" + i + "@example.com"));
+		} finally {
+			index.close();
+		}
+	}
+
+	/**
+	 * catchUp indexes the lines of an existing solutions file at their
+	 * positions, skips repeated and malformed lines, leaves an unterminated
+	 * last line for later and starts again if the file is truncated.
+	 */
+	@Test
+	public void catchesUpWithSolutionsFile() throws IOException {
+		File log = new File(dir, "solutions.txt");
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 1500; i++)
+			lines.add("player" + i % 300 + "@example.com " + solution(i));
+		StringBuilder text = new StringBuilder();
+		List<Long> offsets = new ArrayList<Long>();
+		for (int i = 0; i < lines.size(); i++) {
+			offsets.add(Long.valueOf(text.length()));
+			text.append(lines.get(i)).append(i % 2 == 0 ? "\n" : "\r\n");
+			if (i % 100 == 0)
+				text.append(lines.get(i)).append("\nmalformed\n");
+		}
+		append(log, text.toString());
+		String last = "last@example.com " + SOLUTION;
+		append(log, last);
+		SubmissionIndex index = new SubmissionIndex(new File(dir, "idx"));
+		// the index reads lines back through the channel given to catchUp.
+		RandomAccessFile raf = new RandomAccessFile(log, "r");
+		try {
+			index.catchUp(raf.getChannel());
+			assertEquals(lines.size(), index.size());
+			assertEquals(text.length(), index.getLogLength());
+			for (int i = 0; i < lines.size(); i++) {
+				String[] pair = lines.get(i).split(" ");
+				assertEquals(offsets.get(i).longValue(), index.offsetOf(
+						pair[0], pair[1]));
+			}
+			assertEquals(5, index.countByEmail("player7@example.com"));
+			assertFalse(index.contains("last@example.com", SOLUTION));
+			append(log, "\n");
+			index.catchUp(raf.getChannel());
+			assertEquals(lines.size() + 1, index.size());
+			assertEquals(text.length(), index.offsetOf("last@example.com",
+					SOLUTION));
+			assertEquals(log.length(), index.getLogLength());
+			index.catchUp(raf.getChannel());
+			assertEquals(lines.size() + 1, index.size());
+			// a shorter file is indexed again from the start.
+			raf.close();
+			assertTrue(log.delete());
+			append(log, last + "\n");
+			raf = new RandomAccessFile(log, "r");
+			index.catchUp(raf.getChannel());
+			assertEquals(1, index.size());
+			assertEquals(0, index.offsetOf("last@example.com", SOLUTION));
+			assertFalse(index.contains("player0@example.com", solution(0)));
+		} finally {
+			raf.close();
+			index.close();
+		}
+	}
+
+	/**
+	 * A pair whose hash is in the index is only a duplicate if the line at
+	 * its position is the same pair.
+	 */
+	@Test
+	public void confirmsMatchesAgainstSolutionsFile() throws IOException {
+		File log = new File(dir, "solutions.txt");
+		append(log, "a@b.co " + SOLUTION + "\n");
+		SubmissionIndex index = new SubmissionIndex(new File(dir, "idx"));
+		RandomAccessFile raf = new RandomAccessFile(log, "r");
+		try {
+			index.catchUp(raf.getChannel());
+			assertTrue(index.contains("a@b.co", SOLUTION));
+			// an entry whose position holds another pair, as an entry with
+			// the same hash as a different pair would.
+			assertTrue(index.add("c@d.co", SOLUTION, 0));
+			assertFalse(index.contains("c@d.co", SOLUTION));
+		} finally {
+			raf.close();
+			index.close();
+		}
+	}
+}
\ No newline at end of file
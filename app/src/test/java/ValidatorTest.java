@@ -0,0 +1,224 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+/**
+ * Tests that Validator.isValidEmail accepts exactly the addresses the regular
+ * expression it replaced accepted, up to MAX_EMAIL_LENGTH characters, and
+ * rejects longer ones quickly, and that Validator.isValidSolution rejects
+ * incomplete and clashing grids and grids which change the givens of the
+ * puzzle.
+ * 
+ * @author Ole Sandbu
+ */
+public class ValidatorTest {
+	/** The regular expression isValidEmail used to be. */
+	private static final Pattern OLD_PATTERN = Pattern
+			.compile("\\b[\\w.%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,6}\\b");
+	private static final String ALPHABET = "abcXYZ019_.%+-@ \u00e9\u0130";
+	private static final String[] VALID = { "a@b.co", "player.one@example.com",
+			"x_y%z+w-v@mail-1.example.museum", "A1@B2.C3.de" };
+	private static final int SAMPLES = 200000;
+	private static final String PUZZLE = "700000400069000000810002000003008140941026000000090200097003560205807900000510000";
+
+	private static boolean oldIsValidEmail(String email) {
+		return OLD_PATTERN.matcher(email).matches();
+	}
+
+	private static void assertSameAsRegex(String email) {
+		assertEquals(oldIsValidEmail(email), Validator.isValidEmail(email),
+				email);
+	}
+
+	/**
+	 * Random strings over an alphabet of the characters which matter.
+	 */
+	@Test
+	public void matchesRegexOnRandomStrings() {
+		Random random = new Random(1);
+		for (int i = 0; i < SAMPLES; i++) {
+			int length = random.nextInt(24);
+			StringBuilder sb = new StringBuilder(length);
+			for (int j = 0; j < length; j++)
+				sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+			assertSameAsRegex(sb.toString());
+		}
+	}
+
+	/**
+	 * Valid addresses with one character inserted, deleted or replaced.
+	 */
+	@Test
+	public void matchesRegexOnNearMisses() {
+		Random random = new Random(2);
+		for (String valid : VALID) {
+			assertTrue(Validator.isValidEmail(valid), valid);
+			for (int i = 0; i < SAMPLES / VALID.length; i++) {
+				StringBuilder sb = new StringBuilder(valid);
+				int pos = random.nextInt(sb.length());
+				char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+				switch (random.nextInt(3)) {
+				case 0:
+					sb.insert(pos, c);
+					break;
+				case 1:
+					sb.deleteCharAt(pos);
+					break;
+				default:
+					sb.setCharAt(pos, c);
+				}
+				assertSameAsRegex(sb.toString());
+			}
+		}
+	}
+
+	/**
+	 * Edge cases of the top-level domain, dots and word boundaries.
+	 */
+	@Test
+	public void matchesRegexOnEdgeCases() {
+		String[] cases = { "", "@", "a@", "@b.co", "a@b", "a@b.c", "a@b.cdefgh",
+				"a@b.cdefghi", "a@.co", "a@b..co", ".a@b.co", "a.@b.co",
+				"-a@b.co", "a@b.co-", "a@b.co.", "a@-b.co", "a@@b.co",
+				"a b@c.de", "a@b.c1", "_@b.co", "a@b_c.de" };
+		for (String email : cases)
+			assertSameAsRegex(email);
+		assertFalse(Validator.isValidEmail(null));
+	}
+
+	/**
+	 * Addresses of exactly MAX_EMAIL_LENGTH characters are accepted, and
+	 * longer ones are rejected even though the regex matches them.
+	 */
+	@Test
+	public void rejectsOverlongAddresses() {
+		String domain = "@example.com";
+		String local = repeat('a', Validator.MAX_EMAIL_LENGTH - domain.length());
+		String longest = local + domain;
+		assertEquals(Validator.MAX_EMAIL_LENGTH, longest.length());
+		assertTrue(Validator.isValidEmail(longest));
+		String tooLong = "a" + longest;
+		assertTrue(oldIsValidEmail(tooLong));
+		assertFalse(Validator.isValidEmail(tooLong));
+		assertFalse(Validator.isValidEmail(repeat('a', 1000) + domain));
+	}
+
+	/**
+	 * A huge address is rejected without scanning it.
+	 */
+	@Test
+	public void rejectsHugeAddressesQuickly() {
+		final String huge = repeat('a', 10000000) + "@example.com";
+		assertTimeoutPreemptively(Duration.ofSeconds(1), new Executable() {
+			public void execute() {
+				for (int i = 0; i < 1000; i++)
+					assertFalse(Validator.isValidEmail(huge));
+			}
+		});
+	}
+
+	/**
+	 * A solution is accepted with the puzzle it solves, and rejected with a
+	 * puzzle whose givens it changes.
+	 */
+	@Test
+	public void checksGivens() {
+		String solution = new SudokuSolver().solve(PUZZLE);
+		assertTrue(Validator.isValidSolution(solution));
+		assertTrue(Validator.isValidSolution(solution, PUZZLE));
+		assertTrue(Validator.isValidSolution(solution, repeat('0', 81)));
+		// swapping two digits everywhere keeps the grid valid but changes
+		// the givens.
+		String swapped = solution.replace('1', 'x').replace('2', '1')
+				.replace('x', '2');
+		assertTrue(Validator.isValidSolution(swapped));
+		assertFalse(Validator.isValidSolution(swapped, PUZZLE));
+		assertTrue(Validator.isValidSolution(swapped, swapped.replace('2',
+				'0')));
+		assertFalse(Validator.isValidSolution(solution, PUZZLE.substring(1)));
+	}
+
+	/**
+	 * Grids with empty or invalid cells are rejected.
+	 */
+	@Test
+	public void rejectsIncompleteGrids() {
+		String solution = new SudokuSolver().solve(PUZZLE);
+		assertFalse(Validator.isValidSolution(repeat('0', 81)));
+		assertFalse(Validator.isValidSolution(repeat('0', 81), PUZZLE));
+		for (int cell = 0; cell < 81; cell += 8) {
+			char[] cells = solution.toCharArray();
+			cells[cell] = '0';
+			assertFalse(Validator.isValidSolution(new String(cells)));
+			cells[cell] = 'a';
+			assertFalse(Validator.isValidSolution(new String(cells)));
+		}
+		assertFalse(Validator.isValidSolution(null));
+		assertFalse(Validator.isValidSolution(solution.substring(1)));
+		assertFalse(Validator.isValidSolution(solution + "1"));
+	}
+
+	/**
+	 * Grids in which a digit appears twice in a row, column or subgrid are
+	 * rejected.
+	 */
+	@Test
+	public void rejectsClashingGrids() {
+		assertFalse(Validator.isValidSolution(repeat('1', 81)));
+		// every row and column holds 1..9, but the subgrids do not.
+		StringBuilder latin = new StringBuilder(81);
+		for (int row = 0; row < 9; row++)
+			for (int col = 0; col < 9; col++)
+				latin.append((char) ('1' + (row + col) % 9));
+		assertFalse(Validator.isValidSolution(latin));
+		String solution = new SudokuSolver().solve(PUZZLE);
+		for (int cell = 0; cell < 72; cell += 7) {
+			// swapping two cells of a column keeps the column whole but
+			// breaks both rows.
+			char[] cells = solution.toCharArray();
+			char c = cells[cell];
+			cells[cell] = cells[cell + 9];
+			cells[cell + 9] = c;
+			assertFalse(Validator.isValidSolution(new String(cells)));
+			// swapping two cells of a row keeps the row whole but breaks
+			// both columns.
+			cells = solution.toCharArray();
+			int other = cell / 9 * 9 + (cell + 1) % 9;
+			c = cells[cell];
+			cells[cell] = cells[other];
+			cells[other] = c;
+			assertFalse(Validator.isValidSolution(new String(cells)));
+		}
+	}
+
+	/**
+	 * Only 81 digits with at least MIN_GIVENS givens are a puzzle.
+	 */
+	@Test
+	public void checksPuzzles() {
+		assertTrue(Validator.isValidPuzzle(PUZZLE));
+		assertFalse(Validator.isValidPuzzle(null));
+		assertFalse(Validator.isValidPuzzle(repeat('0', 81)));
+		assertFalse(Validator.isValidPuzzle(PUZZLE.substring(1)));
+		assertFalse(Validator.isValidPuzzle(PUZZLE.replace('0', '.')));
+		String fewest = repeat('1', Validator.MIN_GIVENS)
+				+ repeat('0', 81 - Validator.MIN_GIVENS);
+		assertTrue(Validator.isValidPuzzle(fewest));
+		assertFalse(Validator.isValidPuzzle(fewest.replaceFirst("1", "0")));
+	}
+
+	private static String repeat(char c, int times) {
+		StringBuilder sb = new StringBuilder(times);
+		for (int i = 0; i < times; i++)
+			sb.append(c);
+		return sb.toString();
+	}
+}
\ No newline at end of file
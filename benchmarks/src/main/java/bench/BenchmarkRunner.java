@@ -0,0 +1,34 @@
+package bench;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes the results as JSON, so that a run can be
+ * kept as a baseline and compared with later ones. Any JMH command line
+ * options may be given, e.g. a regular expression selecting the benchmarks to
+ * run; the results go to baselines/jmh-result.json unless -rff is given.
+ */
+public class BenchmarkRunner {
+	private static final String DEFAULT_RESULT_FILE = "baselines/jmh-result.json";
+
+	public static void main(String[] args) throws RunnerException,
+			CommandLineOptionException {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		String resultFile = cmd.getResult().orElse(DEFAULT_RESULT_FILE);
+		File parent = new File(resultFile).getAbsoluteFile().getParentFile();
+		if (parent != null)
+			parent.mkdirs();
+		Options options = new OptionsBuilder().parent(cmd)
+				.resultFormat(cmd.getResultFormat().orElse(ResultFormatType.JSON))
+				.result(resultFile).build();
+		new Runner(options).run();
+	}
+}
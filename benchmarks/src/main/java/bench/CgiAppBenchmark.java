@@ -0,0 +1,79 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of CgiApp parsing a request and of FormDecoder, which does the
+ * unescaping.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CgiAppBenchmark {
+	private static final MethodHandle NEW_CGI_APP = DefaultPackage
+			.constructor("CgiApp", String.class, String.class, String.class,
+					InputStream.class);
+	private static final MethodHandle NEW_DECODER = DefaultPackage
+			.constructor("FormDecoder", Map.class);
+	private static final MethodHandle UPDATE = DefaultPackage.virtualMethod(
+			"FormDecoder", "update", void.class, byte[].class, int.class,
+			int.class);
+	private static final MethodHandle FINISH = DefaultPackage.virtualMethod(
+			"FormDecoder", "finish", void.class);
+
+	@Param({ "QUERY", "ESCAPED_QUERY" })
+	public String queryInput;
+
+	private String query;
+	private byte[] body;
+	private String contentLength;
+
+	@Setup
+	public void setUp() {
+		query = Inputs.named(queryInput);
+		body = query.getBytes(StandardCharsets.ISO_8859_1);
+		contentLength = Integer.toString(body.length);
+	}
+
+	@Benchmark
+	public Object parseGet() throws Throwable {
+		return (Object) NEW_CGI_APP.invokeExact("GET", query, (String) null,
+				(InputStream) null);
+	}
+
+	@Benchmark
+	public Object parsePost() throws Throwable {
+		return (Object) NEW_CGI_APP.invokeExact("POST", (String) null,
+				contentLength, (InputStream) new ByteArrayInputStream(body));
+	}
+
+	@Benchmark
+	public Map<String, String> unescape() throws Throwable {
+		Map<String, String> map = new HashMap<String, String>();
+		Object decoder = (Object) NEW_DECODER.invokeExact((Map) map);
+		UPDATE.invokeExact(decoder, body, 0, body.length);
+		FINISH.invokeExact(decoder);
+		return map;
+	}
+}
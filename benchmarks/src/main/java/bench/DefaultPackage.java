@@ -0,0 +1,91 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Access to the application classes, which live in the default package and so
+ * cannot be imported by the benchmarks. JMH does not allow benchmarks in the
+ * default package, so the benchmarks call the application through method
+ * handles held in static final fields, which the JIT compiler treats as
+ * constants and inlines like a direct call.
+ */
+final class DefaultPackage {
+	private DefaultPackage() {
+	}
+
+	static Class<?> type(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MethodHandles.Lookup lookup(Class<?> type)
+			throws IllegalAccessException {
+		return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+	}
+
+	/**
+	 * Returns a handle to a static method, which may be private.
+	 */
+	static MethodHandle staticMethod(String className, String name,
+			Class<?> returnType, Class<?>... parameterTypes) {
+		Class<?> type = type(className);
+		try {
+			return lookup(type).findStatic(type, name,
+					MethodType.methodType(returnType, parameterTypes));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns a handle to an instance method, which may be private, with the
+	 * receiver type erased to Object.
+	 */
+	static MethodHandle virtualMethod(String className, String name,
+			Class<?> returnType, Class<?>... parameterTypes) {
+		Class<?> type = type(className);
+		try {
+			MethodHandle handle = lookup(type).findVirtual(type, name,
+					MethodType.methodType(returnType, parameterTypes));
+			return handle.asType(handle.type().changeParameterType(0,
+					Object.class));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns a handle to a constructor, which may be package-private, with
+	 * the return type erased to Object.
+	 */
+	static MethodHandle constructor(String className,
+			Class<?>... parameterTypes) {
+		Class<?> type = type(className);
+		try {
+			MethodHandle handle = lookup(type).findConstructor(type,
+					MethodType.methodType(void.class, parameterTypes));
+			return handle.asType(handle.type().changeReturnType(Object.class));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Invoke a handle with arguments whose types do not match exactly, for use
+	 * while setting up a benchmark rather than in the measured code.
+	 */
+	static Object call(MethodHandle handle, Object... args) {
+		try {
+			return handle.invokeWithArguments(args);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException(t);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the work the applet's GridModel does for each keystroke. The
+ * edited cell is in the middle of the grid; in the CONFLICT case its digit
+ * also appears in its row, column and subgrid.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GridModelBenchmark {
+	private static final MethodHandle NEW_MODEL = DefaultPackage
+			.constructor("GridModel");
+	private static final MethodHandle LOAD = DefaultPackage.virtualMethod(
+			"GridModel", "load", void.class, String.class);
+	private static final MethodHandle SET = DefaultPackage.virtualMethod(
+			"GridModel", "set", boolean.class, int.class, int.class);
+	private static final MethodHandle IS_CONFLICTING = DefaultPackage
+			.virtualMethod("GridModel", "isConflicting", boolean.class,
+					int.class);
+	private static final int CELL = 4 * 9 + 4;
+
+	@Param({ "VALID", "CONFLICT" })
+	public String state;
+
+	private Object model;
+	private int digit;
+
+	@Setup
+	public void setUp() {
+		model = DefaultPackage.call(NEW_MODEL);
+		DefaultPackage.call(LOAD, model, Inputs.PUZZLE);
+		// 2 is already in row 4, column 4 and the centre subgrid; 5 is not.
+		digit = state.equals("CONFLICT") ? 2 : 5;
+		DefaultPackage.call(SET, model, CELL, digit);
+	}
+
+	@Benchmark
+	public boolean isConflicting() throws Throwable {
+		return (boolean) IS_CONFLICTING.invokeExact(model, CELL);
+	}
+
+	/**
+	 * A keystroke clearing the cell and one entering the digit again, each
+	 * followed by the check of whether the cell conflicts.
+	 */
+	@Benchmark
+	public boolean keystroke() throws Throwable {
+		boolean a = (boolean) SET.invokeExact(model, CELL, 0);
+		boolean b = (boolean) IS_CONFLICTING.invokeExact(model, CELL);
+		boolean c = (boolean) SET.invokeExact(model, CELL, digit);
+		return a & b & c & (boolean) IS_CONFLICTING.invokeExact(model, CELL);
+	}
+}
@@ -0,0 +1,57 @@
+package bench;
+
+/**
+ * Realistic and adversarial inputs shared by the benchmarks.
+ */
+final class Inputs {
+	static final String PUZZLE = "700000400069000000810002000003008140941026000000090200097003560205807900000510000";
+	static final String SOLUTION = "752681493369475821814932657623758149941326785578194236197243568235867914486519372";
+	/** A complete grid with two digits swapped in the last row. */
+	static final String WRONG_SOLUTION = SOLUTION.substring(0, 79) + "27";
+	/** A string of the right length which is not a grid at all. */
+	static final String GARBAGE_SOLUTION = repeat('x', 81);
+
+	static final String EMAIL = "ole.sandbu@st-andrews.ac.uk";
+	/** The longest address which is accepted. */
+	static final String LONG_EMAIL = repeat('a', 240) + "@example.com";
+	/**
+	 * An address which makes a backtracking matcher try every way of
+	 * splitting the domain before failing.
+	 */
+	static final String ADVERSARIAL_EMAIL = "a@" + repeat('a', 100) + "."
+			+ repeat('a', 100) + "!";
+
+	static final String QUERY = "email=ole.sandbu%40st-andrews.ac.uk&solution="
+			+ SOLUTION + "&puzzle=" + PUZZLE;
+	/** A query in which every character of the email has been escaped. */
+	static final String ESCAPED_QUERY = "email=" + escapeAll(LONG_EMAIL)
+			+ "&solution=" + SOLUTION;
+
+	private Inputs() {
+	}
+
+	static String repeat(char c, int n) {
+		StringBuilder sb = new StringBuilder(n);
+		for (int i = 0; i < n; i++)
+			sb.append(c);
+		return sb.toString();
+	}
+
+	static String escapeAll(String s) {
+		StringBuilder sb = new StringBuilder(s.length() * 3);
+		for (int i = 0; i < s.length(); i++)
+			sb.append('%').append(String.format("%02X", (int) s.charAt(i)));
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the named input, so that inputs can be chosen with @Param.
+	 */
+	static String named(String name) {
+		try {
+			return (String) Inputs.class.getDeclaredField(name).get(null);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException(name, e);
+		}
+	}
+}
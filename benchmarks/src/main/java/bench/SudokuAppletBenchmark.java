@@ -0,0 +1,57 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the conversions between the 81 character grid format and the
+ * applet's cells. The applet itself cannot be created without a display, so
+ * its GridModel is set up directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class SudokuAppletBenchmark {
+	private static final MethodHandle GET_GRID = DefaultPackage.staticMethod(
+			"SudokuApplet", "getGrid", char[][].class, String.class);
+	private static final MethodHandle NEW_MODEL = DefaultPackage
+			.constructor("GridModel");
+	private static final MethodHandle LOAD = DefaultPackage.virtualMethod(
+			"GridModel", "load", void.class, String.class);
+	private static final MethodHandle GET_CONTENT = DefaultPackage
+			.virtualMethod("GridModel", "getContent", String.class);
+
+	private String puzzle;
+	private Object model;
+
+	@Setup
+	public void setUp() {
+		puzzle = Inputs.PUZZLE;
+		model = DefaultPackage.call(NEW_MODEL);
+		DefaultPackage.call(LOAD, model, puzzle);
+	}
+
+	@Benchmark
+	public char[][] getGrid() throws Throwable {
+		return (char[][]) GET_GRID.invokeExact(puzzle);
+	}
+
+	@Benchmark
+	public String getCellContent() throws Throwable {
+		return (String) GET_CONTENT.invokeExact(model);
+	}
+}
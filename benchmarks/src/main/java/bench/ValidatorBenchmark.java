@@ -0,0 +1,81 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of Validator.isValidEmail and Validator.isValidSolution, the
+ * checks made by the sudoku CGI application when the puzzle's solution is not
+ * cached.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidatorBenchmark {
+	private static final MethodHandle IS_VALID_EMAIL = DefaultPackage
+			.staticMethod("Validator", "isValidEmail", boolean.class,
+					String.class);
+	private static final MethodHandle IS_VALID_SOLUTION = DefaultPackage
+			.staticMethod("Validator", "isValidSolution", boolean.class,
+					CharSequence.class, CharSequence.class)
+			.asType(MethodType.methodType(boolean.class, String.class,
+					String.class));
+
+	@State(Scope.Thread)
+	public static class Email {
+		@Param({ "EMAIL", "LONG_EMAIL", "ADVERSARIAL_EMAIL" })
+		public String input;
+		String email;
+
+		@Setup
+		public void setUp() {
+			email = Inputs.named(input);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Solution {
+		@Param({ "SOLUTION", "WRONG_SOLUTION", "GARBAGE_SOLUTION" })
+		public String input;
+		String solution;
+		String puzzle;
+
+		@Setup
+		public void setUp() {
+			solution = Inputs.named(input);
+			puzzle = Inputs.PUZZLE;
+		}
+	}
+
+	@Benchmark
+	public boolean isValidEmail(Email state) throws Throwable {
+		return (boolean) IS_VALID_EMAIL.invokeExact(state.email);
+	}
+
+	@Benchmark
+	public boolean isValidSolution(Solution state) throws Throwable {
+		return (boolean) IS_VALID_SOLUTION.invokeExact(state.solution,
+				(String) null);
+	}
+
+	@Benchmark
+	public boolean isValidSolutionWithGivens(Solution state) throws Throwable {
+		return (boolean) IS_VALID_SOLUTION.invokeExact(state.solution,
+				state.puzzle);
+	}
+}